@@ -0,0 +1,96 @@
+package com.zica.example.admission;
+
+import com.zica.example.SpringBootApplication;
+import com.zica.example.model.NewData;
+import com.zica.example.service.DataService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overload of the RSA decryptions through the real Jetty server, with and without the admission control:
+ * far more clients than the CPUs can serve read a decrypted record, and give up on a request after a second.
+ * The ok counter is the goodput, the answers in time, and the rejected and timeout counters the requests
+ * answered with 503 and the requests the clients gave up on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(128)
+public class AdmissionControlBenchmark {
+
+    private static final Duration CLIENT_TIMEOUT = Duration.ofSeconds(1);
+
+    @Param({"false", "true"})
+    private boolean admissionControl;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private HttpRequest request;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(SpringBootApplication.class)
+                .properties("admission-control-enabled=" + admissionControl, "server.port=0",
+                        "server.jetty.max-threads=200", "logging.level.root=WARN")
+                .run();
+        var id = context.getBean(DataService.class).saveData(new NewData().data("a value to be read")).getId();
+        var port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/data/" + id + "/decrypted"))
+                .timeout(CLIENT_TIMEOUT)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void getDecryptedData(Answers answers) throws Exception {
+        try {
+            var status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            if (status == 200) {
+                answers.ok++;
+            } else if (status == 503) {
+                answers.rejected++;
+            } else {
+                throw new IllegalStateException("Unexpected status " + status);
+            }
+        } catch (HttpTimeoutException e) {
+            answers.timeout++;
+        }
+    }
+
+    /**
+     * The answers of the requests of a client thread
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Answers {
+        public long ok;
+        public long rejected;
+        public long timeout;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            ok = 0;
+            rejected = 0;
+            timeout = 0;
+        }
+    }
+}
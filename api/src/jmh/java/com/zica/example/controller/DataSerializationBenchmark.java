@@ -0,0 +1,114 @@
+package com.zica.example.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.zica.example.db.DataRow;
+import com.zica.example.model.EncryptedData;
+import com.zica.example.model.NewData;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The response path of GET /data without the database: the conversion of the rows to the
+ * api model and the Jackson serialisation of the list in each response format, with ObjectMappers
+ * configured like Spring's. The size of the responses, before and after gzip, is checked by
+ * ResponseFormatSizeTest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataSerializationBenchmark {
+
+    @Param({"10", "1000"})
+    private int records;
+
+    @Param({"json", "cbor", "smile"})
+    private String format;
+
+    private List<DataRow> dbData;
+    private List<EncryptedData> apiData;
+    private ObjectMapper objectMapper;
+    private ObjectMapper jsonObjectMapper;
+    private byte[] newDataJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        jsonObjectMapper = Jackson2ObjectMapperBuilder.json().build();
+        switch (format) {
+            case "cbor":
+                objectMapper = Jackson2ObjectMapperBuilder.cbor().build();
+                break;
+            case "smile":
+                // like the converter of the application, with the binary values written as they are
+                objectMapper = Jackson2ObjectMapperBuilder.smile()
+                        .factory(new SmileFactory().disable(SmileGenerator.Feature.ENCODE_BINARY_AS_7BIT))
+                        .build();
+                break;
+            default:
+                objectMapper = jsonObjectMapper;
+        }
+
+        // ciphertexts are random, so gzip gets nothing out of them
+        var random = new Random(42);
+        dbData = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            // the size of a stored RSA ciphertext
+            var value = new byte[259];
+            random.nextBytes(value);
+            dbData.add(new DataRow(i, value, null));
+        }
+        apiData = this.convert();
+        newDataJson = jsonObjectMapper.writeValueAsBytes(new NewData().data("a value to be saved"));
+    }
+
+    @Benchmark
+    public List<EncryptedData> convert() {
+        return dbData.stream()
+                .map(DataController::convertDbDataToEncryptedData)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return objectMapper.writeValueAsBytes(apiData);
+    }
+
+    @Benchmark
+    public byte[] convertAndSerialize() throws Exception {
+        return objectMapper.writeValueAsBytes(this.convert());
+    }
+
+    /**
+     * The serialisation and the gzip of Jetty, which compresses the responses at its default level
+     */
+    @Benchmark
+    public byte[] serializeAndGzip() throws Exception {
+        return gzip(objectMapper.writeValueAsBytes(apiData));
+    }
+
+    @Benchmark
+    public NewData deserializeNewData() throws Exception {
+        return jsonObjectMapper.readValue(newDataJson, NewData.class);
+    }
+
+    private static byte[] gzip(byte[] payload) throws IOException {
+        var out = new ByteArrayOutputStream(payload.length);
+        try (var gzip = new GZIPOutputStream(out)) {
+            gzip.write(payload);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,48 @@
+package com.zica.example.monitoring;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The overhead of the stage instrumentation around the cheapest timed stage, the Base64 of a ciphertext:
+ * without instrumentation, with it disabled and with it enabled (without a flight recording).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StageTimerBenchmark {
+
+    private final byte[] ciphertext = new byte[256];
+    private final StageTimer disabled = new StageTimer(false);
+    private final StageTimer enabled = new StageTimer(true);
+
+    @Setup
+    public void setUp() {
+        enabled.bindTo(new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public String baseline() {
+        return Base64.getEncoder().encodeToString(ciphertext);
+    }
+
+    @Benchmark
+    public String disabled() {
+        try (var ignored = disabled.start(Stage.BASE64)) {
+            return Base64.getEncoder().encodeToString(ciphertext);
+        }
+    }
+
+    @Benchmark
+    public String enabled() {
+        try (var ignored = enabled.start(Stage.BASE64)) {
+            return Base64.getEncoder().encodeToString(ciphertext);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.zica.example.repository;
+
+import com.zica.example.SpringBootApplication;
+import com.zica.example.db.Data;
+import com.zica.example.db.DataRow;
+import com.zica.example.model.EncryptedData;
+import com.zica.example.service.CiphertextFormat;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The queries of GET /data and the conversion of their results to the api model: managed entities, as
+ * they were listed before, against the rows of the constructor expressions. A page of 1000 records and
+ * the whole table. Run it with {@code -prof gc} for the bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataListBenchmark {
+
+    private static final int PAGE_SIZE = 1000;
+    private static final int INSERT_CHUNK = 1000;
+    /**
+     * The size of a stored RSA ciphertext: the format byte, the key id and 256 bytes for a 2048 bits key
+     */
+    private static final int VALUE_SIZE = 259;
+
+    @Param({"10000", "100000"})
+    private int records;
+
+    private ConfigurableApplicationContext context;
+    private DataRepository dataRepository;
+    private long firstId;
+    private long next;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(SpringBootApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("logging.level.root=WARN", "ciphertext-migration-enabled=false",
+                        "reencryption-enabled=false", "blind-index-backfill-enabled=false")
+                .run();
+        dataRepository = context.getBean(DataRepository.class);
+
+        for (int inserted = 0; inserted < records; inserted += INSERT_CHUNK) {
+            var chunk = new ArrayList<Data>(INSERT_CHUNK);
+            for (int i = 0; i < INSERT_CHUNK; i++) {
+                chunk.add(new Data(0, new byte[VALUE_SIZE]));
+            }
+            var saved = dataRepository.saveAll(chunk);
+            if (inserted == 0) {
+                firstId = saved.get(0).getId();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    private long nextPage() {
+        return firstId + (next++ % (records / PAGE_SIZE)) * PAGE_SIZE;
+    }
+
+    @Benchmark
+    public List<EncryptedData> entitiesPage() {
+        return dataRepository.findByIdGreaterThanOrderByIdAsc(nextPage(), PageRequest.of(0, PAGE_SIZE)).stream()
+                .map(data -> new EncryptedData().id(data.getId()).data(CiphertextFormat.of(data)))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<EncryptedData> rowsPage() {
+        return dataRepository.findRowsByIdGreaterThan(nextPage(), PageRequest.of(0, PAGE_SIZE)).stream()
+                .map(DataListBenchmark::convert)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<EncryptedData> entitiesAll() {
+        return dataRepository.findAll().stream()
+                .map(data -> new EncryptedData().id(data.getId()).data(CiphertextFormat.of(data)))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<EncryptedData> rowsAll() {
+        return dataRepository.findAllRows().stream()
+                .map(DataListBenchmark::convert)
+                .collect(Collectors.toList());
+    }
+
+    private static EncryptedData convert(DataRow row) {
+        return new EncryptedData().id(row.getId()).data(CiphertextFormat.of(row));
+    }
+}
@@ -0,0 +1,72 @@
+package com.zica.example.repository;
+
+import com.zica.example.SpringBootApplication;
+import com.zica.example.db.Data;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The repository operations against the in-memory H2 database of the application.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataRepositoryBenchmark {
+
+    private static final int RECORDS = 1000;
+    /**
+     * The size of a stored RSA ciphertext: the format byte and 256 bytes for a 2048 bits key
+     */
+    private static final int VALUE_SIZE = 257;
+
+    private ConfigurableApplicationContext context;
+    private DataRepository dataRepository;
+    private long firstId;
+    private long next;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(SpringBootApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("logging.level.root=WARN")
+                .run();
+        dataRepository = context.getBean(DataRepository.class);
+
+        for (int i = 0; i < RECORDS; i++) {
+            var saved = dataRepository.save(new Data(0, new byte[VALUE_SIZE]));
+            if (i == 0) {
+                firstId = saved.getId();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Data save() {
+        return dataRepository.save(new Data(0, new byte[VALUE_SIZE]));
+    }
+
+    @Benchmark
+    public Optional<Data> findById() {
+        return dataRepository.findById(firstId + (next++ % RECORDS));
+    }
+
+    @Benchmark
+    public List<Data> findPage() {
+        return dataRepository.findByIdGreaterThanOrderByIdAsc(firstId + (next++ % RECORDS), PageRequest.of(0, 100));
+    }
+}
@@ -0,0 +1,76 @@
+package com.zica.example.service;
+
+import com.zica.example.SpringBootApplication;
+import com.zica.example.db.DataRow;
+import com.zica.example.model.NewData;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Finding the records with a value: through the blind index (GET /data?value=), against decrypting every
+ * record in parallel and comparing the values, the only way before there was an index. Every tenth record
+ * has the searched value.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class BlindIndexBenchmark {
+
+    private static final String SEARCHED = "the searched value";
+
+    @Param({"1000", "10000"})
+    private int records;
+
+    private ConfigurableApplicationContext context;
+    private DataService dataService;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(SpringBootApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("logging.level.root=WARN", "ciphertext-migration-enabled=false",
+                        "reencryption-enabled=false", "blind-index-backfill-enabled=false")
+                .run();
+        dataService = context.getBean(DataService.class);
+
+        var items = IntStream.range(0, records)
+                .mapToObj(i -> new NewData().data(i % 10 == 0 ? SEARCHED : "value " + i))
+                .iterator();
+        dataService.saveData(items, result -> {});
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<DataRow> blindIndex() {
+        return dataService.findDataByValue(SEARCHED, 0, records);
+    }
+
+    @Benchmark
+    public List<Long> decryptScan() {
+        var ids = dataService.findAllData().stream()
+                .map(DataRow::getId)
+                .collect(Collectors.toList());
+        var found = new ConcurrentLinkedQueue<Long>();
+        dataService.getDecryptedData(ids, result -> {
+            if (SEARCHED.equals(result.getData())) {
+                found.add(result.getId());
+            }
+        }).join();
+        return List.copyOf(found);
+    }
+}
@@ -0,0 +1,51 @@
+package com.zica.example.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the pooled ciphers with the previous behaviour of creating and initialising
+ * a Cipher on every call (pool size 0).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class CipherPoolBenchmark {
+
+    @Param({"0", "16"})
+    private int poolSize;
+
+    private RSACryptographyServiceImpl cryptographyService;
+    private String encrypted;
+
+    @Setup
+    public void setUp() throws Exception {
+        var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        var keyPair = keyPairGenerator.genKeyPair();
+        var encoder = Base64.getEncoder();
+
+        cryptographyService = new RSACryptographyServiceImpl(
+                encoder.encodeToString(keyPair.getPublic().getEncoded()),
+                encoder.encodeToString(keyPair.getPrivate().getEncoded()),
+                poolSize);
+        encrypted = cryptographyService.encrypt("a value of a reasonable size to be encrypted");
+    }
+
+    @Benchmark
+    public String encrypt() throws Exception {
+        return cryptographyService.encrypt("a value of a reasonable size to be encrypted");
+    }
+
+    @Benchmark
+    public String decrypt() throws Exception {
+        return cryptographyService.decrypt(encrypted);
+    }
+}
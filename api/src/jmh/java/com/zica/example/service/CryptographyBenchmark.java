@@ -0,0 +1,98 @@
+package com.zica.example.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cryptography of a single value, for payloads from a few bytes up to the most RSA can encrypt
+ * with a 2048 bits key: to the Base64 text of the String methods and to the binary format the values
+ * are stored in, and into reused buffers with the ByteBuffer methods.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CryptographyBenchmark {
+
+    @Param({"16", "128", "245"})
+    private int payloadSize;
+
+    private RSACryptographyServiceImpl cryptographyService;
+    private String payload;
+    private String encrypted;
+    private byte[] encryptedBytes;
+    private byte[] stored;
+    private ByteBuffer plain;
+    private ByteBuffer encryptOut;
+    private ByteBuffer decryptOut;
+    private ByteBuffer storedBuffer;
+
+    @Setup
+    public void setUp() throws Exception {
+        var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        var keyPair = keyPairGenerator.genKeyPair();
+        var encoder = Base64.getEncoder();
+
+        cryptographyService = new RSACryptographyServiceImpl(
+                encoder.encodeToString(keyPair.getPublic().getEncoded()),
+                encoder.encodeToString(keyPair.getPrivate().getEncoded()));
+        payload = "x".repeat(payloadSize);
+        encryptedBytes = cryptographyService.encrypt(payload.getBytes(StandardCharsets.UTF_8));
+        encrypted = encoder.encodeToString(encryptedBytes);
+        stored = cryptographyService.encryptToBytes(payload);
+        plain = ByteBuffer.wrap(payload.getBytes(StandardCharsets.UTF_8));
+        encryptOut = ByteBuffer.allocate(cryptographyService.getMaxEncryptedLength(payloadSize));
+        decryptOut = ByteBuffer.allocate(stored.length);
+        storedBuffer = ByteBuffer.wrap(stored);
+    }
+
+    @Benchmark
+    public String encrypt() throws Exception {
+        return cryptographyService.encrypt(payload);
+    }
+
+    @Benchmark
+    public String decrypt() throws Exception {
+        return cryptographyService.decrypt(encrypted);
+    }
+
+    @Benchmark
+    public byte[] encryptToBytes() throws Exception {
+        return cryptographyService.encryptToBytes(payload);
+    }
+
+    @Benchmark
+    public String decryptFromBytes() throws Exception {
+        return cryptographyService.decryptFromBytes(stored);
+    }
+
+    @Benchmark
+    public ByteBuffer encryptBuffer() throws Exception {
+        cryptographyService.encrypt(plain.rewind(), encryptOut.clear());
+        return encryptOut;
+    }
+
+    @Benchmark
+    public ByteBuffer decryptBuffer() throws Exception {
+        cryptographyService.decrypt(storedBuffer.rewind(), decryptOut.clear());
+        return decryptOut;
+    }
+
+    @Benchmark
+    public String base64Encode() {
+        return Base64.getEncoder().encodeToString(encryptedBytes);
+    }
+
+    @Benchmark
+    public byte[] base64Decode() {
+        return Base64.getDecoder().decode(encrypted);
+    }
+}
@@ -0,0 +1,71 @@
+package com.zica.example.service;
+
+import com.zica.example.SpringBootApplication;
+import com.zica.example.model.NewData;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares inserting values one by one with {@link DataService#saveData(NewData)} with the batch
+ * ingest used by {@code POST /data:batch}, against the embedded database of the application.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataIngestBenchmark {
+
+    @Param({"1000"})
+    private int items;
+
+    @Param({"rsa", "envelope"})
+    private String cryptographyMode;
+
+    private ConfigurableApplicationContext context;
+    private DataService dataService;
+    private List<NewData> newData;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(SpringBootApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("cryptography-mode=" + cryptographyMode, "logging.level.root=WARN")
+                .run();
+        dataService = context.getBean(DataService.class);
+
+        newData = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            newData.add(new NewData().data("a value of a reasonable size to be saved " + i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int singleRow() {
+        var saved = 0;
+        for (var item : newData) {
+            dataService.saveData(item);
+            saved++;
+        }
+        return saved;
+    }
+
+    @Benchmark
+    public int batch() {
+        var saved = new int[1];
+        dataService.saveData(newData.iterator(), result -> saved[0]++);
+        return saved[0];
+    }
+}
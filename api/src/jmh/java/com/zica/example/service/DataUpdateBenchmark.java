@@ -0,0 +1,73 @@
+package com.zica.example.service;
+
+import com.zica.example.SpringBootApplication;
+import com.zica.example.db.Data;
+import com.zica.example.model.NewData;
+import com.zica.example.repository.DataRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous update path (existsById followed by a save, which merges the detached entity
+ * with another SELECT) with the single UPDATE statement of {@link DataService#updateDataValue(Long, NewData)}.
+ * The statements of each path are checked by DataUpdateStatementsTest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataUpdateBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private DataService dataService;
+    private DataRepository dataRepository;
+    private RSACryptographyService cryptographyService;
+
+    private NewData newData;
+    private long id;
+    private long version;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(SpringBootApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("cryptography-mode=envelope", "logging.level.root=WARN")
+                .run();
+        dataService = context.getBean(DataService.class);
+        dataRepository = context.getBean(DataRepository.class);
+        cryptographyService = context.getBean(RSACryptographyService.class);
+
+        newData = new NewData().data("a value of a reasonable size to be updated");
+        id = dataService.saveData(newData).getId();
+        version = dataRepository.findById(id).orElseThrow().getVersion();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Data existsAndSave() throws Exception {
+        if (!dataRepository.existsById(id)) {
+            throw new IllegalStateException();
+        }
+        var data = new Data(id, cryptographyService.encryptToBytes(newData.getData()));
+        // the version read by the previous request, as a client sending the record back would
+        data.setVersion(version);
+        var saved = dataRepository.save(data);
+        version = saved.getVersion();
+        return saved;
+    }
+
+    @Benchmark
+    public Data singleStatement() {
+        return dataService.updateDataValue(id, newData).orElseThrow();
+    }
+}
@@ -0,0 +1,72 @@
+package com.zica.example.service;
+
+import com.zica.example.SpringBootApplication;
+import com.zica.example.db.Data;
+import com.zica.example.model.NewData;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of a retry of POST /data: without an Idempotency-Key every retry encrypts and inserts the value
+ * again, with one it gets the record of the first request, from memory or from the idempotent_request table
+ * when the keys were only kept there (e.g. after a restart).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdempotencyBenchmark {
+
+    private static final NewData VALUE = new NewData().data("a value of a reasonable size to be saved");
+    private static final String KEY = "0b6f4a8e-5d3c-4b9a-8e2f-7c1d9a6b3e5f";
+
+    private ConfigurableApplicationContext context;
+    private DataService dataService;
+    private IdempotencyStore tableStore;
+    private byte[] fingerprint;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(SpringBootApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("logging.level.root=WARN", "ciphertext-migration-enabled=false",
+                        "reencryption-enabled=false", "blind-index-backfill-enabled=false",
+                        "idempotency-table-enabled=true")
+                .run();
+        dataService = context.getBean(DataService.class);
+        dataService.saveDataAsync(VALUE, KEY).join();
+
+        // an instance that keeps no key in memory, so it finds the key in the table every time
+        tableStore = new IdempotencyStore(true, 0, 3600, true);
+        context.getAutowireCapableBeanFactory().autowireBean(tableStore);
+        fingerprint = context.getBean(BlindIndex.class).of(VALUE.getData());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Data retryWithoutKey() {
+        return dataService.saveDataAsync(VALUE, null).join();
+    }
+
+    @Benchmark
+    public Data retryFromMemory() {
+        return dataService.saveDataAsync(VALUE, KEY).join();
+    }
+
+    @Benchmark
+    public Data retryFromTable() {
+        return tableStore.save(KEY, fingerprint, () -> {
+            throw new IllegalStateException("the key is in the table");
+        }).join();
+    }
+}
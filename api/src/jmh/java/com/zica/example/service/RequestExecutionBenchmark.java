@@ -0,0 +1,64 @@
+package com.zica.example.service;
+
+import com.zica.example.SpringBootApplication;
+import com.zica.example.model.NewData;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the request-execution-modes: many clients read a decrypted record at the same time through
+ * the real Jetty server. The throughput mode gives the requests per second and the sample time mode the
+ * latency percentiles (p0.99 and others). The virtual mode needs the benchmarks to run on Java 21. The
+ * admission control is disabled, so every request is processed (see AdmissionControlBenchmark).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(64)
+public class RequestExecutionBenchmark {
+
+    @Param({"sync", "async", "virtual"})
+    private String executionMode;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private HttpRequest request;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(SpringBootApplication.class)
+                .properties("request-execution-mode=" + executionMode, "admission-control-enabled=false",
+                        "server.port=0", "logging.level.root=WARN")
+                .run();
+        var id = context.getBean(DataService.class).saveData(new NewData().data("a value to be read")).getId();
+        var port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/data/" + id + "/decrypted")).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int getDecryptedData() throws Exception {
+        var response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Unexpected status " + response.statusCode());
+        }
+        return response.statusCode();
+    }
+}
@@ -0,0 +1,65 @@
+package com.zica.example.service;
+
+import com.zica.example.SpringBootApplication;
+import com.zica.example.db.Data;
+import com.zica.example.model.NewData;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The latency of saveData in the envelope mode with the inserts made by the saves, and with the write-behind
+ * log, against the in-memory H2 database and against a H2 database in a file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class WriteBehindBenchmark {
+
+    @Param({"false", "true"})
+    private boolean writeBehind;
+
+    @Param({"mem", "file"})
+    private String database;
+
+    private Path directory;
+    private ConfigurableApplicationContext context;
+    private DataService dataService;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("write-behind-benchmark");
+        var url = "mem".equals(database) ? "jdbc:h2:mem:testdb" : "jdbc:h2:file:" + directory.resolve("db");
+        context = new SpringApplicationBuilder(SpringBootApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("cryptography-mode=envelope", "logging.level.root=WARN",
+                        "spring.datasource.url=" + url,
+                        "write-behind-enabled=" + writeBehind,
+                        "write-behind-log-path=" + directory.resolve("write-behind.log"))
+                .run();
+        dataService = context.getBean(DataService.class);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        try (var files = Files.walk(directory)) {
+            files.sorted((first, second) -> second.compareTo(first)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Data saveData() {
+        return dataService.saveData(new NewData().data("a value of a reasonable size to be saved"));
+    }
+}
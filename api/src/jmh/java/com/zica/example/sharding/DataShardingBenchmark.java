@@ -0,0 +1,79 @@
+package com.zica.example.sharding;
+
+import com.zica.example.SpringBootApplication;
+import com.zica.example.db.Data;
+import com.zica.example.db.DataRow;
+import com.zica.example.model.NewData;
+import com.zica.example.repository.DataRepository;
+import com.zica.example.service.DataService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The write and read throughput of several threads against 1, 2 and 4 embedded H2 shards. The inserts
+ * go through the repository with an already encrypted value, so the shards are compared without the
+ * cryptography, and through the service in the envelope mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class DataShardingBenchmark {
+
+    /**
+     * The size of a stored RSA ciphertext: the format byte and 256 bytes for a 2048 bits key
+     */
+    private static final int VALUE_SIZE = 257;
+
+    @Param({"1", "2", "4"})
+    private int shards;
+
+    private ConfigurableApplicationContext context;
+    private DataShards dataShards;
+    private DataRepository dataRepository;
+    private DataService dataService;
+
+    @Setup
+    public void setUp() {
+        var urls = IntStream.range(0, shards)
+                .mapToObj(shard -> "jdbc:h2:mem:benchmark-shard-" + shard + ";DB_CLOSE_DELAY=-1")
+                .collect(Collectors.joining(","));
+        context = new SpringApplicationBuilder(SpringBootApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("data-shard-urls=" + urls, "cryptography-mode=envelope", "logging.level.root=WARN")
+                .run();
+        dataShards = context.getBean(DataShards.class);
+        dataRepository = context.getBean(DataRepository.class);
+        dataService = context.getBean(DataService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Data insert() {
+        return dataShards.on(dataShards.nextShard(), () -> dataRepository.save(new Data(0, new byte[VALUE_SIZE])));
+    }
+
+    @Benchmark
+    public Data saveData() {
+        return dataService.saveData(new NewData().data("a value of a reasonable size to be saved"));
+    }
+
+    @Benchmark
+    public List<DataRow> findData() {
+        return dataService.findData(0, 100);
+    }
+}
@@ -0,0 +1,137 @@
+package com.zica.example.startup;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The startup modes, each in a new JVM: the default configuration, the fast-startup profile with the C1
+ * compiler only, and the same with the CDS archive of the cdsArchive Gradle task. startup is the time from the
+ * launch of the JVM until the health endpoint answers, and firstRequest the time of the first request that
+ * stores a value (cryptography, JPA and JSON) once it does.
+ *
+ * The application is launched with the classpath of the startup.classpath system property (the one of the
+ * benchmark by default), which must be the one the CDS archive of startup.cds-archive was created with.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupBenchmark {
+
+    private static final long READY_TIMEOUT_MILLIS = 60_000;
+
+    @Param({"default", "fast-startup", "fast-startup-cds"})
+    private String startupMode;
+
+    private HttpClient client;
+    private File log;
+    private Process process;
+    private int port;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        log = Files.createTempFile("startup-benchmark", ".log").toFile();
+    }
+
+    @Setup(Level.Iteration)
+    public void startForFirstRequest(BenchmarkParams params) throws Exception {
+        if (params.getBenchmark().endsWith(".firstRequest")) {
+            launch();
+            awaitReady();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void stop() throws InterruptedException {
+        if (process != null) {
+            process.destroy();
+            process.waitFor();
+            process = null;
+        }
+    }
+
+    @Benchmark
+    public void startup() throws Exception {
+        launch();
+        awaitReady();
+    }
+
+    @Benchmark
+    public int firstRequest() throws Exception {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/data"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"data\": \"a value to be stored\"}"))
+                .build();
+        var response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 201) {
+            throw new IllegalStateException("Unexpected status " + response.statusCode());
+        }
+        return response.statusCode();
+    }
+
+    private void launch() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        var command = new ArrayList<String>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        if (startupMode.startsWith("fast-startup")) {
+            // C1 only, the C2 compilations compete with the startup for the CPU
+            command.add("-XX:TieredStopAtLevel=1");
+        }
+        if (startupMode.endsWith("-cds")) {
+            var archive = System.getProperty("startup.cds-archive");
+            if (archive == null || !new File(archive).exists()) {
+                throw new IllegalStateException("No CDS archive in startup.cds-archive, run the cdsArchive task first");
+            }
+            // fails instead of silently starting without the archive
+            command.add("-Xshare:on");
+            command.add("-XX:SharedArchiveFile=" + archive);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("startup.classpath", System.getProperty("java.class.path")));
+        command.add("com.zica.example.SpringBootApplication");
+        command.add("--server.port=" + port);
+        command.add("--logging.level.root=WARN");
+        if (startupMode.startsWith("fast-startup")) {
+            command.add("--spring.profiles.active=fast-startup");
+        }
+
+        process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+    }
+
+    private void awaitReady() throws Exception {
+        var health = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/actuator/health")).build();
+        var deadline = System.currentTimeMillis() + READY_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("The application exited, see " + log);
+            }
+            try {
+                if (client.send(health, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // not listening yet
+            }
+            Thread.sleep(5);
+        }
+        throw new IllegalStateException("The application didn't start in time, see " + log);
+    }
+}
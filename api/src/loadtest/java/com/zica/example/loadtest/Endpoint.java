@@ -0,0 +1,59 @@
+package com.zica.example.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+
+/**
+ * The DataApi operations driven by the load test
+ */
+enum Endpoint {
+    LIST("list"),
+    SAVE("save"),
+    UPDATE("update"),
+    DECRYPT("decrypt");
+
+    private static final String VALUE = "{\"data\":\"a value of a reasonable size to be saved\"}";
+
+    private final String tag;
+
+    Endpoint(String tag) {
+        this.tag = tag;
+    }
+
+    String getTag() {
+        return this.tag;
+    }
+
+    static Endpoint of(String tag) {
+        for (var endpoint : values()) {
+            if (endpoint.tag.equals(tag)) {
+                return endpoint;
+            }
+        }
+        throw new IllegalArgumentException("Unknown endpoint " + tag + ", expected list, save, update or decrypt");
+    }
+
+    /**
+     * @param id an existing record, for the operations on a single record
+     */
+    HttpRequest request(URI base, long id, Duration timeout) {
+        var builder = HttpRequest.newBuilder().timeout(timeout);
+        switch (this) {
+            case LIST:
+                return builder.uri(base.resolve("/data?limit=100")).GET().build();
+            case SAVE:
+                return builder.uri(base.resolve("/data"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(VALUE))
+                        .build();
+            case UPDATE:
+                return builder.uri(base.resolve("/data/" + id))
+                        .header("Content-Type", "application/json")
+                        .PUT(HttpRequest.BodyPublishers.ofString(VALUE))
+                        .build();
+            default:
+                return builder.uri(base.resolve("/data/" + id + "/decrypted")).GET().build();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.zica.example.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The latencies and errors of the measured requests of an endpoint. The latency of a request is measured from
+ * the time it was scheduled, not from the time it was sent, so a stalled server is charged for every request
+ * it held back (no coordinated omission)
+ */
+class EndpointStats {
+
+    private static final long HIGHEST_LATENCY = TimeUnit.MINUTES.toMicros(1);
+
+    private final Recorder recorder = new Recorder(HIGHEST_LATENCY, 3);
+    private final LongAdder errors = new LongAdder();
+
+    void recordSuccess(long latencyNanos) {
+        this.recorder.recordValue(Math.min(HIGHEST_LATENCY, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+    }
+
+    void recordError() {
+        this.errors.increment();
+    }
+
+    /**
+     * @return the latencies of the successful requests, in microseconds
+     */
+    Histogram getHistogram() {
+        return this.recorder.getIntervalHistogram();
+    }
+
+    long getErrors() {
+        return this.errors.sum();
+    }
+}
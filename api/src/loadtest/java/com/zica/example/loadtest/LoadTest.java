@@ -0,0 +1,145 @@
+package com.zica.example.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zica.example.SpringBootApplication;
+import com.zica.example.model.NewData;
+import com.zica.example.service.DataService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test of the DataApi endpoints through the real Jetty server, against the embedded H2 database. Run it
+ * with the Gradle task loadTest; the options are system properties (see the README), and the arguments are
+ * passed to the application, e.g. --cryptography-mode=envelope.
+ *
+ * The traffic is open-loop: the requests are sent at a fixed rate whatever the latency of the previous ones,
+ * like independent clients would, and the endpoint of each request is drawn from the traffic mix. The requests
+ * of the warm-up are not measured. The percentiles and throughput of each endpoint are printed and written to
+ * build/reports/loadtest, with the full latency distribution of each endpoint, and compared with the baseline:
+ * the run fails when an endpoint got slower or lost throughput beyond the tolerance.
+ */
+public class LoadTest {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    public static void main(String[] args) throws Exception {
+        var rate = Integer.getInteger("loadtest.rate", 100);
+        var duration = Duration.ofSeconds(Integer.getInteger("loadtest.duration", 30));
+        var warmUp = Duration.ofSeconds(Integer.getInteger("loadtest.warm-up", 10));
+        var mix = new TrafficMix(System.getProperty("loadtest.mix", "list=1,save=2,update=2,decrypt=5"));
+        var records = Integer.getInteger("loadtest.records", 1000);
+        var baseline = Path.of(System.getProperty("loadtest.baseline", "src/loadtest/baseline.json"));
+        var tolerance = Double.parseDouble(System.getProperty("loadtest.tolerance", "0.25"));
+        var updateBaseline = Boolean.getBoolean("loadtest.update-baseline");
+        var reportDirectory = Path.of(System.getProperty("loadtest.report", "build/reports/loadtest"));
+
+        var context = new SpringApplicationBuilder(SpringBootApplication.class)
+                .properties("server.port=0", "logging.level.root=WARN")
+                .run(args);
+        LoadTestReport report;
+        try {
+            var dataService = context.getBean(DataService.class);
+            var ids = new long[records];
+            for (int i = 0; i < records; i++) {
+                ids[i] = dataService.saveData(new NewData().data("a value to be read " + i)).getId();
+            }
+            var port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+            System.out.printf("%d requests per second of %s for %d s, after %d s of warm-up%n",
+                    rate, mix, duration.toSeconds(), warmUp.toSeconds());
+            report = run(URI.create("http://localhost:" + port), rate, warmUp, duration, mix, ids);
+        } finally {
+            context.close();
+        }
+
+        report.print(System.out);
+        report.write(reportDirectory);
+        var objectMapper = new ObjectMapper();
+        if (updateBaseline) {
+            Files.createDirectories(baseline.toAbsolutePath().getParent());
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(baseline.toFile(), report.toJson(objectMapper));
+            System.out.println("Baseline written to " + baseline);
+            return;
+        }
+        if (!Files.exists(baseline)) {
+            System.out.println("No baseline at " + baseline + ", run with -Ploadtest.update-baseline=true to keep one");
+            return;
+        }
+
+        var regressions = report.compare(objectMapper.readTree(baseline.toFile()), tolerance);
+        if (!regressions.isEmpty()) {
+            System.out.println("Regressions over " + Math.round(tolerance * 100) + "% of the baseline:");
+            regressions.forEach(regression -> System.out.println("  " + regression));
+            System.exit(1);
+        }
+        System.out.println("No regression over " + Math.round(tolerance * 100) + "% of the baseline");
+    }
+
+    private static LoadTestReport run(URI base, int rate, Duration warmUp, Duration duration, TrafficMix mix,
+                                      long[] ids)
+            throws InterruptedException, IOException {
+        var stats = new EnumMap<Endpoint, EndpointStats>(Endpoint.class);
+        mix.getEndpoints().forEach(endpoint -> stats.put(endpoint, new EndpointStats()));
+
+        var executor = Executors.newFixedThreadPool(4);
+        var client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(executor).build();
+        var interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        var start = System.nanoTime();
+        var measureStart = start + warmUp.toNanos();
+        var requests = rate * (warmUp.toSeconds() + duration.toSeconds());
+        var pending = new ArrayList<CompletableFuture<?>>();
+
+        for (long i = 0; i < requests; i++) {
+            // the time the request is due, which is also the start of its latency
+            var scheduled = start + i * interval;
+            var wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            var endpoint = mix.next();
+            var request = endpoint.request(base, ids[ThreadLocalRandom.current().nextInt(ids.length)], REQUEST_TIMEOUT);
+            var response = client.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+            if (scheduled >= measureStart) {
+                var endpointStats = stats.get(endpoint);
+                pending.add(response.handle((answer, error) -> {
+                    if (error == null && answer.statusCode() / 100 == 2) {
+                        endpointStats.recordSuccess(System.nanoTime() - scheduled);
+                    } else {
+                        endpointStats.recordError();
+                    }
+                    return null;
+                }));
+            }
+        }
+
+        try {
+            CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new))
+                    .get(REQUEST_TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            throw new IOException("The last requests didn't complete", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        // until the last response, so a server that fell behind the rate gets a lower throughput
+        var elapsed = Duration.ofNanos(System.nanoTime() - measureStart);
+        return new LoadTestReport(rate, mix.toString(), elapsed, stats);
+    }
+}
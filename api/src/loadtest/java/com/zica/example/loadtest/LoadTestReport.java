@@ -0,0 +1,137 @@
+package com.zica.example.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The results of a load test run per endpoint, and their comparison with a baseline. The latencies are in
+ * milliseconds
+ */
+class LoadTestReport {
+
+    private static final double MICROS_PER_MILLI = 1000.0;
+
+    private final int rate;
+    private final String mix;
+    private final Duration elapsed;
+    private final Map<Endpoint, Histogram> histograms = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, Long> errors = new EnumMap<>(Endpoint.class);
+
+    LoadTestReport(int rate, String mix, Duration elapsed, Map<Endpoint, EndpointStats> stats) {
+        this.rate = rate;
+        this.mix = mix;
+        this.elapsed = elapsed;
+        stats.forEach((endpoint, endpointStats) -> {
+            this.histograms.put(endpoint, endpointStats.getHistogram());
+            this.errors.put(endpoint, endpointStats.getErrors());
+        });
+    }
+
+    void print(PrintStream out) {
+        out.printf("%-8s %9s %9s %10s %10s %10s %10s %10s%n",
+                "", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        this.histograms.forEach((endpoint, histogram) -> out.printf("%-8s %9d %9d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                endpoint.getTag(), histogram.getTotalCount(), this.errors.get(endpoint), this.throughput(histogram),
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)),
+                millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue())));
+    }
+
+    /**
+     * Writes the summary as JSON and the latency distribution of each endpoint in the HdrHistogram percentile
+     * format, which the HdrHistogram plotter charts
+     */
+    void write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        var objectMapper = new ObjectMapper();
+        objectMapper.writerWithDefaultPrettyPrinter()
+                .writeValue(directory.resolve("results.json").toFile(), this.toJson(objectMapper));
+        for (var entry : this.histograms.entrySet()) {
+            try (var out = new PrintStream(directory.resolve(entry.getKey().getTag() + ".hgrm").toFile())) {
+                entry.getValue().outputPercentileDistribution(out, MICROS_PER_MILLI);
+            }
+        }
+    }
+
+    ObjectNode toJson(ObjectMapper objectMapper) {
+        var json = objectMapper.createObjectNode()
+                .put("rate", this.rate)
+                .put("mix", this.mix);
+        var endpoints = json.putObject("endpoints");
+        this.histograms.forEach((endpoint, histogram) -> endpoints.putObject(endpoint.getTag())
+                .put("requests", histogram.getTotalCount())
+                .put("errors", this.errors.get(endpoint))
+                .put("throughput", Math.round(this.throughput(histogram) * 10) / 10.0)
+                .put("p50", millis(histogram.getValueAtPercentile(50)))
+                .put("p99", millis(histogram.getValueAtPercentile(99)))
+                .put("p999", millis(histogram.getValueAtPercentile(99.9)))
+                .put("max", millis(histogram.getMaxValue())));
+        return json;
+    }
+
+    /**
+     * @param tolerance how much worse than the baseline a result can be, 0.25 for 25%
+     * @return the results worse than the baseline beyond the tolerance. The latencies under a millisecond
+     * are not compared, as they are mostly noise
+     */
+    List<String> compare(JsonNode baseline, double tolerance) {
+        var regressions = new ArrayList<String>();
+        if (baseline.path("rate").asInt() != this.rate || !baseline.path("mix").asText().equals(this.mix)) {
+            regressions.add("the baseline is of " + baseline.path("rate").asInt() + " requests per second of "
+                    + baseline.path("mix").asText() + ", record it again for this rate and mix");
+            return regressions;
+        }
+
+        var current = this.toJson(new ObjectMapper()).path("endpoints");
+        current.fields().forEachRemaining(entry -> {
+            var endpoint = entry.getKey();
+            var result = entry.getValue();
+            var expected = baseline.path("endpoints").path(endpoint);
+            if (expected.isMissingNode()) {
+                return;
+            }
+
+            for (var percentile : List.of("p50", "p99", "p999")) {
+                var limit = Math.max(1, expected.path(percentile).asDouble() * (1 + tolerance));
+                if (result.path(percentile).asDouble() > limit) {
+                    regressions.add(String.format("%s %s: %.2f ms, baseline %.2f ms", endpoint, percentile,
+                            result.path(percentile).asDouble(), expected.path(percentile).asDouble()));
+                }
+            }
+            if (result.path("throughput").asDouble() < expected.path("throughput").asDouble() * (1 - tolerance)) {
+                regressions.add(String.format("%s throughput: %.1f requests per second, baseline %.1f", endpoint,
+                        result.path("throughput").asDouble(), expected.path("throughput").asDouble()));
+            }
+            var errorRate = errorRate(result);
+            if (errorRate > errorRate(expected) + 0.01) {
+                regressions.add(String.format("%s errors: %.1f%% of the requests, baseline %.1f%%", endpoint,
+                        errorRate * 100, errorRate(expected) * 100));
+            }
+        });
+        return regressions;
+    }
+
+    private double throughput(Histogram histogram) {
+        return histogram.getTotalCount() / (this.elapsed.toNanos() / 1e9);
+    }
+
+    private static double errorRate(JsonNode result) {
+        var requests = result.path("requests").asLong() + result.path("errors").asLong();
+        return requests == 0 ? 0 : (double) result.path("errors").asLong() / requests;
+    }
+
+    private static double millis(long micros) {
+        return Math.round(micros / MICROS_PER_MILLI * 100) / 100.0;
+    }
+}
@@ -0,0 +1,54 @@
+package com.zica.example.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The share of each endpoint in the traffic, from weights like list=1,save=2,update=2,decrypt=5
+ */
+class TrafficMix {
+
+    private final Map<Endpoint, Integer> weights = new EnumMap<>(Endpoint.class);
+    private final Endpoint[] slots;
+
+    TrafficMix(String mix) {
+        var total = 0;
+        for (var entry : mix.split(",")) {
+            var parts = entry.trim().split("=");
+            var weight = Integer.parseInt(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("The weight of " + parts[0] + " is negative");
+            }
+            this.weights.put(Endpoint.of(parts[0].trim()), weight);
+            total += weight;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("The traffic mix is empty");
+        }
+
+        this.slots = new Endpoint[total];
+        var slot = 0;
+        for (var entry : this.weights.entrySet()) {
+            for (int i = 0; i < entry.getValue(); i++) {
+                this.slots[slot++] = entry.getKey();
+            }
+        }
+    }
+
+    Endpoint next() {
+        return this.slots[ThreadLocalRandom.current().nextInt(this.slots.length)];
+    }
+
+    Iterable<Endpoint> getEndpoints() {
+        return this.weights.keySet();
+    }
+
+    @Override
+    public String toString() {
+        var text = new StringBuilder();
+        this.weights.forEach((endpoint, weight) -> text.append(text.length() == 0 ? "" : ",")
+                .append(endpoint.getTag()).append('=').append(weight));
+        return text.toString();
+    }
+}
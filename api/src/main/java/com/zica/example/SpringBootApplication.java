@@ -1,11 +1,46 @@
 package com.zica.example;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.zica.example.admission.AdmissionFilter;
+import com.zica.example.monitoring.RequestIdFilter;
+import com.zica.example.monitoring.StageTimer;
+import com.zica.example.monitoring.TimedHttpMessageConverter;
+import com.zica.example.server.VirtualThreadPool;
+import com.zica.example.service.BoundedExecutor;
+import com.zica.example.sharding.DataShards;
+import com.zica.example.sharding.ShardRoutingDataSource;
+import com.zica.example.sharding.ShardSchemaIntegrator;
+import com.zica.example.sharding.ShardedSequenceGenerator;
+import com.zica.example.startup.LazyInitializationBeanFactoryPostProcessor;
+import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.web.embedded.jetty.JettyServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
 @org.springframework.boot.autoconfigure.SpringBootApplication
 public class SpringBootApplication {
 
@@ -13,6 +48,180 @@ public class SpringBootApplication {
 		SpringApplication.run(SpringBootApplication.class, args);
 	}
 
+	/**
+	 * Creates the beans when they are first used instead of during the startup (see the fast-startup profile)
+	 */
+	@Bean
+	@ConditionalOnProperty(name = "lazy-initialization", havingValue = "true")
+	public static LazyInitializationBeanFactoryPostProcessor lazyInitializationBeanFactoryPostProcessor() {
+		return new LazyInitializationBeanFactoryPostProcessor();
+	}
+
+	/**
+	 * The databases the data records are spread over: one per url of data-shard-urls, or only the
+	 * spring.datasource one when there are none
+	 */
+	@Bean(destroyMethod = "shutdown")
+	public DataShards dataShards(@Value("${data-shard-urls:}") String[] urls) {
+		return new DataShards(Math.max(1, urls.length));
+	}
+
+	/**
+	 * Replaces the data source of Spring Boot when the data is sharded. The shards are connected with
+	 * the spring.datasource username and password
+	 */
+	@Bean
+	@ConditionalOnExpression("!'${data-shard-urls:}'.isEmpty()")
+	public DataSource dataSource(DataSourceProperties properties, @Value("${data-shard-urls}") String[] urls) {
+		return new ShardRoutingDataSource(Arrays.stream(urls)
+				.map(url -> properties.initializeDataSourceBuilder().url(url.trim()).build())
+				.collect(Collectors.toList()));
+	}
+
+	/**
+	 * Hands the amount of shards to the id generator of the records, and creates the schema in every shard
+	 */
+	@Bean
+	public HibernatePropertiesCustomizer shardsHibernatePropertiesCustomizer(DataShards dataShards) {
+		return properties -> {
+			properties.put(ShardedSequenceGenerator.SHARDS_SETTING, dataShards.getCount());
+			properties.put(EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER,
+					(IntegratorProvider) () -> List.of(new ShardSchemaIntegrator(dataShards)));
+		};
+	}
+
+	/**
+	 * Encrypts and decrypts the records of the batch requests. It is bounded to not compete with
+	 * the request threads for all the CPUs
+	 * @param parallelism 0 uses the amount of available processors
+	 */
+	@Bean(destroyMethod = "shutdown")
+	public ForkJoinPool batchCryptographyPool(@Value("${batch-cryptography-parallelism:0}") int parallelism) {
+		if (parallelism <= 0) {
+			parallelism = Runtime.getRuntime().availableProcessors();
+		}
+		return new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Runs the cryptography of the requests on its own threads when the request-execution-mode is async.
+	 * When it is virtual the cryptography runs on the request threads, but only threads at a time, so the
+	 * virtual threads can't oversubscribe the CPUs
+	 * @param threads 0 uses the amount of available processors
+	 */
+	@Bean(destroyMethod = "shutdown")
+	public BoundedExecutor cryptographyExecutor(@Value("${request-execution-mode:sync}") String mode,
+												@Value("${cryptography-executor-threads:0}") int threads,
+												@Value("${cryptography-executor-queue-size:256}") int queueSize) {
+		if (threads <= 0) {
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+
+		switch (mode) {
+			case "sync":
+				return BoundedExecutor.direct("cryptography");
+			case "async":
+				return new BoundedExecutor("cryptography", threads, queueSize);
+			case "virtual":
+				return BoundedExecutor.limited("cryptography", threads, queueSize);
+			default:
+				throw new IllegalArgumentException("Unknown request-execution-mode: " + mode);
+		}
+	}
+
+	/**
+	 * Runs the blocking database calls of the requests on its own threads when the request-execution-mode
+	 * is async. There is no point in having more threads than database connections. When it is virtual
+	 * the calls block the virtual request threads, which is cheap
+	 */
+	@Bean(destroyMethod = "shutdown")
+	public BoundedExecutor databaseExecutor(@Value("${request-execution-mode:sync}") String mode,
+											@Value("${database-executor-threads:10}") int threads,
+											@Value("${database-executor-queue-size:256}") int queueSize) {
+		switch (mode) {
+			case "sync":
+			case "virtual":
+				return BoundedExecutor.direct("database");
+			case "async":
+				return new BoundedExecutor("database", threads, queueSize);
+			default:
+				throw new IllegalArgumentException("Unknown request-execution-mode: " + mode);
+		}
+	}
+
+	/**
+	 * Jetty runs every request on a new virtual thread when the request-execution-mode is virtual. Needs Java 21
+	 */
+	@Bean
+	@ConditionalOnProperty(name = "request-execution-mode", havingValue = "virtual")
+	public WebServerFactoryCustomizer<JettyServletWebServerFactory> virtualThreadsCustomizer() {
+		return factory -> factory.setThreadPool(new VirtualThreadPool("jetty-virtual-"));
+	}
+
+	/**
+	 * Times the stages of the requests (cryptography, Base64, repository, conversion and serialisation)
+	 * in metrics and JFR events
+	 */
+	@Bean
+	public StageTimer stageTimer(@Value("${stage-instrumentation-enabled:true}") boolean enabled) {
+		return new StageTimer(enabled);
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = "stage-instrumentation-enabled", havingValue = "true", matchIfMissing = true)
+	public RequestIdFilter requestIdFilter() {
+		return new RequestIdFilter();
+	}
+
+	/**
+	 * Answers the data requests over the adaptive concurrency limit of their kind with 503
+	 */
+	@Bean
+	@ConditionalOnProperty(name = "admission-control-enabled", havingValue = "true", matchIfMissing = true)
+	public AdmissionFilter admissionFilter(ObjectMapper objectMapper,
+										   @Value("${admission-control-initial-limit:20}") int initialLimit,
+										   @Value("${admission-control-min-limit:4}") int minLimit,
+										   @Value("${admission-control-max-limit:200}") int maxLimit) {
+		return new AdmissionFilter(objectMapper, initialLimit, minLimit, maxLimit);
+	}
+
+	/**
+	 * Replaces the CBOR converter of Spring MVC, with the ObjectMapper configuration of Spring Boot
+	 */
+	@Bean
+	public MappingJackson2CborHttpMessageConverter mappingJackson2CborHttpMessageConverter(
+			Jackson2ObjectMapperBuilder builder) {
+		return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+	}
+
+	/**
+	 * Replaces the Smile converter of Spring MVC, with the ObjectMapper configuration of Spring Boot. The
+	 * binary values are written as they are, instead of in 7 bits per byte
+	 */
+	@Bean
+	public MappingJackson2SmileHttpMessageConverter mappingJackson2SmileHttpMessageConverter(
+			Jackson2ObjectMapperBuilder builder) {
+		var factory = new SmileFactory().disable(SmileGenerator.Feature.ENCODE_BINARY_AS_7BIT);
+		return new MappingJackson2SmileHttpMessageConverter(builder.factory(factory).build());
+	}
+
+	/**
+	 * Times the serialisation of the responses by the Jackson converters of Spring MVC (JSON, CBOR and Smile).
+	 * The wrapped converters aren't Jackson converters anymore for the advices, so @JsonView isn't applied
+	 */
+	@Bean
+	@ConditionalOnProperty(name = "stage-instrumentation-enabled", havingValue = "true", matchIfMissing = true)
+	public WebMvcConfigurer timedMessageConvertersConfigurer(StageTimer stageTimer) {
+		return new WebMvcConfigurer() {
+			@Override
+			public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+				converters.replaceAll(converter -> converter instanceof AbstractJackson2HttpMessageConverter
+						? new TimedHttpMessageConverter((AbstractJackson2HttpMessageConverter) converter, stageTimer)
+						: converter);
+			}
+		};
+	}
+
 	@Bean
 	public WebMvcConfigurer corsConfigurer() {
 		return new WebMvcConfigurer() {
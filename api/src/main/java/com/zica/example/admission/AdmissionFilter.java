@@ -0,0 +1,137 @@
+package com.zica.example.admission;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zica.example.exception.ErrorMessage;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Admission control of the data requests: each kind of request ({@link AdmissionOperation}) has a
+ * {@link ConcurrencyLimiter}, and the requests over its current limit are answered with 503 and Retry-After
+ * right away, before they take a thread or any CPU. Under overload the server then keeps answering the
+ * requests it accepts in about their usual time, instead of queueing every request until they all time out.
+ *
+ * A request counts against the limit until its response is complete, also when it's processed asynchronously.
+ */
+public class AdmissionFilter extends OncePerRequestFilter implements MeterBinder {
+
+    private final ObjectMapper objectMapper;
+    private final Map<AdmissionOperation, ConcurrencyLimiter> limiters = new EnumMap<>(AdmissionOperation.class);
+
+    public AdmissionFilter(ObjectMapper objectMapper, int initialLimit, int minLimit, int maxLimit) {
+        this.objectMapper = objectMapper;
+        for (var operation : AdmissionOperation.values()) {
+            this.limiters.put(operation, new ConcurrencyLimiter(initialLimit, minLimit, maxLimit));
+        }
+    }
+
+    public ConcurrencyLimiter getLimiter(AdmissionOperation operation) {
+        return this.limiters.get(operation);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        var operation = AdmissionOperation.of(request);
+        if (operation == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        var limiter = this.limiters.get(operation);
+        if (!limiter.tryAcquire()) {
+            this.reject(response);
+            return;
+        }
+
+        var start = System.nanoTime();
+        var released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                limiter.release(System.nanoTime() - start);
+            }
+        };
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent asyncEvent) {
+                        release.run();
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent asyncEvent) {
+                        release.run();
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent asyncEvent) {
+                        release.run();
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent asyncEvent) {
+                    }
+                });
+            } else {
+                release.run();
+            }
+        }
+    }
+
+    private void reject(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        this.objectMapper.writeValue(response.getOutputStream(),
+                new ErrorMessage("The server is too busy, try again later"));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.limiters.forEach((operation, limiter) -> {
+            Gauge.builder("admission.limit", limiter, ConcurrencyLimiter::getLimit)
+                    .tag("operation", operation.getTag())
+                    .description("The current amount of requests processed at the same time")
+                    .register(registry);
+            Gauge.builder("admission.in.flight", limiter, ConcurrencyLimiter::getInFlight)
+                    .tag("operation", operation.getTag())
+                    .description("The requests being processed")
+                    .register(registry);
+            Gauge.builder("admission.latency", limiter, ConcurrencyLimiter::getLongTermLatency)
+                    .tag("operation", operation.getTag())
+                    .description("The long term average latency the limit is based on")
+                    .baseUnit("milliseconds")
+                    .register(registry);
+            FunctionCounter.builder("admission.requests", limiter, ConcurrencyLimiter::getAccepted)
+                    .tag("operation", operation.getTag())
+                    .tag("result", "accepted")
+                    .description("The requests accepted or rejected by the admission control")
+                    .register(registry);
+            FunctionCounter.builder("admission.requests", limiter, ConcurrencyLimiter::getRejected)
+                    .tag("operation", operation.getTag())
+                    .tag("result", "rejected")
+                    .description("The requests accepted or rejected by the admission control")
+                    .register(registry);
+        });
+    }
+}
@@ -0,0 +1,59 @@
+package com.zica.example.admission;
+
+import org.springframework.http.HttpMethod;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.regex.Pattern;
+
+/**
+ * The kinds of requests with their own concurrency limit, as their costs are very different: the decryptions
+ * are bound by the RSA work, the writes by the encryption and the database, and the lists by the database and
+ * the serialisation
+ */
+public enum AdmissionOperation {
+    DECRYPT("decrypt"),
+    WRITE("write"),
+    LIST("list");
+
+    private static final Pattern DECRYPTED = Pattern.compile("/data/[^/]+/decrypted");
+    private static final Pattern UPDATE = Pattern.compile("/data/[^/]+");
+
+    private final String tag;
+
+    AdmissionOperation(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * @return the tag of the operation in the metrics
+     */
+    public String getTag() {
+        return this.tag;
+    }
+
+    /**
+     * @return the operation of the request, or null when it's not limited (e.g. the actuator endpoints)
+     */
+    public static AdmissionOperation of(HttpServletRequest request) {
+        var path = request.getRequestURI().substring(request.getContextPath().length());
+        var method = HttpMethod.resolve(request.getMethod());
+        if (method == HttpMethod.GET) {
+            if (path.equals("/data")) {
+                return LIST;
+            }
+            if (DECRYPTED.matcher(path).matches()) {
+                return DECRYPT;
+            }
+        } else if (method == HttpMethod.POST) {
+            if (path.equals("/data/decrypted:batch")) {
+                return DECRYPT;
+            }
+            if (path.equals("/data") || path.equals("/data:batch")) {
+                return WRITE;
+            }
+        } else if (method == HttpMethod.PUT && UPDATE.matcher(path).matches()) {
+            return WRITE;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,132 @@
+package com.zica.example.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the amount of requests of one kind processed at the same time, to a limit that follows their latency
+ * (a gradient limit). While the latency stays close to its long term average the limit grows, so the server
+ * takes as much work as it can; when the requests start to queue and their latency grows, the limit shrinks
+ * in proportion, down to the amount the server processes without queueing.
+ *
+ * The limit is recalculated with the average latency of every window of requests: the gradient is the long
+ * term average over the window average (at most 1, at least 0.5), and the new limit is the current one times
+ * the gradient plus a few requests of headroom, smoothed. The limit only grows while at least half of it is
+ * used, otherwise a quiet period would leave a limit that was never tested.
+ */
+public class ConcurrencyLimiter {
+
+    /**
+     * Requests whose latency is averaged before the limit is recalculated
+     */
+    private static final int WINDOW_SIZE = 10;
+    /**
+     * The weight of each window in the long term average latency
+     */
+    private static final double LONG_TERM_WEIGHT = 0.02;
+    /**
+     * How much slower than the long term average the requests can get before the limit shrinks
+     */
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private volatile double limit;
+    private double longTermNanos;
+    private long windowNanos;
+    private int windowRequests;
+    private int windowMaxInFlight;
+
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("The limits must be 1 <= minimum <= initial <= maximum");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * @return whether the request can be processed. When it can, {@link #release} must be called once it's done
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            var current = this.inFlight.get();
+            if (current >= (int) this.limit) {
+                this.rejected.increment();
+                return false;
+            }
+            if (this.inFlight.compareAndSet(current, current + 1)) {
+                this.accepted.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param latencyNanos how long the request took, from its acquire
+     */
+    public void release(long latencyNanos) {
+        var inFlight = this.inFlight.getAndDecrement();
+        synchronized (this) {
+            this.windowNanos += latencyNanos;
+            this.windowRequests++;
+            this.windowMaxInFlight = Math.max(this.windowMaxInFlight, inFlight);
+            if (this.windowRequests >= WINDOW_SIZE) {
+                this.update((double) this.windowNanos / this.windowRequests, this.windowMaxInFlight);
+                this.windowNanos = 0;
+                this.windowRequests = 0;
+                this.windowMaxInFlight = 0;
+            }
+        }
+    }
+
+    private void update(double windowAverageNanos, int maxInFlight) {
+        if (this.longTermNanos == 0) {
+            this.longTermNanos = windowAverageNanos;
+            return;
+        }
+        this.longTermNanos += (windowAverageNanos - this.longTermNanos) * LONG_TERM_WEIGHT;
+        if (this.longTermNanos > windowAverageNanos * 2) {
+            // the requests got much faster (e.g. after a burst of slow ones), the average catches up faster
+            this.longTermNanos *= 0.95;
+        }
+
+        var gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * this.longTermNanos / windowAverageNanos));
+        var headroom = Math.sqrt(this.limit);
+        var newLimit = this.limit * gradient + headroom;
+        if (newLimit > this.limit && maxInFlight < this.limit / 2) {
+            return;
+        }
+        newLimit = this.limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, newLimit));
+    }
+
+    public int getLimit() {
+        return (int) this.limit;
+    }
+
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    /**
+     * @return the long term average latency, in milliseconds. 0 until the first window of requests
+     */
+    public synchronized double getLongTermLatency() {
+        return this.longTermNanos / 1_000_000;
+    }
+
+    public long getAccepted() {
+        return this.accepted.sum();
+    }
+
+    public long getRejected() {
+        return this.rejected.sum();
+    }
+}
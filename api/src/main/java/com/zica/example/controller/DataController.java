@@ -1,79 +1,489 @@
 package com.zica.example.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.zica.example.api.DataApi;
+import com.zica.example.db.DataRow;
+import com.zica.example.exception.BatchTooLargeException;
+import com.zica.example.exception.ErrorMessage;
 import com.zica.example.model.Data;
+import com.zica.example.model.DataBatchResult;
+import com.zica.example.model.DecryptedDataResult;
+import com.zica.example.model.EncryptedData;
 import com.zica.example.model.NewData;
-import com.zica.example.repository.DataRepository;
+import com.zica.example.monitoring.Stage;
+import com.zica.example.monitoring.StageTimer;
+import com.zica.example.service.BoundedExecutor;
+import com.zica.example.service.CiphertextFormat;
 import com.zica.example.service.DataService;
+import com.zica.example.service.DecryptedData;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.HttpMediaTypeNotAcceptableException;
+import org.springframework.web.accept.ContentNegotiationManager;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @RestController
 public class DataController implements DataApi {
 
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    static final String APPLICATION_CBOR_VALUE = "application/cbor";
+    static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    private static final List<MediaType> LIST_FORMATS = List.of(MediaType.APPLICATION_JSON,
+            MediaType.valueOf(APPLICATION_CBOR_VALUE), MediaType.valueOf(APPLICATION_SMILE_VALUE));
+
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_VALUE_LENGTH = 4096;
+
     @Autowired
-    private DataRepository dataRepository;
+    private ObjectMapper objectMapper;
 
     @Autowired
     private DataService dataService;
 
+    @Autowired
+    private BoundedExecutor databaseExecutor;
+
+    @Autowired
+    private StageTimer stageTimer;
+
+    // lazy, as these only exist with a web server and the benchmarks start the application without one
+    @Lazy
+    @Autowired
+    private NativeWebRequest request;
+
+    @Lazy
+    @Autowired
+    private ContentNegotiationManager contentNegotiationManager;
+
     /**
-     * Retrieves all existing data
+     * Retrieves all existing data, or one page of it when limit, afterId or value are informed, in JSON or in
+     * the binary formats, where the encrypted values are raw bytes. The ETag is the version of the table, so a
+     * client that has the current version gets a 304 without any query
      */
     @Override
-    public ResponseEntity<List<Data>> retrieveData() {
-        var data = dataRepository.findAll().stream()
-                .map(this::convertDbDataToApiData)
-                .collect(Collectors.toList());
+    @GetMapping(value = "/data", produces = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE,
+            APPLICATION_SMILE_VALUE})
+    public CompletableFuture<ResponseEntity<List<EncryptedData>>> retrieveData(Integer limit, Long afterId,
+                                                                               String value) {
+        // every format has its own ETag: "<version>", "<version>-cbor" or "<version>-smile"
+        var format = this.negotiateListFormat();
+        var suffix = format.equals(MediaType.APPLICATION_JSON) ? ""
+                : "-" + format.getSubtype().substring(format.getSubtype().lastIndexOf('-') + 1);
+        // taken before the query, so a write during the query gives the next request another version
+        var eTag = this.dataService.getDataVersion().map(version -> '"' + version + suffix + '"').orElse(null);
+        if (eTag != null && this.ifNoneMatch().contains(eTag)) {
+            return CompletableFuture.completedFuture(notModified(eTag));
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            var dbData = value != null ? this.findDataByValue(value, limit, afterId)
+                    : limit == null && afterId == null ? this.dataService.findAllData()
+                    : this.dataService.findData(afterId == null ? 0 : afterId, limit == null ? MAX_PAGE_SIZE : limit);
+
+            List<EncryptedData> data;
+            try (var ignored = this.stageTimer.start(Stage.CONVERSION)) {
+                data = dbData.stream()
+                        .map(DataController::convertDbDataToEncryptedData)
+                        .collect(Collectors.toList());
+            }
+
+            return ok(eTag, data);
+        }, this.databaseExecutor);
+    }
+
+    /**
+     * Streams the existing data straight from the database, one JSON per line. The records with a value
+     * are one page, like in the other formats. The parameters are checked here instead of by the bean
+     * validation, whose error can't be answered in NDJSON: once the body streams, the status is sent
+     */
+    @GetMapping(value = "/data", produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> retrieveDataStream(
+            @RequestParam(value = "limit", required = false) Integer limit,
+            @RequestParam(value = "afterId", required = false) Long afterId,
+            @RequestParam(value = "value", required = false) String value) {
+        if (limit != null && limit < 1) {
+            return this.badRequest("The limit must be at least 1");
+        }
+        if (value != null && value.length() > MAX_VALUE_LENGTH) {
+            return this.badRequest("The value can't be longer than " + MAX_VALUE_LENGTH + " characters");
+        }
+
+        StreamingResponseBody body = outputStream -> {
+            Consumer<DataRow> write = row -> {
+                try {
+                    outputStream.write(this.objectMapper.writeValueAsBytes(this.convert(row)));
+                    outputStream.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+
+            if (value != null) {
+                this.findDataByValue(value, limit, afterId).forEach(write);
+            } else {
+                this.dataService.forEachData(afterId == null ? 0 : afterId, limit == null ? Long.MAX_VALUE : limit,
+                        write);
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.valueOf(APPLICATION_NDJSON_VALUE))
+                .body(body);
+    }
+
+    /**
+     * @return a 400 with the error message in JSON, like the ones of the exception handlers
+     */
+    private ResponseEntity<StreamingResponseBody> badRequest(String message) {
+        return ResponseEntity.badRequest()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(outputStream -> this.objectMapper.writeValue(outputStream, new ErrorMessage(message)));
+    }
+
+    /**
+     * Finds the data value of one specific record. The ETag is the version of the table and the version of
+     * the record: while the table has the same version the client gets a 304 without any query, and
+     * otherwise when the record has the same version, without decrypting it
+     */
+    @Override
+    public CompletableFuture<ResponseEntity<Data>> getDecryptedData(Long id) {
+        var dataVersion = this.dataService.getDataVersion();
+        if (dataVersion.isEmpty()) {
+            // handles Optional.empty
+            return this.dataService.getDecryptedDataAsync(id)
+                    .thenApply(decrypted -> ResponseEntity.of(decrypted.map(value -> new Data().id(id).data(value))));
+        }
+
+        // only the ETags of this endpoint, "<epoch>-<table version>-<record version>", of the current epoch.
+        // The ETags of the lists have no record version
+        var epoch = dataVersion.get().substring(0, dataVersion.get().indexOf('-'));
+        var knownVersion = DecryptedData.NO_VERSION;
+        for (var eTag : this.ifNoneMatch()) {
+            var parts = eTag.substring(1, eTag.length() - 1).split("-");
+            if (parts.length != 3 || !parts[0].equals(epoch)) {
+                continue;
+            }
+            long recordVersion;
+            try {
+                Long.parseLong(parts[1]);
+                recordVersion = Long.parseLong(parts[2]);
+            } catch (NumberFormatException e) {
+                // not one of our ETags
+                continue;
+            }
+            if ((parts[0] + "-" + parts[1]).equals(dataVersion.get())) {
+                return CompletableFuture.completedFuture(notModified(eTag));
+            }
+            knownVersion = recordVersion;
+        }
+
+        var clientVersion = knownVersion;
+        return this.dataService.getDecryptedDataAsync(id, clientVersion)
+                .thenApply(decrypted -> decrypted.map(data -> {
+                    var eTag = '"' + dataVersion.get() + "-" + data.getVersion() + '"';
+                    if (data.getVersion() == clientVersion) {
+                        return DataController.<Data>notModified(eTag);
+                    }
+                    return ok(eTag, new Data().id(id).data(data.getValue()));
+                }).orElseGet(() -> ResponseEntity.notFound().build()));
+    }
+
+    /**
+     * Decrypts several records and returns all the results together, in the order of the ids
+     */
+    @Override
+    @PostMapping(value = "/data/decrypted:batch", produces = MediaType.APPLICATION_JSON_VALUE,
+            consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<List<DecryptedDataResult>>> getDecryptedDataBatch(List<Long> ids) {
+        this.checkBatchSize(ids);
+
+        var results = new ConcurrentHashMap<Long, DecryptedDataResult>();
+        return this.dataService.getDecryptedData(ids, result -> results.put(result.getId(), result))
+                .thenApply(ignored -> {
+                    var ordered = ids.stream()
+                            .distinct()
+                            .map(results::get)
+                            .collect(Collectors.toList());
+                    return ResponseEntity.ok(ordered);
+                });
+    }
+
+    /**
+     * Decrypts several records and writes each result as soon as it is ready, one JSON per line
+     */
+    @PostMapping(value = "/data/decrypted:batch", produces = APPLICATION_NDJSON_VALUE,
+            consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getDecryptedDataBatchStream(@RequestBody List<Long> ids) {
+        this.checkBatchSize(ids);
+
+        StreamingResponseBody body = outputStream -> {
+            var decryptions = this.dataService.getDecryptedData(ids, result -> {
+                try {
+                    var line = this.objectMapper.writeValueAsBytes(result);
+                    synchronized (outputStream) {
+                        outputStream.write(line);
+                        outputStream.write('\n');
+                        outputStream.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            decryptions.join();
+        };
 
-        return ResponseEntity.ok(data);
+        return ResponseEntity.ok()
+                .contentType(MediaType.valueOf(APPLICATION_NDJSON_VALUE))
+                .body(body);
     }
 
     /**
-     * Finds the data value of one specific record
+     * Saves the new data inserted by the user. The retries with the same Idempotency-Key get the record
+     * of the first request
      */
     @Override
-    public ResponseEntity<Data> getDecryptedData(Long id) {
-        // handles Optional.empty
-        return ResponseEntity.of(
-                this.dataService.getDecryptedData(id)
-                        .map(this::convertDbDataToApiData)
-        );
+    public CompletableFuture<ResponseEntity<Data>> saveData(String idempotencyKey, @Valid NewData newData) {
+        return this.dataService.saveDataAsync(newData, idempotencyKey)
+                .thenApply(dbData -> ResponseEntity.status(HttpStatus.CREATED).body(this.convert(dbData)));
     }
 
     /**
-     * Saves the new data inserted by the user
+     * Saves several data sent as a JSON array and returns the result of each one
      */
     @Override
-    public ResponseEntity<Data> saveData(@Valid NewData newData) {
-        var dbData = this.dataService.saveData(newData);
+    @PostMapping(value = "/data:batch", produces = MediaType.APPLICATION_JSON_VALUE,
+            consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<List<DataBatchResult>>> saveDataBatch(List<NewData> newData) {
+        this.checkBatchSize(newData);
 
-        var toReturn = this.convertDbDataToApiData(dbData);
-        return ResponseEntity.status(HttpStatus.CREATED).body(toReturn);
+        return CompletableFuture.supplyAsync(() -> {
+            var results = new ArrayList<DataBatchResult>(newData.size());
+            this.dataService.saveData(newData.iterator(), results::add);
+            return ResponseEntity.ok(results);
+        }, this.databaseExecutor);
+    }
+
+    /**
+     * Saves data sent as NDJSON, reading the request and writing the results while the items are processed.
+     * A line that isn't a valid NewData only gets an error in its result
+     */
+    @PostMapping(value = "/data:batch", produces = APPLICATION_NDJSON_VALUE, consumes = APPLICATION_NDJSON_VALUE)
+    public void saveDataBatchStream(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+
+        var outputStream = response.getOutputStream();
+        try (var reader = new BufferedReader(new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8))) {
+            var items = new NdjsonItems(reader, this.objectMapper.readerFor(NewData.class));
+            this.dataService.saveData(items, result -> {
+                // the service only sees an empty item for a line that couldn't be read
+                var error = items.errors.remove(result.getIndex());
+                if (error != null) {
+                    result.error(error);
+                }
+                try {
+                    outputStream.write(this.objectMapper.writeValueAsBytes(result));
+                    outputStream.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        outputStream.flush();
     }
 
     /**
      * Updates an existing data.
      */
     @Override
-    public ResponseEntity<Data> updateData(Long id, @Valid NewData data) {
-        return ResponseEntity.of(
-                dataService.updateDataValue(id, data).stream()
-                        .map(this::convertDbDataToApiData)
-                        .findFirst()
-        );
+    public CompletableFuture<ResponseEntity<Data>> updateData(Long id, @Valid NewData data) {
+        return dataService.updateDataValueAsync(id, data)
+                .thenApply(dbData -> ResponseEntity.of(dbData.map(this::convert)));
+    }
+
+    /**
+     * One page of the records with the value, found by its blind index
+     */
+    private List<DataRow> findDataByValue(String value, Integer limit, Long afterId) {
+        return this.dataService.findDataByValue(value, afterId == null ? 0 : afterId,
+                limit == null ? MAX_PAGE_SIZE : limit);
+    }
+
+    /**
+     * @return the format of the list that Spring MVC writes for the Accept header of the request
+     */
+    private MediaType negotiateListFormat() {
+        List<MediaType> accepted;
+        try {
+            accepted = this.contentNegotiationManager.resolveMediaTypes(this.request);
+        } catch (HttpMediaTypeNotAcceptableException e) {
+            // Spring MVC answers it with a 406
+            return MediaType.APPLICATION_JSON;
+        }
+        MediaType.sortBySpecificityAndQuality(accepted);
+        for (var mediaType : accepted) {
+            for (var format : LIST_FORMATS) {
+                if (mediaType.isCompatibleWith(format)) {
+                    return format;
+                }
+            }
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+
+    /**
+     * @return the ETags of the If-None-Match header, quoted
+     */
+    private List<String> ifNoneMatch() {
+        var header = this.request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (header == null) {
+            return List.of();
+        }
+        // the comparison of If-None-Match is the weak one
+        return Arrays.stream(header.split(","))
+                .map(String::trim)
+                .map(eTag -> eTag.startsWith("W/") ? eTag.substring(2) : eTag)
+                .filter(eTag -> eTag.length() > 1 && eTag.startsWith("\"") && eTag.endsWith("\""))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param eTag null when the conditional requests are disabled
+     */
+    private static <T> ResponseEntity<T> ok(String eTag, T body) {
+        var response = ResponseEntity.ok();
+        if (eTag != null) {
+            response.eTag(eTag);
+        }
+        return response.body(body);
     }
 
-    private Data convertDbDataToApiData(com.zica.example.db.Data dbData) {
+    private static <T> ResponseEntity<T> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+    }
+
+    private void checkBatchSize(List<?> batch) {
+        if (batch.size() > MAX_BATCH_SIZE) {
+            throw new BatchTooLargeException(MAX_BATCH_SIZE);
+        }
+    }
+
+    private Data convert(com.zica.example.db.Data dbData) {
+        try (var ignored = this.stageTimer.start(Stage.CONVERSION)) {
+            return convertDbDataToApiData(dbData);
+        }
+    }
+
+    private EncryptedData convert(DataRow row) {
+        try (var ignored = this.stageTimer.start(Stage.CONVERSION)) {
+            return convertDbDataToEncryptedData(row);
+        }
+    }
+
+    /**
+     * The listed records are read as rows, not entities, and the encrypted value stays binary: it's encoded
+     * to Base64 by Jackson in JSON, and written as it is in the binary formats
+     */
+    static EncryptedData convertDbDataToEncryptedData(DataRow row) {
+        return new EncryptedData().id(row.getId()).data(CiphertextFormat.of(row));
+    }
+
+    /**
+     * The encrypted values are stored as binary and only encoded to Base64 here, to be sent as JSON
+     */
+    static Data convertDbDataToApiData(com.zica.example.db.Data dbData) {
         var apiData = new Data();
         apiData.setId(dbData.getId());
-        apiData.setData(dbData.getData());
+        apiData.setData(Base64.getEncoder().encodeToString(CiphertextFormat.of(dbData)));
         return apiData;
     }
+
+    /**
+     * The items of an NDJSON request, one per line. The blank lines are skipped, and a line that can't be read
+     * as a NewData is an empty item, with the reason in the errors by the index of the item
+     */
+    private static final class NdjsonItems implements Iterator<NewData> {
+        private final BufferedReader reader;
+        private final ObjectReader newDataReader;
+        private final Map<Integer, String> errors = new HashMap<>();
+        private String line;
+        private int index;
+
+        private NdjsonItems(BufferedReader reader, ObjectReader newDataReader) {
+            this.reader = reader;
+            this.newDataReader = newDataReader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (this.line == null) {
+                    var line = this.reader.readLine();
+                    if (line == null) {
+                        return false;
+                    }
+                    if (!line.isBlank()) {
+                        this.line = line;
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public NewData next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            var line = this.line;
+            this.line = null;
+            var index = this.index++;
+            try {
+                return this.newDataReader.readValue(line);
+            } catch (JsonProcessingException e) {
+                this.errors.put(index, "The item isn't valid JSON: " + e.getOriginalMessage());
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
 }
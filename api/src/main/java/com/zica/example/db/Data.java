@@ -1,19 +1,59 @@
 package com.zica.example.db;
 
+import com.zica.example.sharding.ShardedSequenceGenerator;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Version;
 
 @Entity
 public class Data {
+    /**
+     * Ids are reserved in blocks of the sequence, so inserts don't need a round trip for each id
+     * and can be sent to the database in JDBC batches. The ids also tell the shard of the record, see
+     * {@link com.zica.example.sharding.DataShards}
+     */
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "data_seq")
+    @GenericGenerator(name = "data_seq", strategy = "com.zica.example.sharding.ShardedSequenceGenerator", parameters = {
+            @Parameter(name = ShardedSequenceGenerator.SEQUENCE_PARAM, value = "data_seq"),
+            @Parameter(name = ShardedSequenceGenerator.INCREMENT_PARAM, value = "50")
+    })
     private long id;
-    private String data;
+
+    /**
+     * The encrypted value, in the binary {@link com.zica.example.service.CiphertextFormat}
+     */
+    private byte[] data;
+
+    /**
+     * The encrypted value as Base64 text, of the records written before the values were stored as binary.
+     * Null once the record is migrated to {@link #data}
+     */
+    @Column(name = "legacy_data")
+    private String legacyData;
+
+    /**
+     * The {@link com.zica.example.service.BlindIndex} of the value, indexed in the database. Null until the
+     * backfill reaches the records written before there was an index
+     */
+    @Column(name = "value_index")
+    private byte[] valueIndex;
+
+    /**
+     * Increases with every change of the value, also by the bulk updates of the repository, so a client
+     * can tell whether its copy of the record is still current
+     */
+    @Version
+    private long version;
 
     public Data () {}
 
-    public Data(long id, String data) {
+    public Data(long id, byte[] data) {
         this.id = id;
         this.data = data;
     }
@@ -26,12 +66,36 @@ public class Data {
         this.id = id;
     }
 
-    public String getData() {
+    public byte[] getData() {
         return data;
     }
 
-    public void setData(String data) {
+    public void setData(byte[] data) {
         this.data = data;
     }
 
+    public String getLegacyData() {
+        return legacyData;
+    }
+
+    public void setLegacyData(String legacyData) {
+        this.legacyData = legacyData;
+    }
+
+    public byte[] getValueIndex() {
+        return valueIndex;
+    }
+
+    public void setValueIndex(byte[] valueIndex) {
+        this.valueIndex = valueIndex;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
 }
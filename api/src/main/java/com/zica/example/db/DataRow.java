@@ -0,0 +1,37 @@
+package com.zica.example.db;
+
+/**
+ * A {@link Data} record as it is listed, read by the constructor expressions of the repository instead of
+ * as an entity: it's never in a persistence context, so Hibernate doesn't keep an entity entry and a
+ * snapshot of its state for the dirty checking, and it's garbage as soon as it's written to the response
+ */
+public final class DataRow {
+
+    private final long id;
+    private final byte[] data;
+    private final String legacyData;
+
+    public DataRow(long id, byte[] data, String legacyData) {
+        this.id = id;
+        this.data = data;
+        this.legacyData = legacyData;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @see Data#getData()
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @see Data#getLegacyData()
+     */
+    public String getLegacyData() {
+        return legacyData;
+    }
+}
@@ -0,0 +1,89 @@
+package com.zica.example.db;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.time.Instant;
+
+/**
+ * A POST /data saved with an Idempotency-Key and its response, so a retry with the same key gets the same
+ * response after a restart or from another instance
+ */
+@Entity
+public class IdempotentRequest {
+
+    @Id
+    @Column(name = "idempotency_key", length = 255)
+    private String idempotencyKey;
+
+    /**
+     * The {@link com.zica.example.service.BlindIndex} of the saved value, to tell a retry from another value
+     * sent with the same key without keeping the value
+     */
+    @Column(length = 32)
+    private byte[] fingerprint;
+
+    /**
+     * The id of the record created by the request
+     */
+    @Column(name = "data_id")
+    private long dataId;
+
+    /**
+     * The encrypted value of the response, as the record had it when it was created
+     */
+    @Column(length = 15001)
+    private byte[] data;
+
+    private Instant created;
+
+    public IdempotentRequest() {}
+
+    public IdempotentRequest(String idempotencyKey, byte[] fingerprint, long dataId, byte[] data, Instant created) {
+        this.idempotencyKey = idempotencyKey;
+        this.fingerprint = fingerprint;
+        this.dataId = dataId;
+        this.data = data;
+        this.created = created;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public byte[] getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(byte[] fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public long getDataId() {
+        return dataId;
+    }
+
+    public void setDataId(long dataId) {
+        this.dataId = dataId;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+
+    public Instant getCreated() {
+        return created;
+    }
+
+    public void setCreated(Instant created) {
+        this.created = created;
+    }
+}
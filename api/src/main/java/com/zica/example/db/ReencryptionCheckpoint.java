@@ -0,0 +1,56 @@
+package com.zica.example.db;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * How far the re-encryption of the records with a key got, so it resumes from there after a restart
+ */
+@Entity
+public class ReencryptionCheckpoint {
+    /**
+     * The id of the RSA key the records are re-encrypted with
+     */
+    @Id
+    private int keyId;
+
+    /**
+     * The id of the last record of the last chunk re-encrypted
+     */
+    private long lastId;
+
+    /**
+     * Set once every record is encrypted with the key
+     */
+    private boolean completed;
+
+    public ReencryptionCheckpoint() {}
+
+    public ReencryptionCheckpoint(int keyId) {
+        this.keyId = keyId;
+    }
+
+    public int getKeyId() {
+        return keyId;
+    }
+
+    public void setKeyId(int keyId) {
+        this.keyId = keyId;
+    }
+
+    public long getLastId() {
+        return lastId;
+    }
+
+    public void setLastId(long lastId) {
+        this.lastId = lastId;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(boolean completed) {
+        this.completed = completed;
+    }
+}
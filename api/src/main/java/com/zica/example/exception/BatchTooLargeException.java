@@ -0,0 +1,10 @@
+package com.zica.example.exception;
+
+/**
+ * A batch request has more items than what is accepted at once
+ */
+public class BatchTooLargeException extends RuntimeException {
+    public BatchTooLargeException(int maxSize) {
+        super(String.format("At most %d items can be informed at once", maxSize));
+    }
+}
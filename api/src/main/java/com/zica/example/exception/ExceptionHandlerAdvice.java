@@ -1,10 +1,14 @@
 package com.zica.example.exception;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 
+import javax.validation.ConstraintViolationException;
+import java.util.concurrent.RejectedExecutionException;
+
 /**
  * Handles these specific types of exceptions (in each method below)
  * when they happen in a controller class
@@ -14,8 +18,46 @@ public class ExceptionHandlerAdvice {
 
     @ExceptionHandler(CryptographyException.class)
     public ResponseEntity handleCryptographyException(CryptographyException e) {
+        if (e.getCause() instanceof ValueTooLongException) {
+            var msg = new ErrorMessage(e.getCause().getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(msg);
+        }
+
         var msg = new ErrorMessage("An application error occurred: " + e.getMessage());
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(msg);
     }
 
+    @ExceptionHandler(ConstraintViolationException.class)
+    public ResponseEntity handleConstraintViolationException(ConstraintViolationException e) {
+        var msg = new ErrorMessage(e.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(msg);
+    }
+
+    @ExceptionHandler(BatchTooLargeException.class)
+    public ResponseEntity handleBatchTooLargeException(BatchTooLargeException e) {
+        var msg = new ErrorMessage(e.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(msg);
+    }
+
+    @ExceptionHandler(InvalidIdempotencyKeyException.class)
+    public ResponseEntity handleInvalidIdempotencyKeyException(InvalidIdempotencyKeyException e) {
+        var msg = new ErrorMessage(e.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(msg);
+    }
+
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public ResponseEntity handleIdempotencyKeyReusedException(IdempotencyKeyReusedException e) {
+        var msg = new ErrorMessage(e.getMessage());
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(msg);
+    }
+
+    /**
+     * The request executors are saturated, the client should try again later
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity handleRejectedExecutionException(RejectedExecutionException e) {
+        var msg = new ErrorMessage("The server is too busy, try again later");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").body(msg);
+    }
+
 }
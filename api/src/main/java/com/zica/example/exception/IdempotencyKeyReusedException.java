@@ -0,0 +1,10 @@
+package com.zica.example.exception;
+
+/**
+ * An Idempotency-Key that was already used to save a value was sent with another value
+ */
+public class IdempotencyKeyReusedException extends RuntimeException {
+    public IdempotencyKeyReusedException() {
+        super("The Idempotency-Key was already used to save another value");
+    }
+}
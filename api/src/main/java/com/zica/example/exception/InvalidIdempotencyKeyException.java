@@ -0,0 +1,10 @@
+package com.zica.example.exception;
+
+/**
+ * The Idempotency-Key header is empty or longer than what is kept
+ */
+public class InvalidIdempotencyKeyException extends RuntimeException {
+    public InvalidIdempotencyKeyException(int maxLength) {
+        super(String.format("The Idempotency-Key must have between 1 and %d characters", maxLength));
+    }
+}
@@ -0,0 +1,10 @@
+package com.zica.example.exception;
+
+/**
+ * The value can't be encrypted by the configured cryptography because of its size
+ */
+public class ValueTooLongException extends RuntimeException {
+    public ValueTooLongException(int length, int maxLength) {
+        super(String.format("The value has %d bytes, but at most %d bytes can be encrypted", length, maxLength));
+    }
+}
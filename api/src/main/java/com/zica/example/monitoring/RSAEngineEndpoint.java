@@ -0,0 +1,52 @@
+package com.zica.example.monitoring;
+
+import com.zica.example.service.RSACryptographyServiceImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The RSA engine in use and the startup measurement it was chosen with, in /actuator/rsaengines
+ */
+@Component
+@Endpoint(id = "rsaengines")
+public class RSAEngineEndpoint {
+
+    /**
+     * Missing when the cryptography is replaced, e.g. by a mock in the tests
+     */
+    @Autowired(required = false)
+    private RSACryptographyServiceImpl cryptographyService;
+
+    /**
+     * @return null, answered with 404, without the RSA cryptography
+     */
+    @ReadOperation
+    public Map<String, Object> engines() {
+        if (this.cryptographyService == null) {
+            return null;
+        }
+
+        var engines = new LinkedHashMap<String, Object>();
+        engines.put("selected", this.cryptographyService.getEngine().toString());
+        engines.put("measurements", this.cryptographyService.getEngineMeasurements().stream()
+                .map(measurement -> {
+                    var result = new LinkedHashMap<String, Object>();
+                    result.put("engine", measurement.getName());
+                    result.put("compatible", measurement.isCompatible());
+                    result.put("encryptMicros", Math.round(measurement.getEncryptMicros() * 10) / 10.0);
+                    result.put("decryptMicros", Math.round(measurement.getDecryptMicros() * 10) / 10.0);
+                    if (measurement.getError() != null) {
+                        result.put("error", measurement.getError());
+                    }
+                    return result;
+                })
+                .collect(Collectors.toList()));
+        return engines;
+    }
+}
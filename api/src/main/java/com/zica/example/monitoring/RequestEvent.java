@@ -0,0 +1,28 @@
+package com.zica.example.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of a whole HTTP request, from the start of its processing until its response is complete
+ */
+@Name("com.zica.example.Request")
+@Label("Request")
+@Category("Data API")
+@Description("An HTTP request. Its stages have the same request id")
+class RequestEvent extends jdk.jfr.Event {
+
+    @Label("Request Id")
+    String requestId;
+
+    @Label("Method")
+    String method;
+
+    @Label("Path")
+    String path;
+
+    @Label("Status")
+    int status;
+}
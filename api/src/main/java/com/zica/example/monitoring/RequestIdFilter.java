@@ -0,0 +1,82 @@
+package com.zica.example.monitoring;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Gives every request an id, taken from the X-Request-Id header or generated, and returns it in the
+ * response. The id is available through {@link RequestIds} while the request is processed and a
+ * {@link RequestEvent} covering the whole request is recorded, so a flight recording ties each
+ * request to its stages.
+ */
+public class RequestIdFilter extends OncePerRequestFilter {
+
+    public static final String REQUEST_ID_HEADER = "X-Request-Id";
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        var requestId = requestIdOf(request);
+        response.setHeader(REQUEST_ID_HEADER, requestId);
+
+        var event = new RequestEvent();
+        event.begin();
+        RequestIds.set(requestId);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestIds.set(null);
+            if (request.isAsyncStarted()) {
+                // the response is only complete when the asynchronous processing ends
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent asyncEvent) {
+                        commit(event, requestId, request, response);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent asyncEvent) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent asyncEvent) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent asyncEvent) {
+                    }
+                });
+            } else {
+                commit(event, requestId, request, response);
+            }
+        }
+    }
+
+    private static String requestIdOf(HttpServletRequest request) {
+        var requestId = request.getHeader(REQUEST_ID_HEADER);
+        if (requestId == null || requestId.isBlank()) {
+            return UUID.randomUUID().toString();
+        }
+        return requestId;
+    }
+
+    private static void commit(RequestEvent event, String requestId, HttpServletRequest request,
+                               HttpServletResponse response) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.requestId = requestId;
+            event.method = request.getMethod();
+            event.path = request.getRequestURI();
+            event.status = response.getStatus();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.zica.example.monitoring;
+
+/**
+ * The id of the request being processed by the current thread. It is set by the {@link RequestIdFilter}
+ * and carried to the threads of the request executors, so the work of a request can be correlated
+ * wherever it runs.
+ */
+public final class RequestIds {
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private RequestIds() {
+    }
+
+    /**
+     * @return the id of the current request, or null outside of a request
+     */
+    public static String current() {
+        return CURRENT.get();
+    }
+
+    static void set(String requestId) {
+        if (requestId == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(requestId);
+        }
+    }
+
+    /**
+     * @return a task that runs with the request id of the calling thread
+     */
+    public static Runnable propagate(Runnable task) {
+        var requestId = current();
+        if (requestId == null) {
+            return task;
+        }
+
+        return () -> {
+            var previous = current();
+            set(requestId);
+            try {
+                task.run();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+}
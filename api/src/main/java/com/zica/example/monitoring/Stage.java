@@ -0,0 +1,26 @@
+package com.zica.example.monitoring;
+
+/**
+ * The parts a request spends its time on, timed by the {@link StageTimer}
+ */
+public enum Stage {
+    ENCRYPT("encrypt"),
+    DECRYPT("decrypt"),
+    BASE64("base64"),
+    REPOSITORY("repository"),
+    CONVERSION("conversion"),
+    SERIALIZATION("serialization");
+
+    private final String tag;
+
+    Stage(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * @return the value of the stage tag of the metrics
+     */
+    public String getTag() {
+        return tag;
+    }
+}
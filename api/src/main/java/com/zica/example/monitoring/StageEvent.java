@@ -0,0 +1,22 @@
+package com.zica.example.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of one stage of a request. The request id ties it to its {@link RequestEvent}
+ */
+@Name("com.zica.example.Stage")
+@Label("Stage")
+@Category("Data API")
+@Description("A stage of a request: cryptography, Base64, repository call, conversion or serialisation")
+class StageEvent extends jdk.jfr.Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Request Id")
+    String requestId;
+}
@@ -0,0 +1,80 @@
+package com.zica.example.monitoring;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.GenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * A converter of Spring MVC timing the serialisation of the responses by another one as the
+ * {@link Stage#SERIALIZATION} stage, whatever their format. The requests are read as they are.
+ */
+public class TimedHttpMessageConverter implements GenericHttpMessageConverter<Object> {
+
+    private final GenericHttpMessageConverter<Object> converter;
+    private final StageTimer stageTimer;
+
+    public TimedHttpMessageConverter(GenericHttpMessageConverter<Object> converter, StageTimer stageTimer) {
+        this.converter = converter;
+        this.stageTimer = stageTimer;
+    }
+
+    @Override
+    public void write(Object object, MediaType contentType, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        try (var ignored = this.stageTimer.start(Stage.SERIALIZATION)) {
+            this.converter.write(object, contentType, outputMessage);
+        }
+    }
+
+    @Override
+    public void write(Object object, Type type, MediaType contentType, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        try (var ignored = this.stageTimer.start(Stage.SERIALIZATION)) {
+            this.converter.write(object, type, contentType, outputMessage);
+        }
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return this.converter.canRead(clazz, mediaType);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return this.converter.canRead(type, contextClass, mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return this.converter.canWrite(clazz, mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return this.converter.canWrite(type, clazz, mediaType);
+    }
+
+    @Override
+    public List<MediaType> getSupportedMediaTypes() {
+        return this.converter.getSupportedMediaTypes();
+    }
+
+    @Override
+    public Object read(Class<?> clazz, HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        return this.converter.read(clazz, inputMessage);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        return this.converter.read(type, contextClass, inputMessage);
+    }
+}
@@ -1,9 +1,139 @@
 package com.zica.example.repository;
 
 import com.zica.example.db.Data;
+import com.zica.example.db.DataRow;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.QueryHint;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface DataRepository extends JpaRepository<Data, Long> {
+
+    /**
+     * Rows fetched from the database at a time by {@link #streamRowsByIdGreaterThan(long)}
+     */
+    String STREAM_FETCH_SIZE = "500";
+
+    /**
+     * The constructor expression of the listed records, see {@link DataRow}
+     */
+    String ROW = "new com.zica.example.db.DataRow(d.id, d.data, d.legacyData)";
+
+    /**
+     * @return every record, in id order
+     */
+    @Query("select " + ROW + " from Data d order by d.id")
+    List<DataRow> findAllRows();
+
+    /**
+     * Keyset (seek) pagination: finds the first records with an id greater than the informed one
+     * @param id the id of the last record of the previous page (0 for the first page)
+     * @param pageable only its size is used, the offset should always be 0
+     */
+    List<Data> findByIdGreaterThanOrderByIdAsc(long id, Pageable pageable);
+
+    /**
+     * Same as {@link #findByIdGreaterThanOrderByIdAsc}, for the records that are only listed
+     */
+    @Query("select " + ROW + " from Data d where d.id > :id order by d.id")
+    List<DataRow> findRowsByIdGreaterThan(@Param("id") long id, Pageable pageable);
+
+    /**
+     * Keyset pagination over the records with a value, through their blind index
+     * @param valueIndex the {@link com.zica.example.service.BlindIndex} of the value
+     * @param id the id of the last record of the previous page (0 for the first page)
+     * @param pageable only its size is used, the offset should always be 0
+     */
+    @Query("select " + ROW + " from Data d where d.valueIndex = :valueIndex and d.id > :id order by d.id")
+    List<DataRow> findRowsByValueIndex(@Param("valueIndex") byte[] valueIndex, @Param("id") long id,
+                                       Pageable pageable);
+
+    /**
+     * Reads the records with an id greater than the informed one through a database cursor, in id order.
+     * Must be called inside a transaction and the stream must be closed
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query("select " + ROW + " from Data d where d.id > :id order by d.id")
+    Stream<DataRow> streamRowsByIdGreaterThan(@Param("id") long id);
+
+    /**
+     * Updates the value of a record with a single statement, without reading it first
+     * @return the amount of updated records, 0 when the record doesn't exist
+     */
+    @Transactional
+    @Modifying
+    @Query("update Data d set d.data = :data, d.legacyData = null, d.valueIndex = :valueIndex, "
+            + "d.version = d.version + 1 where d.id = :id")
+    int updateData(@Param("id") long id, @Param("data") byte[] data, @Param("valueIndex") byte[] valueIndex);
+
+    /**
+     * Inserts a record with an id that was already reserved, without reading it first like
+     * {@link #save} does for an entity with an id
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "insert into data (id, data, value_index, version) values (:id, :data, :valueIndex, 0)",
+            nativeQuery = true)
+    int insertData(@Param("id") long id, @Param("data") byte[] data, @Param("valueIndex") byte[] valueIndex);
+
+    /**
+     * Keyset pagination over the records whose value wasn't migrated to the binary format yet
+     * @param id the id of the last record of the previous page (0 for the first page)
+     * @param pageable only its size is used, the offset should always be 0
+     */
+    List<Data> findByIdGreaterThanAndLegacyDataIsNotNullOrderByIdAsc(long id, Pageable pageable);
+
+    /**
+     * Replaces the legacy value of a record by the same value in the binary format
+     * @param legacyData the legacy value that was read. The record isn't changed when it's not the current one
+     * @return the amount of updated records, 0 when the record was updated or deleted in the meantime
+     */
+    @Transactional
+    @Modifying
+    @Query("update Data d set d.data = :data, d.legacyData = null, d.version = d.version + 1 "
+            + "where d.id = :id and d.legacyData = :legacyData")
+    int migrateData(@Param("id") long id, @Param("data") byte[] data, @Param("legacyData") String legacyData);
+
+    /**
+     * Replaces the value of a record by the same value encrypted with another key
+     * @param previousData the value that was read. The record isn't changed when it's not the current one
+     * @return the amount of updated records, 0 when the record was updated or deleted in the meantime
+     */
+    @Transactional
+    @Modifying
+    @Query("update Data d set d.data = :data, d.version = d.version + 1 where d.id = :id and d.data = :previousData")
+    int reencryptData(@Param("id") long id, @Param("data") byte[] data, @Param("previousData") byte[] previousData);
+
+    /**
+     * Keyset pagination over the records without a blind index yet
+     * @param id the id of the last record of the previous page (0 for the first page)
+     * @param pageable only its size is used, the offset should always be 0
+     */
+    List<Data> findByIdGreaterThanAndValueIndexIsNullOrderByIdAsc(long id, Pageable pageable);
+
+    /**
+     * Sets the blind index of a record, which doesn't change its version as the value stays the same
+     * @param version the version of the record that was read. The record isn't changed when it's not the current one
+     * @return the amount of updated records, 0 when the record was changed or deleted in the meantime
+     */
+    @Transactional
+    @Modifying
+    @Query("update Data d set d.valueIndex = :valueIndex where d.id = :id and d.version = :version "
+            + "and d.valueIndex is null")
+    int indexData(@Param("id") long id, @Param("valueIndex") byte[] valueIndex, @Param("version") long version);
+
+    /**
+     * @return the record with the highest id
+     */
+    Optional<Data> findTopByOrderByIdDesc();
 }
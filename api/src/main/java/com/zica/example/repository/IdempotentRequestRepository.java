@@ -0,0 +1,24 @@
+package com.zica.example.repository;
+
+import com.zica.example.db.IdempotentRequest;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+@Repository
+public interface IdempotentRequestRepository extends JpaRepository<IdempotentRequest, String> {
+
+    /**
+     * Deletes the requests whose keys expired
+     * @return the amount of requests deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from IdempotentRequest r where r.created < :before")
+    int deleteCreatedBefore(@Param("before") Instant before);
+}
@@ -0,0 +1,9 @@
+package com.zica.example.repository;
+
+import com.zica.example.db.ReencryptionCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ReencryptionCheckpointRepository extends JpaRepository<ReencryptionCheckpoint, Integer> {
+}
@@ -0,0 +1,94 @@
+package com.zica.example.server;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Jetty thread pool that runs every task on a new virtual thread, used by the virtual request-execution-mode.
+ * A blocked request costs almost nothing, so there is no pool size to tune.
+ *
+ * Virtual threads only exist from Java 21 on and the project is compiled for Java 11, so they are
+ * created through reflection. Starting the pool on an older Java fails.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+    private final String namePrefix;
+    private final AtomicInteger running = new AtomicInteger();
+    private volatile ExecutorService executor;
+
+    /**
+     * @param namePrefix the threads are named with it followed by a counter
+     */
+    public VirtualThreadPool(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        this.executor = newVirtualThreadPerTaskExecutor(this.namePrefix);
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        super.doStop();
+        this.executor.shutdown();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        this.executor.execute(() -> {
+            this.running.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                this.running.decrementAndGet();
+            }
+        });
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int getThreads() {
+        return this.running.get();
+    }
+
+    @Override
+    public int getIdleThreads() {
+        return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+
+    /**
+     * @return {@code Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 0).factory())}
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+        try {
+            var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            var builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            var factory = builderClass.getMethod("factory").invoke(builder);
+
+            return (ExecutorService) Executors.class
+                    .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads need Java 21 or newer, the current version is "
+                    + Runtime.version(), e);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.zica.example.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * A walk of the records in chunks by a background job, e.g. the {@link ReencryptionJob}: the records of a
+ * chunk are processed in parallel on low priority threads, so the job doesn't take the cryptography away from
+ * the requests, and it's throttled to an amount of records per second. The job walks the records again until
+ * a pass has no records changed concurrently, see {@link #pass}.
+ */
+final class BackgroundWalk implements AutoCloseable {
+
+    private final String name;
+    private final double recordsPerSecond;
+    private final ExecutorService executor;
+    private long nextChunkAt = System.nanoTime();
+
+    /**
+     * @param name the name of the job, given to its threads
+     * @param parallelism amount of records processed at the same time
+     * @param recordsPerSecond maximum amount of records processed per second, 0 doesn't throttle the walk
+     */
+    BackgroundWalk(String name, int parallelism, double recordsPerSecond) {
+        this.name = name;
+        this.recordsPerSecond = recordsPerSecond;
+
+        var count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            var thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs the job on a low priority thread of its own
+     */
+    static void start(String name, Runnable job) {
+        var thread = new Thread(job, name);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Walks the records once
+     * @param changed the records found changed concurrently by the job
+     * @return true when the pass found no records changed concurrently, false when they need another one
+     */
+    boolean pass(LongAdder changed, Runnable pass) {
+        var changedBefore = changed.sum();
+        this.nextChunkAt = System.nanoTime();
+        pass.run();
+        return changed.sum() == changedBefore;
+    }
+
+    /**
+     * @return the results of the records of the chunk, in its order
+     */
+    <T, R> List<R> map(List<T> chunk, Function<T, R> function) {
+        return chunk.stream()
+                .map(item -> CompletableFuture.supplyAsync(() -> function.apply(item), this.executor))
+                .collect(Collectors.toList())
+                .stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Waits until the next chunk can be processed without going over the records per second
+     * @param records the amount of records processed in the chunk
+     */
+    void throttle(int records) {
+        if (this.recordsPerSecond <= 0) {
+            return;
+        }
+
+        var wait = this.nextChunkAt - System.nanoTime();
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("The " + this.name + " was interrupted", e);
+            }
+        }
+        // a job that was slower than the throttle doesn't catch up with a burst
+        this.nextChunkAt = Math.max(this.nextChunkAt, System.nanoTime())
+                + (long) (records * TimeUnit.SECONDS.toNanos(1) / this.recordsPerSecond);
+    }
+
+    @Override
+    public void close() {
+        this.executor.shutdownNow();
+    }
+}
@@ -0,0 +1,122 @@
+package com.zica.example.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The basic Base64 of {@link java.util.Base64}, written into and read from buffers of the caller, so
+ * encoding or decoding a value doesn't allocate. {@link java.util.Base64} only works with whole arrays,
+ * or allocates the resulting buffer.
+ */
+public final class Base64Codec {
+
+    private static final byte[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+    private static final int[] VALUES = new int[128];
+
+    static {
+        Arrays.fill(VALUES, -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            VALUES[ALPHABET[i]] = i;
+        }
+    }
+
+    private Base64Codec() {}
+
+    /**
+     * @return how many characters the Base64 of length bytes has
+     */
+    public static int encodedLength(int length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    /**
+     * @return the most bytes the Base64 of length characters can have
+     */
+    public static int decodedLength(int length) {
+        return (length + 3) / 4 * 3;
+    }
+
+    /**
+     * Encodes the remaining bytes of src, with padding, and writes the characters to dst as ASCII bytes
+     * @param dst must have at least {@link #encodedLength(int)} bytes remaining
+     */
+    public static void encode(ByteBuffer src, ByteBuffer dst) {
+        while (src.remaining() >= 3) {
+            var bits = (src.get() & 0xff) << 16 | (src.get() & 0xff) << 8 | (src.get() & 0xff);
+            dst.put(ALPHABET[bits >>> 18])
+                    .put(ALPHABET[(bits >>> 12) & 0x3f])
+                    .put(ALPHABET[(bits >>> 6) & 0x3f])
+                    .put(ALPHABET[bits & 0x3f]);
+        }
+
+        if (src.remaining() == 1) {
+            var bits = (src.get() & 0xff) << 16;
+            dst.put(ALPHABET[bits >>> 18]).put(ALPHABET[(bits >>> 12) & 0x3f]).put((byte) '=').put((byte) '=');
+        } else if (src.remaining() == 2) {
+            var bits = (src.get() & 0xff) << 16 | (src.get() & 0xff) << 8;
+            dst.put(ALPHABET[bits >>> 18])
+                    .put(ALPHABET[(bits >>> 12) & 0x3f])
+                    .put(ALPHABET[(bits >>> 6) & 0x3f])
+                    .put((byte) '=');
+        }
+    }
+
+    /**
+     * Decodes the characters of src from start on and writes the bytes to dst. Like the basic decoder of
+     * {@link java.util.Base64}, the padding is optional and ends the value
+     * @param dst must have at least {@link #decodedLength(int)} bytes remaining
+     * @throws IllegalArgumentException when src is not valid Base64
+     */
+    public static void decode(CharSequence src, int start, ByteBuffer dst) {
+        var bits = 0;
+        var count = 0;
+        var end = src.length();
+        var i = start;
+        for (; i < end; i++) {
+            var c = src.charAt(i);
+            if (c == '=') {
+                break;
+            }
+
+            var value = c < VALUES.length ? VALUES[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Illegal base64 character " + Integer.toHexString(c));
+            }
+            bits = bits << 6 | value;
+            if (++count == 4) {
+                dst.put((byte) (bits >>> 16)).put((byte) (bits >>> 8)).put((byte) bits);
+                bits = 0;
+                count = 0;
+            }
+        }
+
+        if (count == 1) {
+            throw new IllegalArgumentException("Last unit does not have enough valid bits");
+        }
+        if (i < end && !hasValidPadding(src, i, count)) {
+            throw new IllegalArgumentException("Input byte array has incorrect ending byte at " + i);
+        }
+        if (count == 2) {
+            dst.put((byte) (bits >>> 4));
+        } else if (count == 3) {
+            dst.put((byte) (bits >>> 10)).put((byte) (bits >>> 2));
+        }
+    }
+
+    /**
+     * @return if the value ends at the padding starting at the index, with one '=' for each missing character
+     */
+    private static boolean hasValidPadding(CharSequence src, int index, int count) {
+        if (count < 2 || src.length() - index != 4 - count) {
+            return false;
+        }
+        for (int i = index; i < src.length(); i++) {
+            if (src.charAt(i) != '=') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
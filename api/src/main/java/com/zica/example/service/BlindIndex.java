@@ -0,0 +1,71 @@
+package com.zica.example.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+
+/**
+ * The blind index of the values: an HMAC-SHA256 of the plaintext with a key of its own, stored next to the
+ * encrypted value so the records with a given value are found with an indexed query instead of decrypting
+ * every record. Without the key the index doesn't tell the value, but it does tell which records have the
+ * same value.
+ *
+ * A Mac is not thread safe, so the initialised instances are kept in a {@link SlotPool}, like the ciphers
+ * of {@link CipherPool}, and taken out while they are used.
+ */
+@Component
+public class BlindIndex {
+
+    static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final SlotPool<Mac> slots = new SlotPool<>(Math.max(16, Runtime.getRuntime().availableProcessors() * 4));
+
+    /**
+     * @param key Base64 of the HMAC key, at least 32 bytes
+     */
+    @Autowired
+    public BlindIndex(@Value("${blind-index-key}") String key) {
+        var bytes = Base64.getDecoder().decode(key);
+        if (bytes.length < 32) {
+            throw new IllegalArgumentException("The blind-index-key must have at least 32 bytes, it has "
+                    + bytes.length);
+        }
+        this.key = new SecretKeySpec(bytes, ALGORITHM);
+    }
+
+    /**
+     * @return the blind index of the value, 32 bytes. Null for a null value
+     */
+    public byte[] of(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        var mac = this.borrow();
+        var index = mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+        this.slots.give(mac);
+        return index;
+    }
+
+    private Mac borrow() {
+        var mac = this.slots.take();
+        if (mac != null) {
+            return mac;
+        }
+
+        try {
+            mac = Mac.getInstance(ALGORITHM);
+            mac.init(this.key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("The blind index can't be computed", e);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.zica.example.service;
+
+import com.zica.example.db.Data;
+import com.zica.example.repository.DataRepository;
+import com.zica.example.sharding.DataShards;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Computes the {@link BlindIndex} of the records written before there was an index, so they are found by
+ * GET /data?value= too. It runs in the background once the application is ready and walks the records
+ * without an index in chunks in id order, like the {@link ReencryptionJob}: the values of a chunk are decrypted
+ * in parallel, on low priority threads, and their indexes written in one transaction. It's throttled to an
+ * amount of records per second.
+ *
+ * The index of a record is only written when the record still has the version that was decrypted. The
+ * records changed in the meantime without getting an index, e.g. by the re-encryption, are walked again
+ * in another pass, until a pass has no such records.
+ */
+@Component
+public class BlindIndexBackfill implements MeterBinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BlindIndexBackfill.class);
+
+    @Autowired
+    private DataRepository dataRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private RSACryptographyService cryptographyService;
+
+    @Autowired
+    private BlindIndex blindIndex;
+
+    @Autowired
+    private DataShards dataShards;
+
+    @Value("${blind-index-backfill-enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Records read and indexed in each transaction
+     */
+    @Value("${blind-index-backfill-chunk-size:100}")
+    private int chunkSize;
+
+    /**
+     * 0 doesn't throttle the backfill
+     */
+    @Value("${blind-index-backfill-records-per-second:200}")
+    private double recordsPerSecond;
+
+    @Value("${blind-index-backfill-parallelism:2}")
+    private int parallelism;
+
+    private final LongAdder indexed = new LongAdder();
+    private final LongAdder changed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!this.enabled) {
+            return;
+        }
+
+        BackgroundWalk.start("blind-index-backfill", this::backfill);
+    }
+
+    /**
+     * Computes the blind index of every record without one
+     * @return the amount of records indexed
+     */
+    public synchronized long backfill() {
+        var before = this.indexed.sum();
+        try (var walk = new BackgroundWalk("blind-index-backfill", this.parallelism, this.recordsPerSecond)) {
+            for (int shard = 0; shard < this.dataShards.getCount(); shard++) {
+                this.dataShards.run(shard, () -> this.backfillShard(walk));
+            }
+        }
+
+        var indexedNow = this.indexed.sum() - before;
+        if (indexedNow > 0) {
+            LOGGER.info("Computed the blind index of {} records", indexedNow);
+        }
+        return indexedNow;
+    }
+
+    private void backfillShard(BackgroundWalk walk) {
+        // the records changed concurrently are walked again in another pass
+        while (!walk.pass(this.changed, () -> this.backfillPass(walk))) {
+            LOGGER.debug("Records were changed while they were indexed, walking them again");
+        }
+    }
+
+    private void backfillPass(BackgroundWalk walk) {
+        var afterId = 0L;
+        while (true) {
+            var chunk = this.dataRepository.findByIdGreaterThanAndValueIndexIsNullOrderByIdAsc(afterId,
+                    PageRequest.of(0, this.chunkSize));
+            if (chunk.isEmpty()) {
+                return;
+            }
+
+            var indexes = walk.map(chunk, this::valueIndexOf);
+            this.transactionTemplate.execute(status -> {
+                this.write(chunk, indexes);
+                return null;
+            });
+            afterId = chunk.get(chunk.size() - 1).getId();
+            // every record of the chunk was decrypted, also the ones that failed
+            walk.throttle(chunk.size());
+        }
+    }
+
+    /**
+     * @return the blind index of the value of the record, null when it couldn't be decrypted
+     */
+    private byte[] valueIndexOf(Data data) {
+        try {
+            return this.blindIndex.of(this.cryptographyService.decryptFromBytes(CiphertextFormat.of(data)));
+        } catch (Exception e) {
+            // it stays without an index, so it isn't found by its value
+            this.failed.increment();
+            LOGGER.warn("The blind index of the record {} couldn't be computed: {}", data.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    private void write(List<Data> chunk, List<byte[]> indexes) {
+        for (int i = 0; i < chunk.size(); i++) {
+            var data = chunk.get(i);
+            var valueIndex = indexes.get(i);
+            if (valueIndex == null) {
+                continue;
+            }
+
+            if (this.dataRepository.indexData(data.getId(), valueIndex, data.getVersion()) > 0) {
+                this.indexed.increment();
+            } else if (this.dataRepository.findById(data.getId()).map(Data::getValueIndex).isEmpty()) {
+                // changed without an index of its own, e.g. re-encrypted
+                this.changed.increment();
+            }
+        }
+    }
+
+    public long getIndexed() {
+        return this.indexed.sum();
+    }
+
+    public long getChanged() {
+        return this.changed.sum();
+    }
+
+    public long getFailed() {
+        return this.failed.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("blind.index.backfill.records", this, BlindIndexBackfill::getIndexed)
+                .tag("result", "indexed")
+                .description("Records whose blind index was computed by the backfill")
+                .register(registry);
+        FunctionCounter.builder("blind.index.backfill.records", this, BlindIndexBackfill::getChanged)
+                .tag("result", "changed")
+                .description("Records changed while they were indexed, walked again in the next pass")
+                .register(registry);
+        FunctionCounter.builder("blind.index.backfill.records", this, BlindIndexBackfill::getFailed)
+                .tag("result", "failed")
+                .description("Records whose value couldn't be decrypted to compute their blind index")
+                .register(registry);
+    }
+}
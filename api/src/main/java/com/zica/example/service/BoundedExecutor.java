@@ -0,0 +1,192 @@
+package com.zica.example.service;
+
+import com.zica.example.monitoring.RequestIds;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs one kind of work of the requests (e.g. the cryptography or the database calls) on its own,
+ * fixed amount of threads, so that work is sized independently of the request threads.
+ *
+ * The queue of waiting tasks is bounded: when it is full a task is rejected right away with a
+ * {@link RejectedExecutionException}, which is answered with 503, instead of letting the requests
+ * pile up. A direct executor runs every task on the calling thread, as before the executors existed.
+ * A limited executor also runs the tasks on the calling thread, but only a fixed amount at a time:
+ * the other callers wait for a permit, which is cheap when they are virtual threads.
+ */
+public class BoundedExecutor implements Executor, MeterBinder {
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore permits;
+    private final int maxPermits;
+    private final int maxWaiting;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder queuedNanos = new LongAdder();
+    private final LongAdder executionNanos = new LongAdder();
+
+    /**
+     * @param name identifies the executor in the metrics and in the names of its threads
+     * @param threads amount of threads running the tasks
+     * @param queueSize maximum amount of tasks waiting for a thread
+     */
+    public BoundedExecutor(String name, int threads, int queueSize) {
+        this.name = name;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory(name + "-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.permits = null;
+        this.maxPermits = threads;
+        this.maxWaiting = queueSize;
+    }
+
+    private BoundedExecutor(String name, Semaphore permits, int maxPermits, int maxWaiting) {
+        this.name = name;
+        this.executor = null;
+        this.permits = permits;
+        this.maxPermits = maxPermits;
+        this.maxWaiting = maxWaiting;
+    }
+
+    /**
+     * @return an executor that runs the tasks on the calling thread
+     */
+    public static BoundedExecutor direct(String name) {
+        return new BoundedExecutor(name, null, 0, 0);
+    }
+
+    /**
+     * @param concurrency maximum amount of tasks running at the same time
+     * @param maxWaiting maximum amount of callers waiting for their turn
+     * @return an executor that runs the tasks on the calling thread, at most concurrency at a time
+     */
+    public static BoundedExecutor limited(String name, int concurrency, int maxWaiting) {
+        // fair, so a task is not overtaken forever by the newer ones
+        return new BoundedExecutor(name, new Semaphore(concurrency, true), concurrency, maxWaiting);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        var submitted = System.nanoTime();
+        if (this.permits != null) {
+            this.runWithPermit(task, submitted);
+            return;
+        }
+        if (this.executor == null) {
+            this.run(task, submitted);
+            return;
+        }
+
+        try {
+            var propagated = RequestIds.propagate(task);
+            this.executor.execute(() -> this.run(propagated, submitted));
+        } catch (RejectedExecutionException e) {
+            this.rejected.increment();
+            throw new RejectedExecutionException("The " + this.name + " executor is saturated", e);
+        }
+    }
+
+    private void runWithPermit(Runnable task, long submitted) {
+        if (this.waiting.incrementAndGet() > this.maxWaiting) {
+            this.waiting.decrementAndGet();
+            this.rejected.increment();
+            throw new RejectedExecutionException("The " + this.name + " executor is saturated");
+        }
+
+        try {
+            this.permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the " + this.name + " executor", e);
+        } finally {
+            this.waiting.decrementAndGet();
+        }
+
+        try {
+            this.run(task, submitted);
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    private void run(Runnable task, long submitted) {
+        var started = System.nanoTime();
+        try {
+            task.run();
+        } finally {
+            this.queuedNanos.add(started - submitted);
+            this.executionNanos.add(System.nanoTime() - started);
+            this.executed.increment();
+        }
+    }
+
+    public int getQueueDepth() {
+        if (this.permits != null) {
+            return this.waiting.get();
+        }
+        return this.executor == null ? 0 : this.executor.getQueue().size();
+    }
+
+    public int getActive() {
+        if (this.permits != null) {
+            return this.maxPermits - this.permits.availablePermits();
+        }
+        return this.executor == null ? 0 : this.executor.getActiveCount();
+    }
+
+    public long getExecuted() {
+        return this.executed.sum();
+    }
+
+    public long getRejected() {
+        return this.rejected.sum();
+    }
+
+    public void shutdown() {
+        if (this.executor != null) {
+            this.executor.shutdown();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("request.executor.queue.depth", this, BoundedExecutor::getQueueDepth)
+                .tag("name", name)
+                .description("Tasks waiting for a thread of the executor")
+                .register(registry);
+        Gauge.builder("request.executor.active", this, BoundedExecutor::getActive)
+                .tag("name", name)
+                .description("Threads of the executor running a task")
+                .register(registry);
+        FunctionCounter.builder("request.executor.rejected", this, BoundedExecutor::getRejected)
+                .tag("name", name)
+                .description("Tasks rejected because the queue of the executor was full")
+                .register(registry);
+        FunctionTimer.builder("request.executor.queued", this, BoundedExecutor::getExecuted,
+                executor -> executor.queuedNanos.sum(), TimeUnit.NANOSECONDS)
+                .tag("name", name)
+                .description("Time the tasks waited in the queue of the executor")
+                .register(registry);
+        FunctionTimer.builder("request.executor.execution", this, BoundedExecutor::getExecuted,
+                executor -> executor.executionNanos.sum(), TimeUnit.NANOSECONDS)
+                .tag("name", name)
+                .description("Time the tasks took to run")
+                .register(registry);
+    }
+}
@@ -0,0 +1,132 @@
+package com.zica.example.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a bounded amount of ready-initialised {@link Cipher} instances for one mode and key,
+ * so the provider lookup and the key setup are not paid on every call.
+ *
+ * A Cipher is not thread safe, so each one is handed to a single thread at a time by a {@link SlotPool}:
+ * it is taken out of its slot before being used and put back only after {@code doFinal} succeeded.
+ * When every slot is empty a new Cipher is created (a miss); when every slot is full the returned
+ * Cipher is simply dropped. A size of 0 disables the pooling altogether.
+ */
+public class CipherPool implements MeterBinder {
+
+    private final String transformation;
+    private final Provider provider;
+    private final int cipherMode;
+    private final Key key;
+    private final String name;
+    private final SlotPool<Cipher> slots;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param name identifies the pool in the metrics (e.g. "encrypt")
+     * @param transformation passed to {@link Cipher#getInstance(String)}
+     * @param cipherMode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+     * @param key the key every Cipher of this pool is initialised with
+     * @param size maximum amount of idle ciphers kept
+     */
+    public CipherPool(String name, String transformation, int cipherMode, Key key, int size) {
+        this(name, transformation, null, cipherMode, key, size);
+    }
+
+    /**
+     * @param provider the provider of the ciphers, null for the most preferred provider of the transformation
+     */
+    public CipherPool(String name, String transformation, Provider provider, int cipherMode, Key key, int size) {
+        this.name = name;
+        this.transformation = transformation;
+        this.provider = provider;
+        this.cipherMode = cipherMode;
+        this.key = key;
+        this.slots = new SlotPool<>(size);
+    }
+
+    /**
+     * Encrypts or decrypts the data (depending on the mode of this pool) with a pooled Cipher
+     * @param data the data to be processed
+     * @return the result of {@link Cipher#doFinal(byte[])}
+     */
+    public byte[] doFinal(byte[] data) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        var cipher = this.borrow();
+        // a failing cipher is not given back, so a broken instance never reaches another caller
+        var result = cipher.doFinal(data);
+        this.slots.give(cipher);
+        return result;
+    }
+
+    /**
+     * Same as {@link #doFinal(byte[])}, for the remaining bytes of input and without allocating the result
+     * @return the amount of bytes written to output, by {@link Cipher#doFinal(ByteBuffer, ByteBuffer)}
+     * @throws ShortBufferException when output doesn't have enough space for the result
+     */
+    public int doFinal(ByteBuffer input, ByteBuffer output) throws NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidKeyException, BadPaddingException, IllegalBlockSizeException, ShortBufferException {
+        var cipher = this.borrow();
+        var written = cipher.doFinal(input, output);
+        this.slots.give(cipher);
+        return written;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int getIdle() {
+        return slots.idle();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cipher.pool.hits", this, CipherPool::getHits)
+                .tag("pool", name)
+                .description("Cipher instances reused from the pool")
+                .register(registry);
+        FunctionCounter.builder("cipher.pool.misses", this, CipherPool::getMisses)
+                .tag("pool", name)
+                .description("Cipher instances that had to be created because the pool was empty")
+                .register(registry);
+        Gauge.builder("cipher.pool.idle", this, CipherPool::getIdle)
+                .tag("pool", name)
+                .description("Initialised Cipher instances waiting in the pool")
+                .register(registry);
+    }
+
+    private Cipher borrow() throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeyException {
+        var cipher = slots.take();
+        if (cipher != null) {
+            hits.increment();
+            return cipher;
+        }
+
+        misses.increment();
+        cipher = provider == null
+                ? Cipher.getInstance(transformation) : Cipher.getInstance(transformation, provider);
+        cipher.init(cipherMode, key);
+        return cipher;
+    }
+}
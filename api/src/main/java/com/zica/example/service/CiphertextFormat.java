@@ -0,0 +1,119 @@
+package com.zica.example.service;
+
+import com.zica.example.db.Data;
+import com.zica.example.db.DataRow;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * The binary format of the stored encrypted values: the first byte tells which cryptography wrote the
+ * value and the rest is the ciphertext of that cryptography. The values written since the RSA keys have
+ * versions also carry the id of the key (2 bytes) after the first byte. The ones without it were written
+ * with the key {@link #LEGACY_KEY_ID}.
+ *
+ * The values written before they were stored as binary are Base64 text, with the {@code v2:} header when
+ * written by the envelope cryptography. They have the same ciphertext, so they are converted to the
+ * binary format without being decrypted.
+ */
+public final class CiphertextFormat {
+
+    /**
+     * Followed by the RSA ciphertext, written by {@link RSACryptographyServiceImpl}
+     */
+    public static final byte RSA = 1;
+
+    /**
+     * Followed by the envelope written by {@link EnvelopeCryptographyServiceImpl}
+     */
+    public static final byte ENVELOPE = 2;
+
+    /**
+     * Followed by the id of the RSA key and the RSA ciphertext
+     */
+    public static final byte KEYED_RSA = 3;
+
+    /**
+     * Followed by the id of the RSA key that wrapped the data key and the envelope
+     */
+    public static final byte KEYED_ENVELOPE = 4;
+
+    /**
+     * The key of the values written before the keys had versions
+     */
+    public static final int LEGACY_KEY_ID = 1;
+
+    /**
+     * The header of the String values that carry a value in the binary format, as Base64. The older
+     * String values are the RSA ciphertext as Base64, or the envelope after the {@code v2:} header
+     */
+    static final String TEXT_HEADER = "v3:";
+
+    private CiphertextFormat() {}
+
+    /**
+     * @return the encrypted value of the record in the binary format, converting it when the record
+     * wasn't migrated yet
+     */
+    public static byte[] of(Data data) {
+        return of(data.getData(), data.getLegacyData());
+    }
+
+    /**
+     * @see #of(Data)
+     */
+    public static byte[] of(DataRow row) {
+        return of(row.getData(), row.getLegacyData());
+    }
+
+    private static byte[] of(byte[] data, String legacyData) {
+        if (data != null || legacyData == null) {
+            return data;
+        }
+        return fromLegacy(legacyData);
+    }
+
+    /**
+     * @param legacy a value encrypted by the String methods of {@link RSACryptographyService}
+     * @return the same value in the binary format
+     */
+    public static byte[] fromLegacy(String legacy) {
+        if (legacy.startsWith(TEXT_HEADER)) {
+            return Base64.getDecoder().decode(legacy.substring(TEXT_HEADER.length()).getBytes(StandardCharsets.UTF_8));
+        }
+        if (legacy.startsWith(EnvelopeCryptographyServiceImpl.VERSION_HEADER)) {
+            var envelope = legacy.substring(EnvelopeCryptographyServiceImpl.VERSION_HEADER.length());
+            return withFormat(ENVELOPE, Base64.getDecoder().decode(envelope.getBytes(StandardCharsets.UTF_8)));
+        }
+        return withFormat(RSA, Base64.getDecoder().decode(legacy.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static byte[] withFormat(byte format, byte[] ciphertext) {
+        var value = new byte[ciphertext.length + 1];
+        value[0] = format;
+        System.arraycopy(ciphertext, 0, value, 1, ciphertext.length);
+        return value;
+    }
+
+    /**
+     * @param value a value in the binary format
+     * @return the id of the RSA key the value was encrypted with
+     */
+    public static int keyIdOf(byte[] value) {
+        var format = formatOf(value);
+        if (format != KEYED_RSA && format != KEYED_ENVELOPE) {
+            return LEGACY_KEY_ID;
+        }
+        if (value.length < 3) {
+            throw new IllegalArgumentException("The encrypted value has no key id");
+        }
+        return (value[1] & 0xff) << 8 | (value[2] & 0xff);
+    }
+
+    static byte formatOf(byte[] value) {
+        if (value.length == 0) {
+            throw new IllegalArgumentException("The encrypted value is empty");
+        }
+        return value[0];
+    }
+}
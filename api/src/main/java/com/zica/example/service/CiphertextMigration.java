@@ -0,0 +1,152 @@
+package com.zica.example.service;
+
+import com.zica.example.repository.DataRepository;
+import com.zica.example.sharding.DataShards;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Converts the records written before the encrypted values were stored as binary to the
+ * {@link CiphertextFormat}, in chunks of records in id order. It runs in the background once the
+ * application is ready, on a low priority thread and throttled to an amount of records per second, so it doesn't
+ * take the database away from the requests. The records not converted yet are still read through
+ * {@link CiphertextFormat#of}.
+ *
+ * The values are only decoded from Base64, not decrypted. A record updated while its chunk is converted
+ * keeps the updated value, as the conversion only changes records whose legacy value is still the one read.
+ */
+@Component
+public class CiphertextMigration implements MeterBinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CiphertextMigration.class);
+
+    @Autowired
+    private DataRepository dataRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private DataVersion dataVersion;
+
+    @Autowired
+    private DecryptedDataCache decryptedDataCache;
+
+    @Autowired
+    private DataShards dataShards;
+
+    @Value("${ciphertext-migration-enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Records read and converted in each transaction
+     */
+    @Value("${ciphertext-migration-chunk-size:500}")
+    private int chunkSize;
+
+    /**
+     * 0 doesn't throttle the migration
+     */
+    @Value("${ciphertext-migration-records-per-second:1000}")
+    private double recordsPerSecond;
+
+    private final LongAdder migrated = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!this.enabled) {
+            return;
+        }
+
+        BackgroundWalk.start("ciphertext-migration", this::migrate);
+    }
+
+    /**
+     * Converts every record that still has a legacy value
+     * @return the amount of records converted
+     */
+    public long migrate() {
+        var before = this.migrated.sum();
+        // the values are only decoded, on this thread: the walk just throttles it
+        try (var walk = new BackgroundWalk("ciphertext-migration", 1, this.recordsPerSecond)) {
+            for (int shard = 0; shard < this.dataShards.getCount(); shard++) {
+                this.dataShards.run(shard, () -> this.migrateShard(walk));
+            }
+        }
+
+        var migratedNow = this.migrated.sum() - before;
+        if (migratedNow > 0) {
+            LOGGER.info("Converted {} records to the binary ciphertext format", migratedNow);
+        }
+        return migratedNow;
+    }
+
+    private void migrateShard(BackgroundWalk walk) {
+        var afterId = 0L;
+        while (true) {
+            var chunk = this.dataRepository.findByIdGreaterThanAndLegacyDataIsNotNullOrderByIdAsc(afterId,
+                    PageRequest.of(0, this.chunkSize));
+            if (chunk.isEmpty()) {
+                break;
+            }
+
+            var migratedIds = this.transactionTemplate.execute(status -> {
+                var ids = new ArrayList<Long>();
+                for (var data : chunk) {
+                    try {
+                        var converted = CiphertextFormat.fromLegacy(data.getLegacyData());
+                        if (this.dataRepository.migrateData(data.getId(), converted, data.getLegacyData()) > 0) {
+                            this.migrated.increment();
+                            ids.add(data.getId());
+                        }
+                    } catch (IllegalArgumentException e) {
+                        // not valid Base64, it stays as it is and fails when decrypted, like before
+                        this.failed.increment();
+                        LOGGER.warn("The value of the record {} couldn't be converted: {}", data.getId(),
+                                e.getMessage());
+                    }
+                }
+                return ids;
+            });
+            // once committed, like an update, so a read in between doesn't cache the previous value again
+            migratedIds.forEach(this.decryptedDataCache::invalidate);
+            this.dataVersion.increment();
+            afterId = chunk.get(chunk.size() - 1).getId();
+            walk.throttle(chunk.size());
+        }
+    }
+
+    public long getMigrated() {
+        return this.migrated.sum();
+    }
+
+    public long getFailed() {
+        return this.failed.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("ciphertext.migration.records", this, CiphertextMigration::getMigrated)
+                .tag("result", "migrated")
+                .description("Records converted to the binary ciphertext format")
+                .register(registry);
+        FunctionCounter.builder("ciphertext.migration.records", this, CiphertextMigration::getFailed)
+                .tag("result", "failed")
+                .description("Records whose legacy value couldn't be converted")
+                .register(registry);
+    }
+}
@@ -0,0 +1,208 @@
+package com.zica.example.service;
+
+import com.zica.example.monitoring.Stage;
+import com.zica.example.monitoring.StageTimer;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Reusable buffers for one encryption or decryption, so the String and byte[] methods of the
+ * cryptography services don't allocate intermediate arrays on every call.
+ *
+ * They are kept in a {@link SlotPool}, like the ciphers of {@link CipherPool}: a call takes buffers out of
+ * it and gives them back once it's done, whatever thread it runs on, so they are reused in the virtual
+ * request-execution-mode too, where every request runs on a new thread. Buffers that grew over
+ * {@link #MAX_KEPT_CAPACITY} are not kept, so a single large value doesn't stay in memory.
+ */
+final class CryptographyBuffers {
+
+    private static final int MAX_KEPT_CAPACITY = 64 * 1024;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final SlotPool<CryptographyBuffers> SLOTS =
+            new SlotPool<>(Math.max(16, Runtime.getRuntime().availableProcessors() * 4));
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            // the same as String.getBytes
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private ByteBuffer input = ByteBuffer.allocate(INITIAL_CAPACITY);
+    private ByteBuffer output = ByteBuffer.allocate(INITIAL_CAPACITY);
+    private ByteBuffer text = ByteBuffer.allocate(INITIAL_CAPACITY);
+
+    private CryptographyBuffers() {}
+
+    /**
+     * @return buffers only used by the caller until it calls {@link #release()}
+     */
+    static CryptographyBuffers acquire() {
+        var buffers = SLOTS.take();
+        return buffers != null ? buffers : new CryptographyBuffers();
+    }
+
+    void release() {
+        if (this.input.capacity() > MAX_KEPT_CAPACITY || this.output.capacity() > MAX_KEPT_CAPACITY
+                || this.text.capacity() > MAX_KEPT_CAPACITY) {
+            return;
+        }
+        SLOTS.give(this);
+    }
+
+    /**
+     * @return the empty input buffer, with at least the capacity
+     */
+    ByteBuffer input(int capacity) {
+        this.input = ensure(this.input, capacity);
+        return this.input;
+    }
+
+    /**
+     * @return the empty output buffer, with at least the capacity
+     */
+    ByteBuffer output(int capacity) {
+        this.output = ensure(this.output, capacity);
+        return this.output;
+    }
+
+    /**
+     * @return the empty buffer for the Base64 text, with at least the capacity
+     */
+    ByteBuffer text(int capacity) {
+        this.text = ensure(this.text, capacity);
+        return this.text;
+    }
+
+    /**
+     * @return the input buffer with the UTF-8 bytes of the value, ready to be read
+     */
+    ByteBuffer encode(String value) {
+        var input = this.input((int) (value.length() * this.encoder.maxBytesPerChar()));
+        this.encoder.reset();
+        this.encoder.encode(CharBuffer.wrap(value), input, true);
+        this.encoder.flush(input);
+        return input.flip();
+    }
+
+    /**
+     * Encrypts with the input and output buffers
+     * @return the output buffer with the value encrypted by the service in the {@link CiphertextFormat},
+     * ready to be read
+     */
+    ByteBuffer encrypt(RSACryptographyService service, String value) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        var input = this.encode(value);
+        var encrypted = this.output(service.getMaxEncryptedLength(input.remaining()));
+        try {
+            service.encrypt(input, encrypted);
+        } catch (ShortBufferException e) {
+            // the output is sized for the value
+            throw new IllegalStateException(e);
+        }
+        return encrypted.flip();
+    }
+
+    /**
+     * @return the value encrypted by the service, in the {@link CiphertextFormat}
+     */
+    byte[] encryptToBytes(RSACryptographyService service, String value) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        var encrypted = this.encrypt(service, value);
+        return Arrays.copyOf(encrypted.array(), encrypted.limit());
+    }
+
+    /**
+     * @return the value encrypted by the service, as the Base64 of the {@link CiphertextFormat} after
+     * the {@link CiphertextFormat#TEXT_HEADER}
+     */
+    String encryptToText(RSACryptographyService service, String value, StageTimer stageTimer)
+            throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeyException, BadPaddingException,
+            IllegalBlockSizeException {
+        var encrypted = this.encrypt(service, value);
+        var text = this.text(CiphertextFormat.TEXT_HEADER.length() + Base64Codec.encodedLength(encrypted.remaining()))
+                .put(CiphertextFormat.TEXT_HEADER.getBytes(StandardCharsets.ISO_8859_1));
+        try (var ignored = stageTimer.start(Stage.BASE64)) {
+            Base64Codec.encode(encrypted, text);
+        }
+        return new String(text.array(), 0, text.position(), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @param text a value encrypted by {@link #encryptToText}, or one of the older String values of
+     *             {@link CiphertextFormat#fromLegacy}
+     * @return the value decrypted by the service
+     */
+    String decryptText(RSACryptographyService service, String text, StageTimer stageTimer)
+            throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeyException, BadPaddingException,
+            IllegalBlockSizeException {
+        var start = 0;
+        var encrypted = this.input(1 + Base64Codec.decodedLength(text.length()));
+        if (text.startsWith(CiphertextFormat.TEXT_HEADER)) {
+            start = CiphertextFormat.TEXT_HEADER.length();
+        } else if (text.startsWith(EnvelopeCryptographyServiceImpl.VERSION_HEADER)) {
+            start = EnvelopeCryptographyServiceImpl.VERSION_HEADER.length();
+            encrypted.put(CiphertextFormat.ENVELOPE);
+        } else {
+            encrypted.put(CiphertextFormat.RSA);
+        }
+
+        try (var ignored = stageTimer.start(Stage.BASE64)) {
+            Base64Codec.decode(text, start, encrypted);
+        }
+        return this.decryptToString(service, encrypted.flip());
+    }
+
+    /**
+     * Decrypts the value with the service and encrypts it again with its current key, without the
+     * decrypted value becoming a String
+     * @param value a value in the {@link CiphertextFormat}
+     * @return the value encrypted again, in the {@link CiphertextFormat}
+     */
+    byte[] reencrypt(RSACryptographyService service, byte[] value) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        var decrypted = this.input(value.length);
+        try {
+            service.decrypt(ByteBuffer.wrap(value), decrypted);
+            var encrypted = this.output(service.getMaxEncryptedLength(decrypted.flip().remaining()));
+            service.encrypt(decrypted, encrypted);
+            return Arrays.copyOf(encrypted.array(), encrypted.position());
+        } catch (ShortBufferException e) {
+            // the buffers are sized for the values
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decrypts with the output buffer
+     * @param data a value in the {@link CiphertextFormat}
+     * @return the value decrypted by the service
+     */
+    String decryptToString(RSACryptographyService service, ByteBuffer data) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        var decrypted = this.output(data.remaining());
+        try {
+            service.decrypt(data, decrypted);
+        } catch (ShortBufferException e) {
+            // the decrypted value is never longer than the encrypted one
+            throw new IllegalStateException(e);
+        }
+        return new String(decrypted.array(), 0, decrypted.position(), StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer ensure(ByteBuffer buffer, int capacity) {
+        if (buffer.capacity() < capacity) {
+            return ByteBuffer.allocate(Math.max(capacity, buffer.capacity() * 2));
+        }
+        return buffer.clear();
+    }
+}
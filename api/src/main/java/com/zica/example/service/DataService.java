@@ -1,17 +1,85 @@
 package com.zica.example.service;
 
 import com.zica.example.db.Data;
+import com.zica.example.db.DataRow;
+import com.zica.example.model.DataBatchResult;
+import com.zica.example.model.DecryptedDataResult;
 import com.zica.example.model.NewData;
 
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface DataService {
     /**
-     * Finds the data record in the database and returns it with its decrypted value, if it exists
+     * Finds the data record in the database and returns its decrypted value, if it exists
      * @param id database id to be searched
-     * @return an Optional with the found decrypted data, if it exists
+     * @return an Optional with the decrypted value, if the record exists
      */
-    Optional<Data> getDecryptedData(Long id);
+    Optional<String> getDecryptedData(Long id);
+
+    /**
+     * Same as {@link #getDecryptedData(Long)}, but the database call and the decryption run on the
+     * request executors
+     */
+    CompletableFuture<Optional<String>> getDecryptedDataAsync(Long id);
+
+    /**
+     * Same as {@link #getDecryptedDataAsync(Long)}, with the version of the record, for conditional requests
+     * @param knownVersion the version of the record the client already has, or {@link DecryptedData#NO_VERSION}.
+     *                     The value isn't decrypted when the record still has this version
+     * @return an Optional with the decrypted value, if the record exists
+     */
+    CompletableFuture<Optional<DecryptedData>> getDecryptedDataAsync(Long id, long knownVersion);
+
+    /**
+     * @return the version of the whole table, which changes with every write. Empty when the conditional
+     * requests are disabled. See {@link DataVersion}
+     */
+    Optional<String> getDataVersion();
+
+    /**
+     * Finds several data records with one query and decrypts them in parallel
+     * @param ids database ids to be searched
+     * @param onResult receives the result of each id as soon as it is ready. It can be called by several
+     *                 threads at the same time. Ids that don't exist or can't be decrypted get a result with an error
+     * @return completes when every id had its result handed to onResult
+     */
+    CompletableFuture<Void> getDecryptedData(List<Long> ids, Consumer<DecryptedDataResult> onResult);
+
+    /**
+     * @return every record, still encrypted, in id order
+     */
+    List<DataRow> findAllData();
+
+    /**
+     * Keyset pagination: finds the first records with an id greater than afterId, in id order
+     * @param afterId the id of the last record of the previous page (0 for the first page)
+     * @param limit maximum amount of records found
+     * @return the records, still encrypted
+     */
+    List<DataRow> findData(long afterId, int limit);
+
+    /**
+     * Finds the records whose value is exactly the informed one through their blind index, with one query
+     * per shard and without decrypting any record. The records still in the write-behind log aren't found
+     * @param value the decrypted value searched
+     * @param afterId the id of the last record of the previous page (0 for the first page)
+     * @param limit maximum amount of records found
+     * @return the records in id order, still encrypted
+     */
+    List<DataRow> findDataByValue(String value, long afterId, int limit);
+
+    /**
+     * Reads the records with an id greater than afterId, in id order, one at a time. The records are
+     * not kept in memory after being handed to the consumer, so any amount of records can be read
+     * @param afterId only records with a greater id are read
+     * @param limit maximum amount of records read
+     * @param consumer receives each record, still encrypted
+     */
+    void forEachData(long afterId, long limit, Consumer<DataRow> consumer);
 
     /**
      * Encrypts the data value and inserts it in the database
@@ -20,6 +88,29 @@ public interface DataService {
      */
     Data saveData(NewData newData);
 
+    /**
+     * Same as {@link #saveData(NewData)}, but the encryption and the database call run on the
+     * request executors
+     */
+    CompletableFuture<Data> saveDataAsync(NewData newData);
+
+    /**
+     * Same as {@link #saveDataAsync(NewData)}, but the value is saved once per idempotency key: a request with a
+     * key that was already saved gets the record of the first request, see {@link IdempotencyStore}
+     * @param idempotencyKey null saves the value without a key
+     */
+    CompletableFuture<Data> saveDataAsync(NewData newData, String idempotencyKey);
+
+    /**
+     * Encrypts and inserts several data values. The values are encrypted in parallel, in chunks, while
+     * the previous chunks are inserted in the database in JDBC batches
+     * @param items the values to be inserted. They are only read as needed, so they can come straight
+     *              from the request
+     * @param onResult receives the result of each item, in the order of the items and on the calling thread.
+     *                 Items that are invalid or can't be saved get a result with an error
+     */
+    void saveData(Iterator<NewData> items, Consumer<DataBatchResult> onResult);
+
     /**
      * Updates the data value with the informed id. Encrypts the data before updating
      * @param id id of the object to be updated
@@ -27,4 +118,10 @@ public interface DataService {
      * @return The updated db value
      */
     Optional<Data> updateDataValue(Long id, NewData data);
+
+    /**
+     * Same as {@link #updateDataValue(Long, NewData)}, but the encryption and the database call run
+     * on the request executors
+     */
+    CompletableFuture<Optional<Data>> updateDataValueAsync(Long id, NewData data);
 }
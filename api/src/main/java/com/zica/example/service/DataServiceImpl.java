@@ -1,13 +1,38 @@
 package com.zica.example.service;
 
 import com.zica.example.db.Data;
+import com.zica.example.db.DataRow;
 import com.zica.example.exception.CryptographyException;
+import com.zica.example.model.DataBatchResult;
+import com.zica.example.model.DecryptedDataResult;
 import com.zica.example.model.NewData;
+import com.zica.example.monitoring.Stage;
+import com.zica.example.monitoring.StageTimer;
 import com.zica.example.repository.DataRepository;
+import com.zica.example.sharding.DataShards;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.validation.Validator;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Service
 public class DataServiceImpl implements DataService {
@@ -15,51 +40,449 @@ public class DataServiceImpl implements DataService {
     @Autowired
     private DataRepository dataRepository;
 
+    @Autowired
+    private DataShards dataShards;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     @Autowired
     private RSACryptographyService cryptographyService;
 
+    @Autowired
+    private ForkJoinPool batchCryptographyPool;
+
+    @Autowired
+    private BoundedExecutor cryptographyExecutor;
+
+    @Autowired
+    private BoundedExecutor databaseExecutor;
+
+    @Autowired
+    private DecryptedDataCache decryptedDataCache;
+
+    @Autowired
+    private DataVersion dataVersion;
+
+    @Autowired
+    private BlindIndex blindIndex;
+
+    @Autowired
+    private WriteBehindWriter writeBehindWriter;
+
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+
+    @Autowired
+    private StageTimer stageTimer;
+
+    @Autowired
+    private Validator validator;
+
+    /**
+     * Items of a batch inserted together, the same as the JDBC batch size
+     */
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int batchChunkSize;
+
+    @Override
+    public Optional<String> getDecryptedData(Long id) {
+        return this.decryptedDataCache.get(id, this::loadDecryptedData).map(DecryptedData::getValue);
+    }
+
+    private DecryptedData loadDecryptedData(long id) {
+        return this.timeRepository(() -> this.findById(id))
+                .map(this::decryptWithVersion)
+                .orElse(null);
+    }
+
     @Override
-    public Optional<Data> getDecryptedData(Long id) {
-        return this.dataRepository.findById(id)
-                .map(data -> {
-                    try {
-                        var decryptedData = this.cryptographyService.decrypt(data.getData());
-                        return new Data(id, decryptedData);
-                    } catch (Exception e) {
-                        throw new CryptographyException(e);
+    public CompletableFuture<Optional<String>> getDecryptedDataAsync(Long id) {
+        return this.getDecryptedDataAsync(id, DecryptedData.NO_VERSION)
+                .thenApply(found -> found.map(DecryptedData::getValue));
+    }
+
+    @Override
+    public CompletableFuture<Optional<DecryptedData>> getDecryptedDataAsync(Long id, long knownVersion) {
+        var cached = this.decryptedDataCache.getIfPresent(id);
+        if (cached.isPresent()) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        var invalidations = this.decryptedDataCache.getInvalidations();
+        return CompletableFuture.supplyAsync(() -> this.timeRepository(() -> this.findById(id)), this.databaseExecutor)
+                .thenCompose(found -> {
+                    if (found.isEmpty() || found.get().getVersion() == knownVersion) {
+                        // the client has the value already, it doesn't go through the cryptography executor
+                        return CompletableFuture.completedFuture(found
+                                .map(data -> new DecryptedData(id, data.getVersion(), null)));
                     }
+
+                    var data = found.get();
+                    return CompletableFuture.supplyAsync(() -> this.decryptedDataCache.get(id, ignored ->
+                            // an update since the read would leave its previous value in the cache
+                            this.decryptedDataCache.getInvalidations() == invalidations
+                                    ? this.decryptWithVersion(data) : this.loadDecryptedData(id)),
+                            this.cryptographyExecutor);
                 });
     }
 
     @Override
-    public Data saveData(NewData newData) {
-        String encryptedData;
+    public Optional<String> getDataVersion() {
+        return this.dataVersion.get();
+    }
+
+    @Override
+    public CompletableFuture<Void> getDecryptedData(List<Long> ids, Consumer<DecryptedDataResult> onResult) {
+        var found = new HashMap<Long, Data>();
+        var byShard = this.dataShards.groupByShard(ids);
+        this.timeRepository(() -> this.dataShards.onEach(shard -> byShard.containsKey(shard)
+                ? this.dataRepository.findAllById(byShard.get(shard)) : List.<Data>of()))
+                .forEach(shardData -> shardData.forEach(data -> found.put(data.getId(), data)));
+
+        var decryptions = ids.stream()
+                .distinct()
+                .map(id -> {
+                    var data = found.containsKey(id) ? found.get(id) : this.writeBehindWriter.find(id).orElse(null);
+                    if (data == null) {
+                        onResult.accept(new DecryptedDataResult().id(id).error("Data not found"));
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+
+                    return CompletableFuture.runAsync(() -> onResult.accept(this.decryptToResult(data)),
+                            this.batchCryptographyPool);
+                })
+                .toArray(CompletableFuture[]::new);
+
+        return CompletableFuture.allOf(decryptions);
+    }
+
+    private DecryptedDataResult decryptToResult(Data data) {
+        var result = new DecryptedDataResult().id(data.getId());
         try {
-            encryptedData = cryptographyService.encrypt(newData.getData());
+            return result.data(this.cryptographyService.decryptFromBytes(CiphertextFormat.of(data)));
         } catch (Exception e) {
-            throw new CryptographyException(e);
+            return result.error("An application error occurred: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public List<DataRow> findAllData() {
+        var shards = this.timeRepository(() -> this.dataShards.onEach(shard -> this.dataRepository.findAllRows()));
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+
+        return shards.stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparingLong(DataRow::getId))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<DataRow> findData(long afterId, int limit) {
+        var found = new ArrayList<DataRow>(limit);
+        // the records of the page are among the first limit records of each shard
+        try (var ignored = this.stageTimer.start(Stage.REPOSITORY)) {
+            this.forEachDataOfShards(afterId, limit, limit, found::add);
+        }
+        return found;
+    }
+
+    @Override
+    public void forEachData(long afterId, long limit, Consumer<DataRow> consumer) {
+        if (this.dataShards.getCount() > 1) {
+            this.forEachDataOfShards(afterId, limit, Integer.parseInt(DataRepository.STREAM_FETCH_SIZE), consumer);
+            return;
+        }
+
+        var transaction = new TransactionTemplate(this.transactionManager);
+        transaction.setReadOnly(true);
+        transaction.execute(status -> {
+            // the rows aren't entities, so the persistence context doesn't keep the ones read
+            try (var stream = this.dataRepository.streamRowsByIdGreaterThan(afterId)) {
+                stream.limit(limit).forEach(consumer);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Merges the records of every shard in id order. The shards are read one page at a time, the first pages
+     * in parallel, and the next page of a shard is only read once the records of its previous page are merged
+     */
+    private void forEachDataOfShards(long afterId, long limit, int pageSize, Consumer<DataRow> consumer) {
+        var size = (int) Math.min(limit, pageSize);
+        var pages = new PriorityQueue<ShardPage>(Comparator.comparingLong(ShardPage::nextId));
+        this.dataShards.onEach(shard -> new ShardPage(shard, this.findPage(afterId, size)))
+                .stream()
+                .filter(ShardPage::hasNext)
+                .forEach(pages::add);
+
+        for (long read = 0; read < limit && !pages.isEmpty(); read++) {
+            var page = pages.remove();
+            var data = page.next();
+            consumer.accept(data);
+
+            if (!page.hasNext() && page.isFull(size) && read + 1 < limit) {
+                var shard = page.shard;
+                page = new ShardPage(shard, this.dataShards.on(shard, () -> this.findPage(data.getId(), size)));
+            }
+            if (page.hasNext()) {
+                pages.add(page);
+            }
+        }
+    }
+
+    @Override
+    public List<DataRow> findDataByValue(String value, long afterId, int limit) {
+        var valueIndex = this.blindIndex.of(value);
+        var page = PageRequest.of(0, limit);
+        var shards = this.timeRepository(() -> this.dataShards.onEach(shard -> this.dataRepository
+                .findRowsByValueIndex(valueIndex, afterId, page)));
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+
+        return shards.stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparingLong(DataRow::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private List<DataRow> findPage(long afterId, int size) {
+        return this.dataRepository.findRowsByIdGreaterThan(afterId, PageRequest.of(0, size));
+    }
+
+    private Optional<Data> findById(long id) {
+        var pending = this.writeBehindWriter.find(id);
+        if (pending.isPresent()) {
+            return pending;
+        }
+        return this.dataShards.onShardOf(id, () -> this.dataRepository.findById(id));
+    }
+
+    @Override
+    public Data saveData(NewData newData) {
+        return this.insert(this.encrypt(newData.getData()), this.blindIndex.of(newData.getData()));
+    }
+
+    @Override
+    public CompletableFuture<Data> saveDataAsync(NewData newData) {
+        return this.saveDataAsync(newData, null);
+    }
+
+    @Override
+    public CompletableFuture<Data> saveDataAsync(NewData newData, String idempotencyKey) {
+        var valueIndex = this.blindIndex.of(newData.getData());
+        return this.idempotencyStore.save(idempotencyKey, valueIndex, () -> CompletableFuture
+                .supplyAsync(() -> this.encrypt(newData.getData()), this.cryptographyExecutor)
+                .thenApplyAsync(encryptedData -> this.insert(encryptedData, valueIndex), this.databaseExecutor));
+    }
+
+    private Data insert(byte[] encryptedData, byte[] valueIndex) {
+        if (this.writeBehindWriter.isEnabled()) {
+            var logged = this.writeBehindWriter.save(encryptedData, valueIndex);
+            if (logged.isPresent()) {
+                // the version changes once the record is inserted, it's only listed from then on
+                return logged.get();
+            }
         }
 
         var dbData = new Data();
         dbData.setData(encryptedData);
-        dbData = dataRepository.save(dbData);
-        return dbData;
+        dbData.setValueIndex(valueIndex);
+        var saved = this.timeRepository(() -> this.dataShards.on(this.dataShards.nextShard(),
+                () -> this.dataRepository.save(dbData)));
+        this.dataVersion.increment();
+        return saved;
+    }
+
+    @Override
+    public void saveData(Iterator<NewData> items, Consumer<DataBatchResult> onResult) {
+        // bounds how many encrypted chunks can be waiting for the database
+        var maxPendingChunks = this.batchCryptographyPool.getParallelism() * 2;
+        var pendingChunks = new ArrayDeque<CompletableFuture<List<BatchItem>>>();
+        var index = 0;
+
+        while (items.hasNext()) {
+            var chunk = new ArrayList<NewData>(this.batchChunkSize);
+            while (items.hasNext() && chunk.size() < this.batchChunkSize) {
+                chunk.add(items.next());
+            }
+
+            var firstIndex = index;
+            index += chunk.size();
+            pendingChunks.add(CompletableFuture.supplyAsync(() -> this.encryptChunk(firstIndex, chunk),
+                    this.batchCryptographyPool));
+
+            if (pendingChunks.size() >= maxPendingChunks) {
+                this.insertChunk(pendingChunks.remove().join()).forEach(onResult);
+            }
+        }
+
+        while (!pendingChunks.isEmpty()) {
+            this.insertChunk(pendingChunks.remove().join()).forEach(onResult);
+        }
+    }
+
+    private List<BatchItem> encryptChunk(int firstIndex, List<NewData> chunk) {
+        var items = new ArrayList<BatchItem>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            var newData = chunk.get(i);
+            var result = new DataBatchResult().index(firstIndex + i);
+            var item = new BatchItem(result);
+            items.add(item);
+
+            if (newData == null) {
+                result.error("The item is empty");
+                continue;
+            }
+
+            var violations = this.validator.validate(newData);
+            if (!violations.isEmpty()) {
+                result.error(violations.stream()
+                        .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                        .collect(Collectors.joining(", ")));
+                continue;
+            }
+
+            try {
+                item.encrypted = this.cryptographyService.encryptToBytes(newData.getData());
+                item.valueIndex = this.blindIndex.of(newData.getData());
+            } catch (Exception e) {
+                result.error("An application error occurred: " + e.getMessage());
+            }
+        }
+        return items;
+    }
+
+    private List<DataBatchResult> insertChunk(List<BatchItem> chunk) {
+        var toInsert = chunk.stream()
+                .filter(item -> item.encrypted != null)
+                .collect(Collectors.toList());
+        var dbData = toInsert.stream()
+                .map(item -> {
+                    var data = new Data();
+                    data.setData(item.encrypted);
+                    data.setValueIndex(item.valueIndex);
+                    return data;
+                })
+                .collect(Collectors.toList());
+
+        try {
+            // the chunks go to the shards in turns, so a batch is spread over every shard
+            var saved = this.timeRepository(() -> this.dataShards.on(this.dataShards.nextShard(),
+                    () -> this.dataRepository.saveAll(dbData)));
+            this.dataVersion.increment();
+            for (int i = 0; i < toInsert.size(); i++) {
+                // the results go to the client, so the value is encoded like in the other responses
+                toInsert.get(i).result.id(saved.get(i).getId())
+                        .data(Base64.getEncoder().encodeToString(toInsert.get(i).encrypted));
+            }
+        } catch (DataAccessException e) {
+            toInsert.forEach(item -> item.result
+                    .error("The data couldn't be saved: " + e.getMostSpecificCause().getMessage()));
+        }
+        return chunk.stream()
+                .map(item -> item.result)
+                .collect(Collectors.toList());
     }
 
     @Override
     public Optional<Data> updateDataValue(Long id, NewData data) {
-        if (!dataRepository.existsById(id)) {
+        return this.update(id, this.encrypt(data.getData()), this.blindIndex.of(data.getData()));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Data>> updateDataValueAsync(Long id, NewData data) {
+        return CompletableFuture.supplyAsync(() -> this.encrypt(data.getData()), this.cryptographyExecutor)
+                .thenApplyAsync(encryptedData -> this.update(id, encryptedData, this.blindIndex.of(data.getData())),
+                        this.databaseExecutor);
+    }
+
+    private Optional<Data> update(long id, byte[] encryptedData, byte[] valueIndex) {
+        this.writeBehindWriter.insertNow(id);
+        if (this.timeRepository(() -> this.dataShards.onShardOf(id,
+                () -> this.dataRepository.updateData(id, encryptedData, valueIndex))) == 0) {
             return Optional.empty();
         }
 
-        String encryptedData;
+        this.decryptedDataCache.invalidate(id);
+        this.dataVersion.increment();
+        return Optional.of(new Data(id, encryptedData));
+    }
+
+    private <T> T timeRepository(Supplier<T> call) {
+        try (var ignored = this.stageTimer.start(Stage.REPOSITORY)) {
+            return call.get();
+        }
+    }
+
+    private byte[] encrypt(String data) {
         try {
-            encryptedData = cryptographyService.encrypt(data.getData());
+            return this.cryptographyService.encryptToBytes(data);
         } catch (Exception e) {
             throw new CryptographyException(e);
         }
+    }
 
-        var dbData = new Data(id, encryptedData);
-        return Optional.of(dataRepository.save(dbData));
+    private DecryptedData decryptWithVersion(Data data) {
+        return new DecryptedData(data.getId(), data.getVersion(), this.decrypt(data));
+    }
+
+    private String decrypt(Data data) {
+        try {
+            return this.cryptographyService.decryptFromBytes(CiphertextFormat.of(data));
+        } catch (Exception e) {
+            throw new CryptographyException(e);
+        }
+    }
+
+    /**
+     * A page of the records of a shard, while it is merged with the pages of the other shards
+     */
+    private static class ShardPage {
+        private final int shard;
+        private final List<DataRow> records;
+        private int next;
+
+        private ShardPage(int shard, List<DataRow> records) {
+            this.shard = shard;
+            this.records = records;
+        }
+
+        private boolean hasNext() {
+            return this.next < this.records.size();
+        }
+
+        private long nextId() {
+            return this.records.get(this.next).getId();
+        }
+
+        private DataRow next() {
+            return this.records.get(this.next++);
+        }
+
+        /**
+         * @return whether the shard may have more records after this page
+         */
+        private boolean isFull(int size) {
+            return this.records.size() == size;
+        }
+    }
+
+    /**
+     * An item of a batch with its encrypted value, until it's inserted
+     */
+    private static class BatchItem {
+        private final DataBatchResult result;
+        private byte[] encrypted;
+        private byte[] valueIndex;
+
+        private BatchItem(DataBatchResult result) {
+            this.result = result;
+        }
     }
 }
@@ -0,0 +1,45 @@
+package com.zica.example.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The version of the whole data table, which increases after every write of this instance. A response
+ * built while the version was v is still current as long as the version is v, so conditional requests
+ * can be answered without reading the table.
+ *
+ * The version is only kept in memory. It starts again with another epoch after a restart, so the
+ * versions of two runs are never equal, and it doesn't see the writes of other instances.
+ */
+@Component
+public class DataVersion {
+
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE,
+            Character.MAX_RADIX);
+    private final AtomicLong version = new AtomicLong();
+
+    @Value("${conditional-requests-enabled:true}")
+    private boolean enabled;
+
+    /**
+     * @return the current version, empty when the conditional requests are disabled
+     */
+    public Optional<String> get() {
+        if (!this.enabled) {
+            return Optional.empty();
+        }
+        return Optional.of(this.epoch + "-" + this.version.get());
+    }
+
+    /**
+     * Must be called once the write is committed. A read that starts before that gets the previous
+     * version, whether it saw the write or not, so its response is never taken for the new data
+     */
+    public void increment() {
+        this.version.incrementAndGet();
+    }
+}
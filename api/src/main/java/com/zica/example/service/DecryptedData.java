@@ -0,0 +1,37 @@
+package com.zica.example.service;
+
+/**
+ * The decrypted value of a record, with the version of the record it was decrypted from
+ */
+public class DecryptedData {
+
+    /**
+     * The version of no record, for the clients that don't have any
+     */
+    public static final long NO_VERSION = -1;
+
+    private final long id;
+    private final long version;
+    private final String value;
+
+    /**
+     * @param value null when the value wasn't decrypted, as the client already has this version
+     */
+    public DecryptedData(long id, long version, String value) {
+        this.id = id;
+        this.version = version;
+        this.value = value;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,112 @@
+package com.zica.example.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Optional in-memory cache of decrypted values by id, so the hot records don't go to the database
+ * and through the RSA decryption on every read.
+ *
+ * The values are evicted when the total size of the cached plaintexts goes over a limit and after
+ * a time to live. When several reads of the same id miss at the same time only one of them loads
+ * the value, the others wait for it. When disabled every read goes straight to the loader and no
+ * plaintext is ever kept in memory.
+ *
+ * Each value keeps the version of the record it was decrypted from, so a value that is still cached
+ * right after an update is never sent with the version of the update. A record read before it's loaded
+ * can be older than an update that invalidated it in the meantime: {@link #getInvalidations} tells the
+ * loader to read it again.
+ */
+@Component
+public class DecryptedDataCache implements MeterBinder {
+
+    private final Cache<Long, DecryptedData> cache;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param enabled false keeps no value in memory
+     * @param maxBytes maximum size of the cached values. Each character is counted as 2 bytes
+     * @param ttlSeconds how long a value stays in the cache after being loaded
+     */
+    public DecryptedDataCache(@Value("${decrypted-cache-enabled:false}") boolean enabled,
+                              @Value("${decrypted-cache-max-bytes:16777216}") long maxBytes,
+                              @Value("${decrypted-cache-ttl-seconds:60}") long ttlSeconds) {
+        if (!enabled) {
+            this.cache = null;
+            return;
+        }
+
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Long id, DecryptedData data) -> data.getValue().length() * Character.BYTES)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                // the eviction work is small, it doesn't need to go to the common pool
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the cached value of the id or loads it. Concurrent calls for an id that isn't
+     * cached share the same load
+     * @param loader returns the decrypted value of the id, or null when there is none. Null is not cached
+     * @return the decrypted value, if it exists
+     */
+    public Optional<DecryptedData> get(long id, LongFunction<DecryptedData> loader) {
+        if (this.cache == null) {
+            return Optional.ofNullable(loader.apply(id));
+        }
+        return Optional.ofNullable(this.cache.get(id, loader::apply));
+    }
+
+    /**
+     * @return the cached value of the id, without loading it
+     */
+    public Optional<DecryptedData> getIfPresent(long id) {
+        if (this.cache == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(this.cache.getIfPresent(id));
+    }
+
+    /**
+     * Removes the value of an id, so the next read loads it again. Waits for a load of the
+     * same id that is in progress
+     */
+    public void invalidate(long id) {
+        // counted first, so a load that doesn't see the count yet is removed once it's done
+        this.invalidations.incrementAndGet();
+        if (this.cache != null) {
+            this.cache.invalidate(id);
+        }
+    }
+
+    /**
+     * @return the amount of ids invalidated so far. A record read with a count that changed before its value
+     * is loaded may be older than the update of the invalidation, so the loader reads it again
+     */
+    public long getInvalidations() {
+        return this.invalidations.get();
+    }
+
+    public boolean isEnabled() {
+        return this.cache != null;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (this.cache != null) {
+            CaffeineCacheMetrics.monitor(registry, this.cache, "decryptedData");
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.zica.example.service;
+
+import com.zica.example.monitoring.Stage;
+import com.zica.example.monitoring.StageTimer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.KeyGenerator;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hybrid (envelope) encryption: the values are encrypted with AES-GCM and only the AES key (the data key)
+ * is encrypted with RSA. A data key is reused for a time window or an amount of values, so most calls only
+ * pay for the symmetric cryptography, and the size of the values is not limited by the RSA key size anymore.
+ *
+ * The envelope is: the length of the RSA wrapped data key (2 bytes), the wrapped data key, the GCM IV
+ * (12 bytes) and the AES-GCM ciphertext with its tag. It is stored after the {@link CiphertextFormat#KEYED_ENVELOPE}
+ * byte and the id of the RSA key that wrapped the data key. The envelopes written before the keys had
+ * versions have the {@link CiphertextFormat#ENVELOPE} byte instead, and were encoded as {@code v2:<Base64>}
+ * by the String methods. Values written by {@link RSACryptographyServiceImpl} are still decrypted by it.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "cryptography-mode", havingValue = "envelope")
+public class EnvelopeCryptographyServiceImpl implements RSACryptographyService {
+
+    static final String VERSION_HEADER = "v2:";
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int DATA_KEY_SIZE = 256;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+    private static final int UNWRAPPED_KEYS_CACHE_SIZE = 1024;
+
+    private final RSACryptographyServiceImpl rsaCryptographyService;
+    private final long dataKeyLifetimeNanos;
+    private final long dataKeyMaxUses;
+
+    /**
+     * Stays disabled for the instances created outside of Spring
+     */
+    @Autowired(required = false)
+    private StageTimer stageTimer = StageTimer.DISABLED;
+
+    private final SecureRandom random = new SecureRandom();
+    private volatile DataKey currentDataKey;
+
+    /**
+     * Data keys already unwrapped, by their wrapped value, so reading values written with the same
+     * data key pays for the RSA decryption only once
+     */
+    private final Map<ByteBuffer, SecretKey> unwrappedKeys = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ByteBuffer, SecretKey> eldest) {
+                    return size() > UNWRAPPED_KEYS_CACHE_SIZE;
+                }
+            });
+
+    /**
+     * @param rsaCryptographyService wraps the data keys and decrypts the values written before the envelope mode
+     * @param dataKeyLifetimeSeconds for how long a data key is used for new values
+     * @param dataKeyMaxUses how many values can be encrypted with the same data key
+     */
+    public EnvelopeCryptographyServiceImpl(RSACryptographyServiceImpl rsaCryptographyService,
+                                           @Value("${envelope-data-key-lifetime-seconds:300}")
+                                                   long dataKeyLifetimeSeconds,
+                                           @Value("${envelope-data-key-max-uses:100000}") long dataKeyMaxUses) {
+        this.rsaCryptographyService = rsaCryptographyService;
+        this.dataKeyLifetimeNanos = TimeUnit.SECONDS.toNanos(dataKeyLifetimeSeconds);
+        this.dataKeyMaxUses = dataKeyMaxUses;
+    }
+
+    @Override
+    public KeyPair generateKeyPair() throws NoSuchAlgorithmException {
+        return this.rsaCryptographyService.generateKeyPair();
+    }
+
+    @Override
+    public String encrypt(String data) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        var buffers = CryptographyBuffers.acquire();
+        try {
+            return buffers.encryptToText(this, data, this.stageTimer);
+        } finally {
+            buffers.release();
+        }
+    }
+
+    @Override
+    public String decrypt(String data) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        var buffers = CryptographyBuffers.acquire();
+        try {
+            return buffers.decryptText(this, data, this.stageTimer);
+        } finally {
+            buffers.release();
+        }
+    }
+
+    @Override
+    public byte[] encryptToBytes(String data) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        var buffers = CryptographyBuffers.acquire();
+        try {
+            return buffers.encryptToBytes(this, data);
+        } finally {
+            buffers.release();
+        }
+    }
+
+    @Override
+    public String decryptFromBytes(byte[] data) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        var buffers = CryptographyBuffers.acquire();
+        try {
+            return buffers.decryptToString(this, ByteBuffer.wrap(data));
+        } finally {
+            buffers.release();
+        }
+    }
+
+    @Override
+    public void encrypt(ByteBuffer data, ByteBuffer out) throws NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidKeyException, BadPaddingException, IllegalBlockSizeException, ShortBufferException {
+        var dataKey = this.acquireDataKey();
+
+        var iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+
+        out.put(CiphertextFormat.KEYED_ENVELOPE)
+                .putShort((short) dataKey.keyId)
+                .putShort((short) dataKey.wrapped.length)
+                .put(dataKey.wrapped)
+                .put(iv);
+        try (var ignored = this.stageTimer.start(Stage.ENCRYPT)) {
+            var cipher = this.initCipher(Cipher.ENCRYPT_MODE, dataKey.key, new GCMParameterSpec(TAG_LENGTH, iv));
+            cipher.doFinal(data, out);
+        }
+    }
+
+    @Override
+    public void decrypt(ByteBuffer data, ByteBuffer out) throws NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidKeyException, BadPaddingException, IllegalBlockSizeException, ShortBufferException {
+        var format = data.get(data.position());
+        if (format != CiphertextFormat.ENVELOPE && format != CiphertextFormat.KEYED_ENVELOPE) {
+            this.rsaCryptographyService.decrypt(data, out);
+            return;
+        }
+
+        data.get();
+        var keyId = format == CiphertextFormat.KEYED_ENVELOPE
+                ? Short.toUnsignedInt(data.getShort())
+                : CiphertextFormat.LEGACY_KEY_ID;
+        var wrappedLength = data.getShort();
+        var wrapped = data.slice().limit(wrappedLength);
+        data.position(data.position() + wrappedLength);
+        var iv = new byte[IV_LENGTH];
+        data.get(iv);
+
+        // the unwrapping is timed by the RSA service as a stage of its own
+        var key = this.unwrap(keyId, wrapped);
+        try (var ignored = this.stageTimer.start(Stage.DECRYPT)) {
+            var cipher = this.initCipher(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+            cipher.doFinal(data, out);
+        }
+    }
+
+    @Override
+    public int getMaxEncryptedLength(int dataLength) {
+        return 1 + Short.BYTES + Short.BYTES + this.rsaCryptographyService.getEncryptedLength() + IV_LENGTH
+                + dataLength + TAG_LENGTH / 8;
+    }
+
+    @Override
+    public int getKeyId() {
+        return this.rsaCryptographyService.getKeyId();
+    }
+
+    @Override
+    public boolean hasPreviousKeys() {
+        return this.rsaCryptographyService.hasPreviousKeys();
+    }
+
+    private DataKey acquireDataKey() throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        var used = this.currentDataKey;
+        if (used != null && used.tryUse()) {
+            return used;
+        }
+
+        synchronized (this) {
+            // another thread may have replaced the key in the meantime. The key that was tried isn't
+            // tried again, so each encryption takes one use of one key
+            var dataKey = this.currentDataKey;
+            if (dataKey != null && dataKey != used && dataKey.tryUse()) {
+                return dataKey;
+            }
+
+            var keyGenerator = KeyGenerator.getInstance("AES");
+            keyGenerator.init(DATA_KEY_SIZE, random);
+            var key = keyGenerator.generateKey();
+            var wrapped = this.rsaCryptographyService.encrypt(key.getEncoded());
+
+            dataKey = new DataKey(key, this.rsaCryptographyService.getKeyId(), wrapped,
+                    System.nanoTime() + dataKeyLifetimeNanos, dataKeyMaxUses);
+            this.unwrappedKeys.put(ByteBuffer.wrap(wrapped), key);
+            this.currentDataKey = dataKey;
+            return dataKey;
+        }
+    }
+
+    /**
+     * @param keyId the id of the RSA key that wrapped the data key
+     * @param wrapped the wrapped data key, between its position and limit
+     */
+    private SecretKey unwrap(int keyId, ByteBuffer wrapped) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        var key = this.unwrappedKeys.get(wrapped);
+        if (key == null) {
+            var wrappedBytes = new byte[wrapped.remaining()];
+            wrapped.get(wrappedBytes);
+            key = new SecretKeySpec(this.rsaCryptographyService.decrypt(keyId, wrappedBytes), "AES");
+            this.unwrappedKeys.put(ByteBuffer.wrap(wrappedBytes), key);
+        }
+        return key;
+    }
+
+    private Cipher initCipher(int mode, SecretKey key, GCMParameterSpec parameters) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidKeyException {
+        var cipher = Cipher.getInstance(TRANSFORMATION);
+        try {
+            cipher.init(mode, key, parameters);
+        } catch (InvalidAlgorithmParameterException e) {
+            // the parameters are built by the callers, so this can only be a programming error
+            throw new IllegalStateException(e);
+        }
+        return cipher;
+    }
+
+    private static class DataKey {
+        private final SecretKey key;
+        private final int keyId;
+        private final byte[] wrapped;
+        private final long expiresAt;
+        private final AtomicLong remainingUses;
+
+        private DataKey(SecretKey key, int keyId, byte[] wrapped, long expiresAt, long maxUses) {
+            this.key = key;
+            this.keyId = keyId;
+            this.wrapped = wrapped;
+            this.expiresAt = expiresAt;
+            // the value that created the key is its first use
+            this.remainingUses = new AtomicLong(maxUses - 1);
+        }
+
+        /**
+         * Takes one use of the key
+         * @return false when the key expired or was used as many times as allowed, nothing is taken then
+         */
+        private boolean tryUse() {
+            if (System.nanoTime() - expiresAt >= 0) {
+                return false;
+            }
+            return remainingUses.getAndUpdate(remaining -> Math.max(0, remaining - 1)) > 0;
+        }
+    }
+}
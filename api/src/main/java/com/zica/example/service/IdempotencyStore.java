@@ -0,0 +1,240 @@
+package com.zica.example.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.zica.example.db.Data;
+import com.zica.example.db.IdempotentRequest;
+import com.zica.example.exception.IdempotencyKeyReusedException;
+import com.zica.example.exception.InvalidIdempotencyKeyException;
+import com.zica.example.repository.IdempotentRequestRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The responses of POST /data by Idempotency-Key, so the retries of a request don't encrypt and insert the
+ * value again.
+ *
+ * The first request with a key saves the value, and every request with the same key gets its response: the
+ * ones that arrive while it's saved wait for it, the later ones get it right away. A request that fails
+ * forgets its key, so it's saved again by the next retry. The keys are kept in memory, at most a maximum
+ * amount of them and for a time to live. When the table is enabled they are also kept in the
+ * idempotent_request table, so a retry gets the response after a restart or from another instance, once the
+ * first request finished: two instances saving the same key at the same time both insert the value.
+ *
+ * A key is tied to the {@link BlindIndex} of its value, so the same key sent with another value is refused
+ * without the values being kept.
+ */
+@Component
+public class IdempotencyStore implements MeterBinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdempotencyStore.class);
+
+    public static final int MAX_KEY_LENGTH = 255;
+
+    @Autowired
+    private IdempotentRequestRepository idempotentRequestRepository;
+
+    @Autowired
+    private BoundedExecutor databaseExecutor;
+
+    private final Cache<String, Request> cache;
+    private final Duration ttl;
+    private final boolean tableEnabled;
+    private final AtomicLong nextDeletion = new AtomicLong(System.nanoTime());
+
+    private final LongAdder saved = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+
+    /**
+     * @param enabled false saves every request, also the ones with a key
+     * @param maxKeys maximum amount of keys kept in memory, the least recently used ones are forgotten first
+     * @param ttlSeconds how long a key is kept after its request was received
+     * @param tableEnabled true also keeps the keys in the idempotent_request table
+     */
+    public IdempotencyStore(@Value("${idempotency-enabled:true}") boolean enabled,
+                            @Value("${idempotency-max-keys:10000}") long maxKeys,
+                            @Value("${idempotency-ttl-seconds:3600}") long ttlSeconds,
+                            @Value("${idempotency-table-enabled:false}") boolean tableEnabled) {
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.tableEnabled = enabled && tableEnabled;
+        if (!enabled) {
+            this.cache = null;
+            return;
+        }
+
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterWrite(this.ttl)
+                // the eviction work is small, it doesn't need to go to the common pool
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Saves a value once per key
+     * @param key the Idempotency-Key of the request, null saves the value without one
+     * @param fingerprint the blind index of the value
+     * @param save encrypts and inserts the value
+     * @return the response of the first request with the key
+     * @throws InvalidIdempotencyKeyException when the key is empty or too long
+     * @throws IdempotencyKeyReusedException when the key was used with another value
+     */
+    public CompletableFuture<Data> save(String key, byte[] fingerprint, Supplier<CompletableFuture<Data>> save) {
+        if (key == null || this.cache == null) {
+            return save.get();
+        }
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new InvalidIdempotencyKeyException(MAX_KEY_LENGTH);
+        }
+
+        var request = new Request(fingerprint);
+        var previous = this.cache.asMap().putIfAbsent(key, request);
+        if (previous != null) {
+            return this.replay(previous.fingerprint, fingerprint, previous.response);
+        }
+
+        CompletableFuture<Data> response;
+        try {
+            if (this.tableEnabled) {
+                response = CompletableFuture.supplyAsync(() -> this.find(key), this.databaseExecutor)
+                        .thenCompose(stored -> stored == null ? this.saveNew(key, fingerprint, save)
+                                : this.replay(stored.getFingerprint(), fingerprint,
+                                CompletableFuture.completedFuture(new Data(stored.getDataId(), stored.getData()))));
+            } else {
+                response = this.saveNew(key, fingerprint, save);
+            }
+        } catch (RuntimeException e) {
+            // e.g. the executors are saturated
+            response = CompletableFuture.failedFuture(e);
+        }
+
+        response.whenComplete((data, e) -> {
+            if (e != null) {
+                // the next retry saves it again
+                this.cache.asMap().remove(key, request);
+                request.response.completeExceptionally(e);
+            } else {
+                request.response.complete(data);
+            }
+        });
+        return request.response;
+    }
+
+    private CompletableFuture<Data> replay(byte[] savedFingerprint, byte[] fingerprint,
+                                           CompletableFuture<Data> response) {
+        if (!Arrays.equals(savedFingerprint, fingerprint)) {
+            this.conflicts.increment();
+            return CompletableFuture.failedFuture(new IdempotencyKeyReusedException());
+        }
+        this.replayed.increment();
+        return response;
+    }
+
+    private CompletableFuture<Data> saveNew(String key, byte[] fingerprint, Supplier<CompletableFuture<Data>> save) {
+        return save.get().thenApply(data -> {
+            this.saved.increment();
+            if (this.tableEnabled) {
+                this.store(key, fingerprint, data);
+            }
+            return data;
+        });
+    }
+
+    /**
+     * @return the request of the key in the table, null when there is none or it expired
+     */
+    private IdempotentRequest find(String key) {
+        var notBefore = Instant.now().minus(this.ttl);
+        return this.idempotentRequestRepository.findById(key)
+                .filter(stored -> stored.getCreated().isAfter(notBefore))
+                .orElse(null);
+    }
+
+    /**
+     * Keeps the request in the table and, at most once per time to live, deletes the expired ones. The value is
+     * already saved, so a failure only loses the key
+     */
+    private void store(String key, byte[] fingerprint, Data data) {
+        try {
+            var now = Instant.now();
+            this.idempotentRequestRepository.save(
+                    new IdempotentRequest(key, fingerprint, data.getId(), data.getData(), now));
+
+            var next = this.nextDeletion.get();
+            if (System.nanoTime() - next >= 0
+                    && this.nextDeletion.compareAndSet(next, System.nanoTime() + this.ttl.toNanos())) {
+                this.idempotentRequestRepository.deleteCreatedBefore(now.minus(this.ttl));
+            }
+        } catch (DataAccessException e) {
+            LOGGER.warn("Couldn't keep the Idempotency-Key of the record {}", data.getId(), e);
+        }
+    }
+
+    public boolean isEnabled() {
+        return this.cache != null;
+    }
+
+    public long getSaved() {
+        return this.saved.sum();
+    }
+
+    public long getReplayed() {
+        return this.replayed.sum();
+    }
+
+    public long getConflicts() {
+        return this.conflicts.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (this.cache == null) {
+            return;
+        }
+
+        CaffeineCacheMetrics.monitor(registry, this.cache, "idempotencyKeys");
+        FunctionCounter.builder("idempotency.requests", this, IdempotencyStore::getSaved)
+                .tag("result", "saved")
+                .description("Requests with an Idempotency-Key whose value was saved")
+                .register(registry);
+        FunctionCounter.builder("idempotency.requests", this, IdempotencyStore::getReplayed)
+                .tag("result", "replayed")
+                .description("Requests answered with the response of an earlier request with the same key")
+                .register(registry);
+        FunctionCounter.builder("idempotency.requests", this, IdempotencyStore::getConflicts)
+                .tag("result", "conflict")
+                .description("Requests refused as their key was used with another value")
+                .register(registry);
+    }
+
+    /**
+     * A key in memory: the fingerprint of its value and the response of its first request, completed once it's
+     * saved
+     */
+    private static final class Request {
+        private final byte[] fingerprint;
+        private final CompletableFuture<Data> response = new CompletableFuture<>();
+
+        private Request(byte[] fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.zica.example.service;
 import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
@@ -30,4 +32,55 @@ public interface RSACryptographyService {
      */
     String decrypt(String data) throws NoSuchPaddingException,
             NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException;
+
+    /**
+     * Encrypts a String to be stored as binary, without going through Base64
+     * @param data The String to be encrypted
+     * @return the encrypted value in the {@link CiphertextFormat}
+     */
+    byte[] encryptToBytes(String data) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException;
+
+    /**
+     * Decrypts a value stored as binary
+     * @param data A value in the {@link CiphertextFormat}
+     * @return The decrypted string
+     */
+    String decryptFromBytes(byte[] data) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException;
+
+    /**
+     * Encrypts the remaining bytes of data into out, without allocating the result. The other methods
+     * wrap this one, with buffers that are reused between calls
+     * @param data the UTF-8 bytes to be encrypted, read up to its limit
+     * @param out receives the encrypted value in the {@link CiphertextFormat} from its position. It must
+     *            have at least {@link #getMaxEncryptedLength(int)} bytes remaining
+     */
+    void encrypt(ByteBuffer data, ByteBuffer out) throws NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidKeyException, BadPaddingException, IllegalBlockSizeException, ShortBufferException;
+
+    /**
+     * Decrypts the remaining bytes of data into out, without allocating the result
+     * @param data a value in the {@link CiphertextFormat}, read up to its limit
+     * @param out receives the decrypted UTF-8 bytes from its position. The decrypted value is never
+     *            longer than the encrypted one
+     */
+    void decrypt(ByteBuffer data, ByteBuffer out) throws NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidKeyException, BadPaddingException, IllegalBlockSizeException, ShortBufferException;
+
+    /**
+     * @param dataLength bytes to be encrypted
+     * @return the most bytes {@link #encrypt(ByteBuffer, ByteBuffer)} writes for them
+     */
+    int getMaxEncryptedLength(int dataLength);
+
+    /**
+     * @return the id of the RSA key new values are encrypted with, stored with them
+     */
+    int getKeyId();
+
+    /**
+     * @return if keys of previous versions are configured, to decrypt the values written with them
+     */
+    boolean hasPreviousKeys();
 }
@@ -1,5 +1,13 @@
 package com.zica.example.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import com.zica.example.exception.ValueTooLongException;
+import com.zica.example.monitoring.Stage;
+import com.zica.example.monitoring.StageTimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -7,25 +15,190 @@ import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
+import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 
+/**
+ * RSA with PKCS#1 padding. New values are encrypted with the current key pair and carry its id, and the
+ * private keys of the previous versions are kept to decrypt the values written with them.
+ *
+ * The ciphers come from an {@link RSAEngine}, chosen at startup: the configured one, or with {@code auto}
+ * the fastest of the installed ones that is compatible with the stored values, by a short measurement
+ * ({@link RSAEngineMeasurement}).
+ */
 @Service
-public class RSACryptographyServiceImpl implements RSACryptographyService {
+public class RSACryptographyServiceImpl implements RSACryptographyService, MeterBinder {
+
+    static final int DEFAULT_CIPHER_POOL_SIZE = 16;
+    /**
+     * How much faster than the default engine another one must be to be selected
+     */
+    private static final double ENGINE_MIN_GAIN = 0.1;
+    static final String DEFAULT_ENGINE_TRANSFORMATIONS = "RSA/ECB/PKCS1Padding,RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RSACryptographyServiceImpl.class);
+
+    private static final int PKCS1_PADDING_LENGTH = 11;
+    private static final int MAX_KEY_ID = 0xffff;
 
     private Key publicKey;
     private Key privateKey;
 
+    private int keyId;
+    private RSAEngine engine;
+    private List<RSAEngineMeasurement> engineMeasurements = List.of();
+    private CipherPool encryptCiphers;
+
+    /**
+     * The decryption ciphers of every key, by the key id
+     */
+    private Map<Integer, CipherPool> decryptCiphersByKeyId = new HashMap<>();
+
+    private int maxDataLength;
+    private int encryptedLength;
+
+    /**
+     * Stays disabled for the instances created outside of Spring
+     */
+    @Autowired(required = false)
+    private StageTimer stageTimer = StageTimer.DISABLED;
+
+    public RSACryptographyServiceImpl(String serializedPublicKey, String serializedPrivateKey)
+            throws InvalidKeySpecException, NoSuchAlgorithmException {
+        this(serializedPublicKey, serializedPrivateKey, DEFAULT_CIPHER_POOL_SIZE);
+    }
+
+    public RSACryptographyServiceImpl(String serializedPublicKey, String serializedPrivateKey, int cipherPoolSize)
+            throws InvalidKeySpecException, NoSuchAlgorithmException {
+        this(serializedPublicKey, serializedPrivateKey, CiphertextFormat.LEGACY_KEY_ID, "", cipherPoolSize);
+    }
+
+    /**
+     * @param keyId the version of the key pair, stored with the values it encrypts
+     * @param previousPrivateKeys the private keys of the previous versions as comma separated
+     *                            {@code <id>:<Base64 key>} pairs, to decrypt the values written with them
+     * @param cipherPoolSize how many initialised ciphers are kept for encryption and for decryption
+     *                       each. 0 creates a new Cipher on every call
+     */
+    public RSACryptographyServiceImpl(String serializedPublicKey, String serializedPrivateKey, int keyId,
+                                      String previousPrivateKeys, int cipherPoolSize)
+            throws InvalidKeySpecException, NoSuchAlgorithmException {
+        this(serializedPublicKey, serializedPrivateKey, keyId, previousPrivateKeys, cipherPoolSize, "default",
+                new String[0], 0);
+    }
+
+    /**
+     * @param engine the {@link RSAEngine} name, {@code default} or {@code auto} to choose the fastest
+     *               compatible one
+     * @param engineTransformations the transformations of each installed provider measured by {@code auto}
+     * @param engineMeasurementIterations encryptions and decryptions measured for each engine
+     */
+    @Autowired
     public RSACryptographyServiceImpl(@Value("${rsa-public-key}") String serializedPublicKey,
-                                      @Value("${rsa-private-key}") String serializedPrivateKey)
+                                      @Value("${rsa-private-key}") String serializedPrivateKey,
+                                      @Value("${rsa-key-id:" + CiphertextFormat.LEGACY_KEY_ID + "}") int keyId,
+                                      @Value("${rsa-previous-private-keys:}") String previousPrivateKeys,
+                                      @Value("${cipher-pool-size:" + DEFAULT_CIPHER_POOL_SIZE + "}") int cipherPoolSize,
+                                      @Value("${rsa-engine:default}") String engine,
+                                      @Value("${rsa-engine-transformations:" + DEFAULT_ENGINE_TRANSFORMATIONS + "}")
+                                              String[] engineTransformations,
+                                      @Value("${rsa-engine-measurement-iterations:50}") int engineMeasurementIterations)
             throws InvalidKeySpecException, NoSuchAlgorithmException {
+        if (keyId < 0 || keyId > MAX_KEY_ID) {
+            throw new IllegalArgumentException("The key id must be between 0 and " + MAX_KEY_ID + ": " + keyId);
+        }
+
         this.publicKey = this.decodeBase64ToPublicKey(serializedPublicKey);
         this.privateKey = this.decodeBase64ToPrivateKey(serializedPrivateKey);
+        this.encryptedLength = (((RSAPublicKey) this.publicKey).getModulus().bitLength() + 7) / 8;
+        this.maxDataLength = this.encryptedLength - PKCS1_PADDING_LENGTH;
+
+        this.keyId = keyId;
+        this.engine = this.selectEngine(engine, engineTransformations, engineMeasurementIterations);
+        this.encryptCiphers = this.newCipherPool("encrypt", Cipher.ENCRYPT_MODE, publicKey, cipherPoolSize);
+        this.decryptCiphersByKeyId.put(keyId,
+                this.newCipherPool("decrypt", Cipher.DECRYPT_MODE, privateKey, cipherPoolSize));
+
+        for (var previous : previousPrivateKeys.split(",")) {
+            if (previous.isBlank()) {
+                continue;
+            }
+
+            var separator = previous.indexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("The previous keys must be <id>:<Base64 key> pairs");
+            }
+            var previousId = Integer.parseInt(previous.substring(0, separator).trim());
+            var previousKey = this.decodeBase64ToPrivateKey(previous.substring(separator + 1).trim());
+            var ciphers = this.newCipherPool("decrypt-key-" + previousId, Cipher.DECRYPT_MODE, previousKey,
+                    cipherPoolSize);
+            if (this.decryptCiphersByKeyId.putIfAbsent(previousId, ciphers) != null) {
+                throw new IllegalArgumentException("The key id " + previousId + " is configured more than once");
+            }
+        }
+    }
+
+    private RSAEngine selectEngine(String name, String[] transformations, int measurementIterations) {
+        if (name.equals("default")) {
+            return RSAEngine.DEFAULT;
+        }
+
+        var auto = name.equals("auto");
+        var engines = auto
+                ? RSAEngine.installed(Arrays.stream(transformations).map(String::trim).collect(Collectors.toList()))
+                : List.of(RSAEngine.parse(name));
+        this.engineMeasurements = RSAEngineMeasurement.measure(engines, this.publicKey, this.privateKey,
+                this.maxDataLength, measurementIterations);
+        if (!auto) {
+            if (!this.engineMeasurements.get(0).isCompatible()) {
+                throw new IllegalArgumentException("The RSA engine " + name + " can't read the stored values");
+            }
+            return engines.get(0);
+        }
+
+        this.engineMeasurements.forEach(measurement -> LOGGER.info(
+                "RSA engine {}: {} microseconds to encrypt, {} microseconds to decrypt{}", measurement.getName(),
+                Math.round(measurement.getEncryptMicros()), Math.round(measurement.getDecryptMicros()),
+                measurement.isCompatible() ? "" : ", not compatible with the stored values"));
+        var compatible = this.engineMeasurements.stream()
+                .filter(measurement -> measurement.isCompatible() && measurement.getError() == null)
+                .collect(Collectors.toList());
+        var selected = compatible.stream()
+                .min(Comparator.comparingDouble(RSACryptographyServiceImpl::engineMicros))
+                .orElseThrow(() -> new IllegalStateException("No RSA engine is compatible with the stored values"));
+        // the default engine is kept unless another one is clearly faster, as the same implementation
+        // through another name is only faster by noise
+        var defaultEngine = compatible.stream()
+                .filter(measurement -> measurement.getEngine().equals(RSAEngine.DEFAULT))
+                .findFirst();
+        if (defaultEngine.isPresent()
+                && engineMicros(selected) > engineMicros(defaultEngine.get()) * (1 - ENGINE_MIN_GAIN)) {
+            selected = defaultEngine.get();
+        }
+        LOGGER.info("Using the RSA engine {}", selected.getName());
+        return selected.getEngine();
+    }
+
+    private static double engineMicros(RSAEngineMeasurement measurement) {
+        return measurement.getEncryptMicros() + measurement.getDecryptMicros();
+    }
+
+    private CipherPool newCipherPool(String name, int cipherMode, Key key, int size) {
+        return new CipherPool(name, this.engine.getTransformation(), this.engine.getProvider(), cipherMode, key, size);
     }
 
     @Override
@@ -39,31 +212,173 @@ public class RSACryptographyServiceImpl implements RSACryptographyService {
     @Override
     public String encrypt(String data) throws NoSuchPaddingException,
                 NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
-        var encrypted = this.applyCryptography(data.getBytes(StandardCharsets.UTF_8), this.publicKey, Cipher.ENCRYPT_MODE);
-        return this.encodeToBase64(encrypted);
+        var buffers = CryptographyBuffers.acquire();
+        try {
+            return buffers.encryptToText(this, data, this.stageTimer);
+        } finally {
+            buffers.release();
+        }
     }
 
     @Override
     public String decrypt(String data) throws NoSuchPaddingException,
             NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
-        var decodedData = this.decodeFromBase64(data);
-        var decrypted = this.applyCryptography(decodedData, this.privateKey, Cipher.DECRYPT_MODE);
-        return new String(decrypted, StandardCharsets.UTF_8);
+        var buffers = CryptographyBuffers.acquire();
+        try {
+            return buffers.decryptText(this, data, this.stageTimer);
+        } finally {
+            buffers.release();
+        }
+    }
+
+    @Override
+    public byte[] encryptToBytes(String data) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        var buffers = CryptographyBuffers.acquire();
+        try {
+            return buffers.encryptToBytes(this, data);
+        } finally {
+            buffers.release();
+        }
     }
 
-    private byte[] applyCryptography(byte[] data, Key key, int cipherMode) throws NoSuchPaddingException,
+    @Override
+    public String decryptFromBytes(byte[] data) throws NoSuchPaddingException,
             NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
-        var cipher = Cipher.getInstance("RSA");
-        cipher.init(cipherMode, key);
-        return cipher.doFinal(data);
+        var buffers = CryptographyBuffers.acquire();
+        try {
+            return buffers.decryptToString(this, ByteBuffer.wrap(data));
+        } finally {
+            buffers.release();
+        }
+    }
+
+    @Override
+    public void encrypt(ByteBuffer data, ByteBuffer out) throws NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidKeyException, BadPaddingException, IllegalBlockSizeException, ShortBufferException {
+        if (data.remaining() > this.maxDataLength) {
+            throw new ValueTooLongException(data.remaining(), this.maxDataLength);
+        }
+
+        out.put(CiphertextFormat.KEYED_RSA).putShort((short) this.keyId);
+        try (var ignored = this.stageTimer.start(Stage.ENCRYPT)) {
+            this.encryptCiphers.doFinal(data, out);
+        }
+    }
+
+    @Override
+    public void decrypt(ByteBuffer data, ByteBuffer out) throws NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidKeyException, BadPaddingException, IllegalBlockSizeException, ShortBufferException {
+        var format = data.get();
+        int keyId;
+        if (format == CiphertextFormat.KEYED_RSA) {
+            keyId = Short.toUnsignedInt(data.getShort());
+        } else if (format == CiphertextFormat.RSA) {
+            keyId = CiphertextFormat.LEGACY_KEY_ID;
+        } else {
+            throw new IllegalArgumentException("The value wasn't encrypted with RSA, its format is " + format);
+        }
+
+        var ciphers = this.decryptCiphers(keyId);
+        try (var ignored = this.stageTimer.start(Stage.DECRYPT)) {
+            ciphers.doFinal(data, out);
+        }
+    }
+
+    @Override
+    public int getMaxEncryptedLength(int dataLength) {
+        // the format byte, the key id and one block, whatever the data length
+        return 1 + Short.BYTES + this.getEncryptedLength();
+    }
+
+    @Override
+    public int getKeyId() {
+        return this.keyId;
+    }
+
+    @Override
+    public boolean hasPreviousKeys() {
+        return this.decryptCiphersByKeyId.size() > 1;
+    }
+
+    /**
+     * @return the length of the RSA ciphertexts, the size of the key in bytes
+     */
+    public int getEncryptedLength() {
+        return this.encryptedLength;
+    }
+
+    /**
+     * Encrypts raw bytes with the public key
+     * @param data at most {@link #getMaxDataLength()} bytes
+     * @return the RSA encrypted bytes
+     */
+    public byte[] encrypt(byte[] data) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        if (data.length > this.maxDataLength) {
+            throw new ValueTooLongException(data.length, this.maxDataLength);
+        }
+        try (var ignored = this.stageTimer.start(Stage.ENCRYPT)) {
+            return this.encryptCiphers.doFinal(data);
+        }
+    }
+
+    /**
+     * Decrypts raw bytes with a private key
+     * @param keyId the id of the key the bytes were encrypted with
+     * @param data bytes encrypted by {@link #encrypt(byte[])}
+     * @return the decrypted bytes
+     */
+    public byte[] decrypt(int keyId, byte[] data) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidKeyException, BadPaddingException, IllegalBlockSizeException {
+        var ciphers = this.decryptCiphers(keyId);
+        try (var ignored = this.stageTimer.start(Stage.DECRYPT)) {
+            return ciphers.doFinal(data);
+        }
+    }
+
+    /**
+     * @return the engine of the ciphers
+     */
+    public RSAEngine getEngine() {
+        return this.engine;
+    }
+
+    /**
+     * @return the results of the startup measurement of the engines, empty when the engine was configured as
+     * {@code default}
+     */
+    public List<RSAEngineMeasurement> getEngineMeasurements() {
+        return this.engineMeasurements;
+    }
+
+    /**
+     * @return how many bytes can be encrypted at once with the configured key. RSA can't
+     * encrypt more than the key size minus the padding (245 bytes for a 2048 bits key)
+     */
+    public int getMaxDataLength() {
+        return maxDataLength;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.encryptCiphers.bindTo(registry);
+        this.decryptCiphersByKeyId.values().forEach(ciphers -> ciphers.bindTo(registry));
     }
 
-    private String encodeToBase64(byte[] toBeEncoded) {
-        return Base64.getEncoder().encodeToString(toBeEncoded);
+    private CipherPool decryptCiphers(int keyId) {
+        var ciphers = this.decryptCiphersByKeyId.get(keyId);
+        if (ciphers == null) {
+            throw new IllegalArgumentException("The value was encrypted with the key " + keyId
+                    + ", which is not configured");
+        }
+        return ciphers;
     }
 
     private byte[] decodeFromBase64(String toBeDecoded) {
-        return Base64.getDecoder().decode(toBeDecoded.getBytes(StandardCharsets.UTF_8));
+        try (var ignored = this.stageTimer.start(Stage.BASE64)) {
+            return Base64.getDecoder().decode(toBeDecoded.getBytes(StandardCharsets.UTF_8));
+        }
     }
 
     private Key decodeBase64ToPrivateKey(String key) throws NoSuchAlgorithmException, InvalidKeySpecException {
@@ -0,0 +1,118 @@
+package com.zica.example.service;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A JCA implementation of RSA: a transformation of a provider. The values are stored without their padding,
+ * so an engine can only replace another one when they are compatible, i.e. when they use the same padding
+ * (see {@link RSAEngineMeasurement}).
+ */
+public final class RSAEngine {
+
+    /**
+     * The engine of the values written so far: the RSA of the most preferred provider, PKCS#1 v1.5 padding
+     */
+    public static final RSAEngine DEFAULT = new RSAEngine(null, "RSA");
+
+    private final Provider provider;
+    private final String transformation;
+
+    private RSAEngine(Provider provider, String transformation) {
+        this.provider = provider;
+        this.transformation = transformation;
+    }
+
+    /**
+     * @param name {@code <provider>:<transformation>}, e.g. SunJCE:RSA/ECB/PKCS1Padding, or {@code default}
+     * @throws IllegalArgumentException when the provider isn't installed
+     */
+    public static RSAEngine parse(String name) {
+        if (name.equals("default")) {
+            return DEFAULT;
+        }
+
+        var separator = name.indexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("The RSA engine must be <provider>:<transformation>: " + name);
+        }
+        var provider = Security.getProvider(name.substring(0, separator).trim());
+        if (provider == null) {
+            throw new IllegalArgumentException("The provider of the RSA engine " + name + " isn't installed");
+        }
+        return new RSAEngine(provider, name.substring(separator + 1).trim());
+    }
+
+    /**
+     * @return the default engine, then each of the transformations of every installed provider of RSA ciphers
+     * that supports it
+     */
+    public static List<RSAEngine> installed(List<String> transformations) {
+        var engines = new ArrayList<RSAEngine>();
+        engines.add(DEFAULT);
+        var providers = Security.getProviders("Cipher.RSA");
+        if (providers == null) {
+            return engines;
+        }
+
+        for (var provider : providers) {
+            for (var transformation : transformations) {
+                var engine = new RSAEngine(provider, transformation);
+                try {
+                    engine.newCipher();
+                    engines.add(engine);
+                } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+                    // the provider doesn't have this padding
+                }
+            }
+        }
+        return engines;
+    }
+
+    /**
+     * @return the provider, null for the most preferred provider of the transformation
+     */
+    public Provider getProvider() {
+        return this.provider;
+    }
+
+    public String getTransformation() {
+        return this.transformation;
+    }
+
+    public Cipher newCipher() throws NoSuchAlgorithmException, NoSuchPaddingException {
+        return this.provider == null
+                ? Cipher.getInstance(this.transformation) : Cipher.getInstance(this.transformation, this.provider);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        var other = (RSAEngine) o;
+        return Objects.equals(this.provider, other.provider) && this.transformation.equals(other.transformation);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.provider, this.transformation);
+    }
+
+    /**
+     * @return the name {@link #parse} takes
+     */
+    @Override
+    public String toString() {
+        return this.provider == null ? "default" : this.provider.getName() + ":" + this.transformation;
+    }
+}
@@ -0,0 +1,139 @@
+package com.zica.example.service;
+
+import javax.crypto.Cipher;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The startup measurement of the {@link RSAEngine}s with the configured keys, for {@code rsa-engine=auto}: the
+ * average time of an encryption and of a decryption of a value of the longest length, and whether the engine is
+ * compatible with the stored values, i.e. decrypts the values of the {@link RSAEngine#DEFAULT} engine and writes
+ * values it decrypts. Every engine is warmed up before any of them is measured, so the first ones aren't measured
+ * while the rest of the startup is still being compiled.
+ */
+public class RSAEngineMeasurement {
+
+    private final RSAEngine engine;
+    private boolean compatible;
+    private double encryptMicros;
+    private double decryptMicros;
+    private String error;
+
+    private RSAEngineMeasurement(RSAEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * @param dataLength the length of the values, the most the default engine encrypts with the key
+     * @param iterations encryptions and decryptions measured for each engine, after as many for the warm-up
+     */
+    public static List<RSAEngineMeasurement> measure(List<RSAEngine> engines, Key publicKey, Key privateKey,
+                                                     int dataLength, int iterations) {
+        var data = new byte[dataLength];
+        ThreadLocalRandom.current().nextBytes(data);
+        var results = new ArrayList<RSAEngineMeasurement>();
+        byte[] stored;
+        try {
+            stored = init(RSAEngine.DEFAULT, Cipher.ENCRYPT_MODE, publicKey).doFinal(data);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("The default RSA engine doesn't work with the key", e);
+        }
+
+        for (var engine : engines) {
+            var result = new RSAEngineMeasurement(engine);
+            results.add(result);
+            try {
+                var decrypted = init(engine, Cipher.DECRYPT_MODE, privateKey).doFinal(stored);
+                var written = init(engine, Cipher.ENCRYPT_MODE, publicKey).doFinal(data);
+                var decryptedByDefault = init(RSAEngine.DEFAULT, Cipher.DECRYPT_MODE, privateKey).doFinal(written);
+                result.compatible = Arrays.equals(data, decrypted) && Arrays.equals(data, decryptedByDefault);
+            } catch (GeneralSecurityException e) {
+                // e.g. another padding, which doesn't decrypt the stored values or encrypt values of their length
+                result.compatible = false;
+            }
+        }
+
+        // an incompatible engine is measured with the values it writes, which may have to be shorter
+        var shortData = Arrays.copyOf(data, dataLength / 2);
+        for (int pass = 0; pass < 2; pass++) {
+            for (var result : results) {
+                try {
+                    result.time(result.compatible ? data : shortData, publicKey, privateKey, iterations, pass == 1);
+                } catch (GeneralSecurityException e) {
+                    result.error = e.toString();
+                }
+            }
+        }
+        return results;
+    }
+
+    private void time(byte[] data, Key publicKey, Key privateKey, int iterations, boolean record)
+            throws GeneralSecurityException {
+        var encrypt = init(this.engine, Cipher.ENCRYPT_MODE, publicKey);
+        var decrypt = init(this.engine, Cipher.DECRYPT_MODE, privateKey);
+
+        byte[] encrypted = null;
+        var start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            encrypted = encrypt.doFinal(data);
+        }
+        var encryptNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            decrypt.doFinal(encrypted);
+        }
+        var decryptNanos = System.nanoTime() - start;
+
+        if (record) {
+            this.encryptMicros = encryptNanos / 1000.0 / iterations;
+            this.decryptMicros = decryptNanos / 1000.0 / iterations;
+        }
+    }
+
+    private static Cipher init(RSAEngine engine, int mode, Key key) throws GeneralSecurityException {
+        var cipher = engine.newCipher();
+        cipher.init(mode, key);
+        return cipher;
+    }
+
+    public RSAEngine getEngine() {
+        return this.engine;
+    }
+
+    public String getName() {
+        return this.engine.toString();
+    }
+
+    /**
+     * @return whether the engine reads and writes the values of the default engine, so it can replace it
+     */
+    public boolean isCompatible() {
+        return this.compatible;
+    }
+
+    /**
+     * @return the average time of an encryption, in microseconds
+     */
+    public double getEncryptMicros() {
+        return this.encryptMicros;
+    }
+
+    /**
+     * @return the average time of a decryption, in microseconds
+     */
+    public double getDecryptMicros() {
+        return this.decryptMicros;
+    }
+
+    /**
+     * @return why the engine couldn't be measured, null when it was
+     */
+    public String getError() {
+        return this.error;
+    }
+}
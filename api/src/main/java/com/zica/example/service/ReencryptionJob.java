@@ -0,0 +1,266 @@
+package com.zica.example.service;
+
+import com.zica.example.db.Data;
+import com.zica.example.db.ReencryptionCheckpoint;
+import com.zica.example.repository.DataRepository;
+import com.zica.example.repository.ReencryptionCheckpointRepository;
+import com.zica.example.sharding.DataShards;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Re-encrypts the records written with a previous RSA key with the current one, so the previous keys can
+ * be retired after a rotation. It runs in the background once the application is ready and walks the
+ * records in chunks in id order: the values of a chunk are re-encrypted in parallel and written in one
+ * transaction, together with a {@link ReencryptionCheckpoint}, so a restarted job resumes after the last
+ * chunk written. It is throttled to an amount of records per second and runs on low priority threads,
+ * so it doesn't take the cryptography away from the requests.
+ *
+ * A record updated while its chunk is re-encrypted keeps the updated value, as only records whose value is
+ * still the one read are changed. As that value may have been written with a previous key by an instance
+ * not rotated yet, the job walks the records again until a pass has no such records.
+ *
+ * When the data is sharded the shards are re-encrypted one after the other, each with its own checkpoint
+ * in its own database.
+ */
+@Component
+public class ReencryptionJob implements MeterBinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReencryptionJob.class);
+
+    @Autowired
+    private DataRepository dataRepository;
+
+    @Autowired
+    private ReencryptionCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private RSACryptographyService cryptographyService;
+
+    @Autowired
+    private DataVersion dataVersion;
+
+    @Autowired
+    private DecryptedDataCache decryptedDataCache;
+
+    @Autowired
+    private DataShards dataShards;
+
+    @Value("${reencryption-enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Records read and written in each transaction
+     */
+    @Value("${reencryption-chunk-size:100}")
+    private int chunkSize;
+
+    /**
+     * 0 doesn't throttle the job
+     */
+    @Value("${reencryption-records-per-second:200}")
+    private double recordsPerSecond;
+
+    @Value("${reencryption-parallelism:2}")
+    private int parallelism;
+
+    private final LongAdder reencrypted = new LongAdder();
+    private final LongAdder changed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private volatile int shard;
+    private volatile long lastId;
+    private volatile long maxId;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!this.enabled) {
+            return;
+        }
+
+        BackgroundWalk.start("reencryption", this::reencrypt);
+    }
+
+    /**
+     * Re-encrypts every record that isn't encrypted with the current key, from the checkpoint on
+     * @return the amount of records re-encrypted
+     */
+    public synchronized long reencrypt() {
+        if (!this.cryptographyService.hasPreviousKeys()) {
+            // nothing else can be decrypted
+            return 0;
+        }
+
+        var keyId = this.cryptographyService.getKeyId();
+        var before = this.reencrypted.sum();
+        var walked = false;
+        for (int shard = 0; shard < this.dataShards.getCount(); shard++) {
+            this.shard = shard;
+            walked |= this.dataShards.on(shard, () -> this.reencryptShard(keyId));
+        }
+        if (!walked) {
+            return 0;
+        }
+
+        var reencryptedNow = this.reencrypted.sum() - before;
+        LOGGER.info("Every record is encrypted with the key {}, {} records were re-encrypted", keyId, reencryptedNow);
+        return reencryptedNow;
+    }
+
+    /**
+     * Re-encrypts the records of the shard of the calling thread, with the checkpoint of the shard
+     * @return false when the shard was already re-encrypted
+     */
+    private boolean reencryptShard(int keyId) {
+        var checkpoint = this.checkpointRepository.findById(keyId).orElseGet(() -> new ReencryptionCheckpoint(keyId));
+        if (checkpoint.isCompleted()) {
+            return false;
+        }
+
+        try (var walk = new BackgroundWalk("reencryption", this.parallelism, this.recordsPerSecond)) {
+            while (!checkpoint.isCompleted()) {
+                // the records changed concurrently are checked again in another pass
+                checkpoint.setCompleted(walk.pass(this.changed, () -> this.reencryptPass(keyId, checkpoint, walk)));
+                checkpoint.setLastId(0);
+                this.checkpointRepository.save(checkpoint);
+            }
+        }
+        return true;
+    }
+
+    private void reencryptPass(int keyId, ReencryptionCheckpoint checkpoint, BackgroundWalk walk) {
+        this.maxId = this.dataRepository.findTopByOrderByIdDesc().map(Data::getId).orElse(0L);
+        this.lastId = checkpoint.getLastId();
+        while (true) {
+            var chunk = this.dataRepository.findByIdGreaterThanOrderByIdAsc(this.lastId,
+                    PageRequest.of(0, this.chunkSize));
+            if (chunk.isEmpty()) {
+                return;
+            }
+
+            var values = walk.map(chunk, data -> this.reencrypt(keyId, data));
+
+            checkpoint.setLastId(chunk.get(chunk.size() - 1).getId());
+            var reencryptedIds = this.transactionTemplate.execute(status -> {
+                var ids = this.write(chunk, values);
+                this.checkpointRepository.save(checkpoint);
+                return ids;
+            });
+            // once committed, like an update, so a read in between doesn't cache the previous value again
+            reencryptedIds.forEach(this.decryptedDataCache::invalidate);
+            this.dataVersion.increment();
+            this.lastId = checkpoint.getLastId();
+            walk.throttle((int) values.stream().filter(Objects::nonNull).count());
+        }
+    }
+
+    /**
+     * @return the value of the record encrypted with the current key, null when it already is or
+     * when it couldn't be decrypted
+     */
+    private byte[] reencrypt(int keyId, Data data) {
+        var buffers = CryptographyBuffers.acquire();
+        try {
+            var value = CiphertextFormat.of(data);
+            if (value == null || CiphertextFormat.keyIdOf(value) == keyId) {
+                return null;
+            }
+            return buffers.reencrypt(this.cryptographyService, value);
+        } catch (Exception e) {
+            // it stays as it is and fails when decrypted, like before
+            this.failed.increment();
+            LOGGER.warn("The value of the record {} couldn't be re-encrypted: {}", data.getId(), e.getMessage());
+            return null;
+        } finally {
+            buffers.release();
+        }
+    }
+
+    /**
+     * @return the ids of the records re-encrypted
+     */
+    private List<Long> write(List<Data> chunk, List<byte[]> values) {
+        var reencryptedIds = new ArrayList<Long>();
+        for (int i = 0; i < chunk.size(); i++) {
+            var data = chunk.get(i);
+            var value = values.get(i);
+            if (value == null) {
+                continue;
+            }
+
+            var updated = data.getData() != null
+                    ? this.dataRepository.reencryptData(data.getId(), value, data.getData())
+                    : this.dataRepository.migrateData(data.getId(), value, data.getLegacyData());
+            if (updated > 0) {
+                this.reencrypted.increment();
+                reencryptedIds.add(data.getId());
+            } else {
+                this.changed.increment();
+            }
+        }
+        return reencryptedIds;
+    }
+
+    public long getReencrypted() {
+        return this.reencrypted.sum();
+    }
+
+    public long getChanged() {
+        return this.changed.sum();
+    }
+
+    public long getFailed() {
+        return this.failed.sum();
+    }
+
+    /**
+     * @return the share of the records walked in the current pass, 1 when there are none. The shards before
+     * the current one count as walked
+     */
+    public double getProgress() {
+        var maxId = this.maxId;
+        var shardProgress = maxId == 0 ? 1 : Math.min(1, (double) this.lastId / maxId);
+        return (this.shard + shardProgress) / this.dataShards.getCount();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("reencryption.records", this, ReencryptionJob::getReencrypted)
+                .tag("result", "reencrypted")
+                .description("Records re-encrypted with the current key")
+                .register(registry);
+        FunctionCounter.builder("reencryption.records", this, ReencryptionJob::getChanged)
+                .tag("result", "changed")
+                .description("Records updated while they were re-encrypted, checked again in the next pass")
+                .register(registry);
+        FunctionCounter.builder("reencryption.records", this, ReencryptionJob::getFailed)
+                .tag("result", "failed")
+                .description("Records whose value couldn't be re-encrypted")
+                .register(registry);
+        Gauge.builder("reencryption.checkpoint", this, job -> job.lastId)
+                .description("The id of the last record re-encrypted")
+                .register(registry);
+        Gauge.builder("reencryption.progress", this, ReencryptionJob::getProgress)
+                .description("The share of the records walked by the re-encryption")
+                .register(registry);
+    }
+}
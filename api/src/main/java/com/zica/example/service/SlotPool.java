@@ -0,0 +1,70 @@
+package com.zica.example.service;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded amount of slots of idle instances that are not thread safe, e.g. initialised ciphers, each
+ * handed to a single thread at a time: {@link #take} takes one out of its slot and {@link #give} puts it
+ * back once the caller is done with it. Each thread starts looking from its own slot, which keeps threads
+ * from fighting over the same instances. A size of 0 keeps no instance.
+ */
+final class SlotPool<T> {
+
+    private final AtomicReferenceArray<T> slots;
+
+    /**
+     * @param size maximum amount of idle instances kept
+     */
+    SlotPool(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("The amount of slots can't be negative: " + size);
+        }
+        this.slots = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * @return an idle instance, only used by the caller until it gives it back. Null when there is none
+     */
+    T take() {
+        var size = this.slots.length();
+        var start = probe(size);
+        for (int i = 0; i < size; i++) {
+            var index = (start + i) % size;
+            var item = this.slots.get(index);
+            if (item != null && this.slots.compareAndSet(index, item, null)) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Keeps the instance for the next {@link #take}. It's dropped when every slot is taken
+     */
+    void give(T item) {
+        var size = this.slots.length();
+        var start = probe(size);
+        for (int i = 0; i < size; i++) {
+            if (this.slots.compareAndSet((start + i) % size, null, item)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the amount of idle instances
+     */
+    int idle() {
+        var idle = 0;
+        for (int i = 0; i < this.slots.length(); i++) {
+            if (this.slots.get(i) != null) {
+                idle++;
+            }
+        }
+        return idle;
+    }
+
+    private static int probe(int size) {
+        return size == 0 ? 0 : (int) (Thread.currentThread().getId() % size);
+    }
+}
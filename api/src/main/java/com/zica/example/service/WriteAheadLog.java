@@ -0,0 +1,268 @@
+package com.zica.example.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of encrypted records in a memory-mapped file of a fixed size, for the records that
+ * are acknowledged before they are inserted in the database (see {@link WriteBehindWriter}).
+ *
+ * The file starts with a header with the generation of the log and the position up to which the records
+ * are in the database. Each record is its length, the generation, its id, the encrypted value and a
+ * CRC32 of all that. A record is durable once {@link #sync} returns for it: the appends that wait for a
+ * sync at the same time share one fsync. The records may be inserted in the database in any order, the
+ * drained position only moves past the records that are all in the database. Once every record is in the
+ * database the log starts over from the beginning with the next generation, so the older records left in
+ * the file are never read again.
+ *
+ * After a crash {@link #open} finds the records that weren't in the database yet: the records of the
+ * current generation after the drained position, up to the first one that is incomplete.
+ */
+public class WriteAheadLog implements Closeable {
+
+    private static final int MAGIC = 0x5741_4c31;
+    private static final int HEADER_SIZE = 32;
+    private static final int GENERATION_OFFSET = 4;
+    private static final int DRAINED_OFFSET = 8;
+    /**
+     * length, generation, id and CRC32
+     */
+    private static final int RECORD_OVERHEAD = Integer.BYTES * 3 + Long.BYTES;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final Object syncLock = new Object();
+    /**
+     * The records of the generation that aren't drained yet, in log order
+     */
+    private final ArrayDeque<Record> undrained = new ArrayDeque<>();
+    private final List<Record> replayed;
+
+    private int generation;
+    private int written;
+    private long appended;
+    private volatile long synced;
+
+    private WriteAheadLog(FileChannel channel, MappedByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(GENERATION_OFFSET, 0);
+            buffer.putLong(DRAINED_OFFSET, HEADER_SIZE);
+            buffer.force();
+        }
+        this.generation = buffer.getInt(GENERATION_OFFSET);
+        this.written = (int) buffer.getLong(DRAINED_OFFSET);
+        this.replayed = this.replay();
+    }
+
+    /**
+     * Opens the log, creating the file when it doesn't exist
+     * @param size the size of the file. Only used when the file is created
+     */
+    public static WriteAheadLog open(Path path, int size) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        var channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            var mappedSize = channel.size() > 0 ? channel.size() : size;
+            return new WriteAheadLog(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the records found in the log when it was opened that weren't in the database yet, in log order
+     */
+    public List<Record> getReplayed() {
+        return this.replayed;
+    }
+
+    private List<Record> replay() {
+        var records = new ArrayList<Record>();
+        while (true) {
+            var record = this.read(this.written);
+            if (record == null) {
+                break;
+            }
+            records.add(record);
+            this.undrained.add(record);
+            this.written = record.end;
+        }
+
+        if (this.written + Integer.BYTES <= this.buffer.capacity() && this.buffer.getInt(this.written) != 0
+                && this.buffer.getInt(this.written + Integer.BYTES) == this.generation) {
+            // an incomplete record: nothing after it was ever acknowledged, but it must not be found by the
+            // next replay once it's overwritten by shorter records
+            for (int i = this.written; i < this.buffer.capacity(); i++) {
+                this.buffer.put(i, (byte) 0);
+            }
+            this.buffer.force();
+        }
+        return records;
+    }
+
+    private Record read(int position) {
+        if (position + RECORD_OVERHEAD > this.buffer.capacity()) {
+            return null;
+        }
+
+        var length = this.buffer.getInt(position);
+        if (length <= 0 || position + RECORD_OVERHEAD + length > this.buffer.capacity()
+                || this.buffer.getInt(position + Integer.BYTES) != this.generation) {
+            return null;
+        }
+
+        var id = this.buffer.getLong(position + Integer.BYTES * 2);
+        var data = new byte[length];
+        this.buffer.duplicate().position(position + Integer.BYTES * 2 + Long.BYTES).get(data);
+        var crcPosition = position + Integer.BYTES * 2 + Long.BYTES + length;
+        if (this.buffer.getInt(crcPosition) != crc(this.generation, id, data)) {
+            return null;
+        }
+        return new Record(id, data, this.generation, crcPosition + Integer.BYTES, 0);
+    }
+
+    /**
+     * Writes a record to the log. It isn't durable until {@link #sync} is called with it
+     * @return the record, or null when it doesn't fit in the rest of the log
+     */
+    public synchronized Record append(long id, byte[] data) {
+        var end = this.written + RECORD_OVERHEAD + data.length;
+        if (end > this.buffer.capacity()) {
+            return null;
+        }
+
+        var view = this.buffer.duplicate();
+        view.position(this.written);
+        view.putInt(data.length)
+                .putInt(this.generation)
+                .putLong(id)
+                .put(data)
+                .putInt(crc(this.generation, id, data));
+        this.written = end;
+        var record = new Record(id, data, this.generation, end, ++this.appended);
+        this.undrained.add(record);
+        return record;
+    }
+
+    /**
+     * Waits until the record is on the disk. Flushes every record appended so far, unless another call
+     * is flushing it already
+     */
+    public void sync(Record record) {
+        if (this.synced >= record.sequence) {
+            return;
+        }
+
+        synchronized (this.syncLock) {
+            if (this.synced >= record.sequence) {
+                return;
+            }
+            long appended;
+            synchronized (this) {
+                appended = this.appended;
+            }
+            this.buffer.force();
+            this.synced = appended;
+        }
+    }
+
+    /**
+     * Marks the records as inserted in the database. The drained position moves up to the end of the last
+     * record before the first one that isn't inserted yet, so only the records that are all in the database
+     * are left out of the replay. When every record is drained, the log starts over from the beginning
+     */
+    public synchronized void drained(List<Record> records) {
+        for (var record : records) {
+            if (record.generation == this.generation) {
+                record.drained = true;
+            }
+        }
+
+        var drained = -1;
+        while (!this.undrained.isEmpty() && this.undrained.peekFirst().drained) {
+            drained = this.undrained.pollFirst().end;
+        }
+        if (drained < 0) {
+            return;
+        }
+        if (this.undrained.isEmpty() && drained == this.written) {
+            this.generation++;
+            this.buffer.putInt(GENERATION_OFFSET, this.generation);
+            this.written = HEADER_SIZE;
+            drained = HEADER_SIZE;
+        }
+        // made durable with the next sync. Until then a crash only replays records that are in the database already
+        this.buffer.putLong(DRAINED_OFFSET, drained);
+    }
+
+    /**
+     * @return the share of the log taken by the records not drained yet
+     */
+    public synchronized double getUsage() {
+        var drained = this.buffer.getLong(DRAINED_OFFSET);
+        return (double) (this.written - drained) / (this.buffer.capacity() - HEADER_SIZE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this.syncLock) {
+            this.buffer.force();
+        }
+        this.channel.close();
+    }
+
+    private static int crc(int generation, long id, byte[] data) {
+        var crc = new CRC32();
+        crc.update(ByteBuffer.allocate(Integer.BYTES + Long.BYTES).putInt(generation).putLong(id).flip());
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * A record of the log
+     */
+    public static class Record {
+        private final long id;
+        private final byte[] data;
+        private final int generation;
+        private final int end;
+        private final long sequence;
+        /**
+         * Guarded by the log
+         */
+        private boolean drained;
+
+        private Record(long id, byte[] data, int generation, int end, long sequence) {
+            this.id = id;
+            this.data = data;
+            this.generation = generation;
+            this.end = end;
+            this.sequence = sequence;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.zica.example.service;
+
+import com.zica.example.db.Data;
+import com.zica.example.repository.DataRepository;
+import com.zica.example.sharding.DataShards;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Optional write-behind of the new records: {@link #save} reserves an id, appends the encrypted value to
+ * the {@link WriteAheadLog} and returns once it's on the disk, and a background thread inserts the records
+ * of the log in the database in batches. A slow database doesn't slow down the saves, as long as the log
+ * has room for the records it didn't take yet.
+ *
+ * The records that aren't in the database yet are kept in memory, so they are found by their id. They are
+ * only listed by GET /data once they are inserted. The ids are reserved from the sequence of the shard, like
+ * the ids of the other inserts, so one save in 50 still reads the sequence. When the log is full the saves
+ * insert their record themselves.
+ *
+ * The records are queued in the order of the log, and inserted with their id only when it isn't in the
+ * database yet, so a record inserted twice after a crash, or inserted early by an update, keeps its current
+ * value. The {@link BlindIndex} of
+ * the values is kept in memory only: the records replayed after a crash are decrypted to compute it again.
+ */
+@Component
+public class WriteBehindWriter implements MeterBinder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindWriter.class);
+
+    @Autowired
+    private DataRepository dataRepository;
+
+    @Autowired
+    private DataShards dataShards;
+
+    @Autowired
+    private DataVersion dataVersion;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private RSACryptographyService cryptographyService;
+
+    @Autowired
+    private BlindIndex blindIndex;
+
+    @Value("${write-behind-enabled:false}")
+    private boolean enabled;
+
+    @Value("${write-behind-log-path:write-behind.log}")
+    private Path logPath;
+
+    /**
+     * The size of the log file when it is created
+     */
+    @Value("${write-behind-log-size:67108864}")
+    private int logSize;
+
+    /**
+     * Records inserted in each transaction
+     */
+    @Value("${write-behind-batch-size:500}")
+    private int batchSize;
+
+    private WriteAheadLog log;
+    private SessionFactoryImplementor sessionFactory;
+    private IdentifierGenerator idGenerator;
+    private Thread writer;
+    private volatile boolean running;
+
+    private final LinkedBlockingDeque<PendingRecord> queue = new LinkedBlockingDeque<>();
+    /**
+     * Held while records are inserted, so an update and the background thread don't insert the same record
+     */
+    private final Object insertLock = new Object();
+    private final ConcurrentHashMap<Long, PendingRecord> pending = new ConcurrentHashMap<>();
+    private final LongAdder logged = new LongAdder();
+    private final LongAdder inserted = new LongAdder();
+    private final LongAdder direct = new LongAdder();
+
+    /**
+     * Opens the log, and keeps the records of the log that aren't in the database yet in memory until they are
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        if (!this.enabled) {
+            return;
+        }
+
+        this.log = WriteAheadLog.open(this.logPath, this.logSize);
+        this.sessionFactory = this.entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        this.idGenerator = this.sessionFactory.getMetamodel().entityPersister(Data.class).getIdentifierGenerator();
+
+        var replayed = this.log.getReplayed();
+        replayed.forEach(record -> this.enqueue(new PendingRecord(record, null)));
+        if (!replayed.isEmpty()) {
+            LOGGER.info("{} records of the write-behind log aren't in the database yet", replayed.size());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!this.enabled) {
+            return;
+        }
+
+        this.running = true;
+        this.writer = new Thread(this::write, "write-behind");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Inserts the records left in the log, and closes it. The records that can't be inserted stay in the
+     * log for the next start
+     */
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        if (!this.enabled) {
+            return;
+        }
+
+        this.running = false;
+        if (this.writer != null) {
+            this.writer.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        this.log.close();
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Reserves an id for the record and appends it to the log. It's inserted in the database later
+     * @param valueIndex the blind index of the value
+     * @return the record, once it's in the log on the disk. Empty when the log is full
+     */
+    public Optional<Data> save(byte[] encryptedData, byte[] valueIndex) {
+        var id = this.reserveId(this.dataShards.nextShard());
+        WriteAheadLog.Record record;
+        // queued in the order of the log. The record can be inserted before it's synced, in which case the
+        // database keeps it if it's lost from the log
+        synchronized (this.queue) {
+            record = this.log.append(id, encryptedData);
+            if (record == null) {
+                this.direct.increment();
+                return Optional.empty();
+            }
+            this.enqueue(new PendingRecord(record, valueIndex));
+        }
+
+        this.log.sync(record);
+        this.logged.increment();
+        return Optional.of(new Data(record.getId(), encryptedData));
+    }
+
+    private long reserveId(int shard) {
+        return this.dataShards.on(shard, () -> {
+            try (var session = this.sessionFactory.openStatelessSession()) {
+                return (Long) this.idGenerator.generate((SharedSessionContractImplementor) session, null);
+            }
+        });
+    }
+
+    /**
+     * @return the record, while it's only in the log
+     */
+    public Optional<Data> find(long id) {
+        if (!this.enabled) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(this.pending.get(id))
+                .map(pendingRecord -> new Data(pendingRecord.record.getId(), pendingRecord.record.getData()));
+    }
+
+    /**
+     * Inserts the record in the database now, when it is only in the log, so it can be updated
+     */
+    public void insertNow(long id) {
+        if (!this.enabled) {
+            return;
+        }
+
+        var pendingRecord = this.pending.get(id);
+        if (pendingRecord != null) {
+            synchronized (this.insertLock) {
+                this.insert(List.of(pendingRecord));
+            }
+            this.pending.remove(id, pendingRecord);
+        }
+    }
+
+    private void enqueue(PendingRecord pendingRecord) {
+        this.pending.put(pendingRecord.record.getId(), pendingRecord);
+        this.queue.add(pendingRecord);
+    }
+
+    private void write() {
+        while (this.running || !this.queue.isEmpty()) {
+            var batch = new ArrayList<PendingRecord>(this.batchSize);
+            try {
+                var first = this.queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            this.queue.drainTo(batch, this.batchSize - 1);
+
+            try {
+                synchronized (this.insertLock) {
+                    this.insert(batch);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.warn("The write-behind records couldn't be inserted, trying again: {}", e.getMessage());
+                for (int i = batch.size() - 1; i >= 0; i--) {
+                    this.queue.addFirst(batch.get(i));
+                }
+                if (!this.running || !this.sleep()) {
+                    return;
+                }
+                continue;
+            }
+
+            this.log.drained(batch.stream().map(pendingRecord -> pendingRecord.record).collect(Collectors.toList()));
+            batch.forEach(pendingRecord -> this.pending.remove(pendingRecord.record.getId(), pendingRecord));
+            this.inserted.add(batch.size());
+            this.dataVersion.increment();
+        }
+    }
+
+    /**
+     * Inserts the records that aren't in the database yet, in a transaction per shard. Called with the insert
+     * lock, so a record found missing isn't inserted by another thread in the meantime
+     */
+    private void insert(List<PendingRecord> records) {
+        var byId = records.stream()
+                .collect(Collectors.toMap(pendingRecord -> pendingRecord.record.getId(), Function.identity(),
+                        (first, second) -> first));
+        this.dataShards.groupByShard(byId.keySet()).forEach((shard, ids) -> this.dataShards.run(shard,
+                () -> this.transactionTemplate.execute(status -> {
+                    var existing = new HashSet<Long>();
+                    this.dataRepository.findAllById(ids).forEach(data -> existing.add(data.getId()));
+                    for (var id : ids) {
+                        if (!existing.contains(id)) {
+                            var pendingRecord = byId.get(id);
+                            this.dataRepository.insertData(id, pendingRecord.record.getData(),
+                                    this.valueIndexOf(pendingRecord));
+                        }
+                    }
+                    return null;
+                })));
+    }
+
+    /**
+     * @return the blind index of the record, computed again for the records replayed from the log. Null when
+     * the value can't be decrypted
+     */
+    private byte[] valueIndexOf(PendingRecord pendingRecord) {
+        if (pendingRecord.valueIndex != null) {
+            return pendingRecord.valueIndex;
+        }
+
+        try {
+            return this.blindIndex.of(this.cryptographyService.decryptFromBytes(pendingRecord.record.getData()));
+        } catch (Exception e) {
+            LOGGER.warn("The blind index of the record {} couldn't be computed: {}", pendingRecord.record.getId(),
+                    e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean sleep() {
+        try {
+            TimeUnit.SECONDS.sleep(1);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public long getLogged() {
+        return this.logged.sum();
+    }
+
+    public long getInserted() {
+        return this.inserted.sum();
+    }
+
+    public long getDirect() {
+        return this.direct.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (!this.enabled) {
+            return;
+        }
+
+        FunctionCounter.builder("write.behind.records", this, WriteBehindWriter::getLogged)
+                .tag("result", "logged")
+                .description("Records saved to the write-behind log")
+                .register(registry);
+        FunctionCounter.builder("write.behind.records", this, WriteBehindWriter::getInserted)
+                .tag("result", "inserted")
+                .description("Records of the write-behind log inserted in the database")
+                .register(registry);
+        FunctionCounter.builder("write.behind.records", this, WriteBehindWriter::getDirect)
+                .tag("result", "direct")
+                .description("Records inserted by the save itself, as the write-behind log was full")
+                .register(registry);
+        Gauge.builder("write.behind.pending", this.pending, ConcurrentHashMap::size)
+                .description("Records of the write-behind log not in the database yet")
+                .register(registry);
+        Gauge.builder("write.behind.log.usage", this.log, WriteAheadLog::getUsage)
+                .description("The share of the write-behind log taken by the records not in the database yet")
+                .register(registry);
+    }
+
+    /**
+     * A record of the log not in the database yet, with its blind index
+     */
+    private static class PendingRecord {
+        private final WriteAheadLog.Record record;
+        private final byte[] valueIndex;
+
+        private PendingRecord(WriteAheadLog.Record record, byte[] valueIndex) {
+            this.record = record;
+            this.valueIndex = valueIndex;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.zica.example.sharding;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * The databases the data records are spread over. The shard of a record is part of its id: the ids are
+ * {@code sequence value * shards + shard}, with a sequence in each shard, so a record is found without
+ * asking any other shard and the ids of the shards never collide. New records go to the shards in turns.
+ *
+ * The repository calls go to the shard set with {@link #on} on the calling thread, which must be set
+ * before the transaction starts. With a single shard the ids are the values of the sequence, as before
+ * the sharding. The amount of shards can't change once there are records, as it would move them
+ */
+public class DataShards {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private final int count;
+    private final ExecutorService executor;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param count the amount of shards. Above 1 the queries of every shard run in parallel on a thread per shard
+     */
+    public DataShards(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("There must be at least one shard");
+        }
+        this.count = count;
+        this.executor = count == 1 ? null
+                : Executors.newFixedThreadPool(count, new CustomizableThreadFactory("data-shard-"));
+    }
+
+    /**
+     * @return the shard of the calling thread, 0 when none was set
+     */
+    public static int current() {
+        var shard = CURRENT.get();
+        return shard == null ? 0 : shard;
+    }
+
+    /**
+     * @return the id of the record of a shard with the given value of the sequence of the shard
+     */
+    public static long idOf(long sequenceValue, int shard, int count) {
+        return sequenceValue * count + shard;
+    }
+
+    public int getCount() {
+        return this.count;
+    }
+
+    public int shardOf(long id) {
+        return Math.floorMod(id, this.count);
+    }
+
+    /**
+     * @return the shard of the next new record
+     */
+    public int nextShard() {
+        return Math.floorMod(this.next.getAndIncrement(), this.count);
+    }
+
+    /**
+     * Runs the repository calls of the supplier against a shard
+     */
+    public <T> T on(int shard, Supplier<T> call) {
+        var previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Runs the repository calls of the runnable against a shard
+     */
+    public void run(int shard, Runnable call) {
+        this.on(shard, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs the repository calls of the supplier against the shard of a record
+     */
+    public <T> T onShardOf(long id, Supplier<T> call) {
+        return this.on(this.shardOf(id), call);
+    }
+
+    /**
+     * Runs a call against every shard, in parallel when there are several
+     * @return the result of each shard, by shard
+     */
+    public <T> List<T> onEach(IntFunction<T> call) {
+        if (this.count == 1) {
+            return Collections.singletonList(this.on(0, () -> call.apply(0)));
+        }
+
+        var calls = new ArrayList<CompletableFuture<T>>(this.count);
+        for (int shard = 0; shard < this.count; shard++) {
+            var current = shard;
+            calls.add(CompletableFuture.supplyAsync(() -> this.on(current, () -> call.apply(current)), this.executor));
+        }
+
+        var results = new ArrayList<T>(this.count);
+        try {
+            for (var result : calls) {
+                results.add(result.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    /**
+     * @return the ids of each shard, in their order. Only the shards with ids are in the map
+     */
+    public Map<Integer, List<Long>> groupByShard(Collection<Long> ids) {
+        var byShard = new LinkedHashMap<Integer, List<Long>>();
+        for (var id : ids) {
+            byShard.computeIfAbsent(this.shardOf(id), shard -> new ArrayList<>()).add(id);
+        }
+        return byShard;
+    }
+
+    public void shutdown() {
+        if (this.executor != null) {
+            this.executor.shutdown();
+        }
+    }
+}
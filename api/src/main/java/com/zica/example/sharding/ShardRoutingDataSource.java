@@ -0,0 +1,46 @@
+package com.zica.example.sharding;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The data source of the application when the data is sharded: the connections are taken from the
+ * data source of the {@link DataShards#current()} shard of the calling thread
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    private final List<DataSource> shards;
+
+    /**
+     * @param shards the data source of each shard, by shard
+     */
+    public ShardRoutingDataSource(List<DataSource> shards) {
+        this.shards = shards;
+        var targets = new HashMap<Object, Object>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            targets.put(shard, shards.get(shard));
+        }
+        this.setTargetDataSources(targets);
+        this.setDefaultTargetDataSource(shards.get(0));
+        this.setLenientFallback(false);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return DataShards.current();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (var shard : this.shards) {
+            if (shard instanceof Closeable) {
+                ((Closeable) shard).close();
+            }
+        }
+    }
+}
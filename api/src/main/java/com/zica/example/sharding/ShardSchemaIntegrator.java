@@ -0,0 +1,45 @@
+package com.zica.example.sharding;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.hbm2ddl.SchemaExport;
+import org.hibernate.tool.schema.TargetType;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Hibernate only creates the schema in the database of the connections it gets without a shard, the first
+ * one. When it creates the schema, this creates it in the other shards too. Like Hibernate, the
+ * {@link SchemaExport} runs the import.sql once the tables are created
+ */
+public class ShardSchemaIntegrator implements Integrator {
+
+    private static final Set<String> CREATE_ACTIONS = Set.of("create", "create-drop");
+
+    private final DataShards dataShards;
+
+    public ShardSchemaIntegrator(DataShards dataShards) {
+        this.dataShards = dataShards;
+    }
+
+    @Override
+    public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+                          SessionFactoryServiceRegistry serviceRegistry) {
+        var action = String.valueOf(sessionFactory.getProperties().get(AvailableSettings.HBM2DDL_AUTO));
+        if (!CREATE_ACTIONS.contains(action)) {
+            return;
+        }
+
+        for (int shard = 1; shard < this.dataShards.getCount(); shard++) {
+            this.dataShards.run(shard, () -> new SchemaExport().create(EnumSet.of(TargetType.DATABASE), metadata));
+        }
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+}
@@ -0,0 +1,56 @@
+package com.zica.example.sharding;
+
+import org.hibernate.boot.model.relational.Database;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+/**
+ * Generates the ids of the records from the sequence of the shard they are inserted in (see {@link DataShards}).
+ * Each shard has its own generator, as the optimizer keeps the block of values it reserved from the sequence
+ * of a shard
+ */
+public class ShardedSequenceGenerator extends SequenceStyleGenerator {
+
+    /**
+     * The Hibernate setting with the amount of shards, 1 when it's missing
+     */
+    public static final String SHARDS_SETTING = "com.zica.example.data-shards";
+
+    private SequenceStyleGenerator[] shards;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) {
+        super.configure(type, params, serviceRegistry);
+
+        var count = ConfigurationHelper.getInt(SHARDS_SETTING,
+                serviceRegistry.getService(ConfigurationService.class).getSettings(), 1);
+        this.shards = new SequenceStyleGenerator[count];
+        for (int shard = 0; shard < count; shard++) {
+            this.shards[shard] = new SequenceStyleGenerator();
+            this.shards[shard].configure(type, params, serviceRegistry);
+        }
+    }
+
+    @Override
+    public void registerExportables(Database database) {
+        // the sequence is the same, but each generator prepares its own statement
+        super.registerExportables(database);
+        for (var shard : this.shards) {
+            shard.registerExportables(database);
+        }
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        var shard = DataShards.current();
+        var value = (Number) this.shards[shard].generate(session, object);
+        return DataShards.idOf(value.longValue(), shard, this.shards.length);
+    }
+}
@@ -0,0 +1,26 @@
+package com.zica.example.startup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stops the application as soon as it started, for the training run that records the classes loaded
+ * during the startup in the class list of the CDS archive
+ */
+@Component
+@ConditionalOnProperty(name = "exit-after-startup", havingValue = "true")
+public class ExitAfterStartup {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExitAfterStartup.class);
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void exit(ApplicationReadyEvent event) {
+        LOGGER.info("Exiting after the startup");
+        System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+}
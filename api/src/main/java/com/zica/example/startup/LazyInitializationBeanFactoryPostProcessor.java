@@ -0,0 +1,20 @@
+package com.zica.example.startup;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+
+/**
+ * Makes every bean lazy, so the startup only creates the beans the server needs, and the others are created
+ * when the first requests use them. The same as the spring.main.lazy-initialization of the later Spring Boot
+ * versions
+ */
+public class LazyInitializationBeanFactoryPostProcessor implements BeanFactoryPostProcessor {
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        for (var name : beanFactory.getBeanDefinitionNames()) {
+            beanFactory.getBeanDefinition(name).setLazyInit(true);
+        }
+    }
+}
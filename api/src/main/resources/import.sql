@@ -1,2 +1,5 @@
 drop table data;
-create table data(id int auto_increment primary key, data varchar(500));
+drop sequence if exists data_seq;
+create sequence data_seq start with 1 increment by 50;
+create table data(id bigint primary key, data varbinary(15001), legacy_data varchar(20000), value_index varbinary(32), version bigint default 0 not null);
+create index data_value_index on data(value_index);
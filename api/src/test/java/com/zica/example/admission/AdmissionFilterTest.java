@@ -0,0 +1,67 @@
+package com.zica.example.admission;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionFilterTest {
+
+    private final AdmissionFilter filter = new AdmissionFilter(new ObjectMapper(), 1, 1, 1);
+
+    @Test
+    void operationTest() {
+        assertEquals(AdmissionOperation.LIST, AdmissionOperation.of(new MockHttpServletRequest("GET", "/data")));
+        assertEquals(AdmissionOperation.DECRYPT,
+                AdmissionOperation.of(new MockHttpServletRequest("GET", "/data/10/decrypted")));
+        assertEquals(AdmissionOperation.DECRYPT,
+                AdmissionOperation.of(new MockHttpServletRequest("POST", "/data/decrypted:batch")));
+        assertEquals(AdmissionOperation.WRITE, AdmissionOperation.of(new MockHttpServletRequest("POST", "/data")));
+        assertEquals(AdmissionOperation.WRITE,
+                AdmissionOperation.of(new MockHttpServletRequest("POST", "/data:batch")));
+        assertEquals(AdmissionOperation.WRITE, AdmissionOperation.of(new MockHttpServletRequest("PUT", "/data/10")));
+        assertNull(AdmissionOperation.of(new MockHttpServletRequest("GET", "/actuator/health")));
+        assertNull(AdmissionOperation.of(new MockHttpServletRequest("OPTIONS", "/data")));
+    }
+
+    @Test
+    void rejectTest() throws Exception {
+        // a list request holds the only permit of the lists while the other requests arrive
+        var responses = new ArrayList<MockHttpServletResponse>();
+        filter.doFilter(new MockHttpServletRequest("GET", "/data"), new MockHttpServletResponse(),
+                (request, response) -> {
+                    responses.add(send("GET", "/data"));
+                    responses.add(send("POST", "/data"));
+                });
+
+        var rejected = responses.get(0);
+        assertEquals(503, rejected.getStatus());
+        assertEquals("1", rejected.getHeader("Retry-After"));
+        assertTrue(rejected.getContentAsString().contains("too busy"));
+        // the other kinds have their own limit
+        assertEquals(200, responses.get(1).getStatus());
+
+        // released once the first request was done
+        var limiter = filter.getLimiter(AdmissionOperation.LIST);
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(1, limiter.getRejected());
+        assertEquals(200, send("GET", "/data").getStatus());
+    }
+
+    private MockHttpServletResponse send(String method, String path) {
+        var response = new MockHttpServletResponse();
+        try {
+            filter.doFilter(new MockHttpServletRequest(method, path), response, new MockFilterChain());
+        } catch (IOException | ServletException e) {
+            throw new IllegalStateException(e);
+        }
+        return response;
+    }
+}
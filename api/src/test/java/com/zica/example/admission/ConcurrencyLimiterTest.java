@@ -0,0 +1,79 @@
+package com.zica.example.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void rejectOverLimitTest() {
+        var limiter = new ConcurrencyLimiter(2, 1, 10);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+
+        limiter.release(FAST);
+        assertTrue(limiter.tryAcquire());
+        assertEquals(3, limiter.getAccepted());
+        assertEquals(1, limiter.getRejected());
+    }
+
+    @Test
+    void growWhileLatencyIsSteadyTest() {
+        var limiter = new ConcurrencyLimiter(10, 2, 50);
+        for (int i = 0; i < 30; i++) {
+            runFullWindow(limiter, FAST);
+        }
+        assertEquals(50, limiter.getLimit());
+    }
+
+    @Test
+    void shrinkWhenLatencyGrowsTest() {
+        var limiter = new ConcurrencyLimiter(40, 2, 50);
+        for (int i = 0; i < 10; i++) {
+            runFullWindow(limiter, FAST);
+        }
+        var steadyLimit = limiter.getLimit();
+
+        for (int i = 0; i < 10; i++) {
+            runFullWindow(limiter, SLOW);
+        }
+        assertTrue(limiter.getLimit() < steadyLimit / 2, "limit " + limiter.getLimit());
+        assertTrue(limiter.getLimit() >= 2);
+    }
+
+    @Test
+    void noGrowthWhenUnusedTest() {
+        var limiter = new ConcurrencyLimiter(20, 2, 50);
+        for (int i = 0; i < 30; i++) {
+            // one request at a time never tests a higher limit
+            assertTrue(limiter.tryAcquire());
+            limiter.release(FAST);
+        }
+        assertEquals(20, limiter.getLimit());
+    }
+
+    /**
+     * Runs the requests of a window of the limiter with as many requests in flight as the limit allows
+     */
+    private static void runFullWindow(ConcurrencyLimiter limiter, long latency) {
+        var acquired = 0;
+        while (limiter.tryAcquire()) {
+            acquired++;
+        }
+        for (int i = 0; i < acquired; i++) {
+            limiter.release(latency);
+        }
+        for (int i = acquired; i < 10; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(latency);
+        }
+    }
+}
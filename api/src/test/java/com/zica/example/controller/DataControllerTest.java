@@ -1,27 +1,51 @@
 package com.zica.example.controller;
 
 import com.zica.example.db.Data;
+import com.zica.example.db.DataRow;
+import com.zica.example.exception.IdempotencyKeyReusedException;
+import com.zica.example.model.DataBatchResult;
+import com.zica.example.model.DecryptedDataResult;
 import com.zica.example.model.NewData;
-import com.zica.example.repository.DataRepository;
 import com.zica.example.service.DataService;
+import com.zica.example.service.DecryptedData;
 import org.assertj.core.internal.bytebuddy.utility.RandomString;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -35,48 +59,207 @@ class DataControllerTest {
     @MockBean
     private DataService dataService;
 
-    @MockBean
-    private DataRepository dataRepository;
-
     @Test
     void retrieveDataEmptyTest() throws Exception {
-        var result = mockMvc.perform(MockMvcRequestBuilders.get("/data")).andReturn();
+        var result = perform(MockMvcRequestBuilders.get("/data"));
 
         assertEquals(result.getResponse().getStatus(), HttpStatus.OK.value());
 
         List<Data> dataList = TestJsonConverter.jsonToList(result.getResponse().getContentAsString(), Data.class);
 
-        verify(dataRepository).findAll();
+        verify(dataService).findAllData();
         assertTrue(dataList.isEmpty());
     }
 
     @Test
     void retrieveDataTest() throws Exception {
-        List<Data> toMock = List.of(new Data(1, "test"),
-                new Data(2, "yet another test"), new Data(3, "some string"));
-        when(dataRepository.findAll()).thenReturn(toMock);
+        List<DataRow> toMock = List.of(new DataRow(1, bytes("test"), null),
+                new DataRow(2, bytes("yet another test"), null), new DataRow(3, bytes("some string"), null));
+        when(dataService.findAllData()).thenReturn(toMock);
 
-        var result = mockMvc.perform(MockMvcRequestBuilders.get("/data")).andReturn();
+        var result = perform(MockMvcRequestBuilders.get("/data"));
         assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
 
         List<Data> dataList = TestJsonConverter.jsonToList(result.getResponse().getContentAsString(), Data.class);
 
-        verify(dataRepository).findAll();
-        assertEquals(toMock.get(1).getData(), dataList.get(1).getData());
+        verify(dataService).findAllData();
+        assertArrayEquals(toMock.get(1).getData(), dataList.get(1).getData());
+    }
+
+    @Test
+    void retrieveLegacyDataTest() throws Exception {
+        var legacy = new DataRow(4, null, "v2:" + Base64.getEncoder().encodeToString(bytes("an envelope")));
+        when(dataService.findAllData()).thenReturn(List.of(legacy));
+
+        var result = perform(MockMvcRequestBuilders.get("/data"));
+
+        List<Data> dataList = TestJsonConverter.jsonToList(result.getResponse().getContentAsString(), Data.class);
+        assertArrayEquals(bytes("\u0002an envelope"), dataList.get(0).getData());
+    }
+
+    @Test
+    void retrieveDataCborTest() throws Exception {
+        when(dataService.findAllData()).thenReturn(List.of(new DataRow(1, bytes("\u0003raw ciphertext"), null)));
+
+        var result = perform(MockMvcRequestBuilders.get("/data").accept(DataController.APPLICATION_CBOR_VALUE));
+
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+        assertTrue(result.getResponse().getContentType().startsWith(DataController.APPLICATION_CBOR_VALUE));
+        var content = result.getResponse().getContentAsByteArray();
+        Data[] dataList = Jackson2ObjectMapperBuilder.cbor().build().readValue(content, Data[].class);
+        assertArrayEquals(bytes("\u0003raw ciphertext"), dataList[0].getData());
+        // the value isn't Base64 in the binary formats
+        assertTrue(new String(content, StandardCharsets.ISO_8859_1).contains("raw ciphertext"));
+    }
+
+    @Test
+    void retrieveDataSmileTest() throws Exception {
+        when(dataService.getDataVersion()).thenReturn(Optional.of("epoch-3"));
+        when(dataService.findAllData()).thenReturn(List.of(new DataRow(1, bytes("\u0003raw ciphertext"), null)));
+
+        var result = perform(MockMvcRequestBuilders.get("/data").accept(DataController.APPLICATION_SMILE_VALUE));
+
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+        // each format has its own ETag
+        assertEquals("\"epoch-3-smile\"", result.getResponse().getHeader(HttpHeaders.ETAG));
+        Data[] dataList = Jackson2ObjectMapperBuilder.smile().build()
+                .readValue(result.getResponse().getContentAsByteArray(), Data[].class);
+        assertArrayEquals(bytes("\u0003raw ciphertext"), dataList[0].getData());
+    }
+
+    @Test
+    void retrieveDataETagTest() throws Exception {
+        when(dataService.getDataVersion()).thenReturn(Optional.of("epoch-3"));
+
+        var result = perform(MockMvcRequestBuilders.get("/data"));
+
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+        assertEquals("\"epoch-3\"", result.getResponse().getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void retrieveDataNotModifiedTest() throws Exception {
+        when(dataService.getDataVersion()).thenReturn(Optional.of("epoch-3"));
+
+        var result = perform(MockMvcRequestBuilders.get("/data")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"epoch-2\", W/\"epoch-3\""));
+
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), result.getResponse().getStatus());
+        assertEquals("\"epoch-3\"", result.getResponse().getHeader(HttpHeaders.ETAG));
+        assertEquals("", result.getResponse().getContentAsString());
+        verify(dataService, never()).findAllData();
+    }
+
+    @Test
+    void retrieveDataModifiedTest() throws Exception {
+        when(dataService.getDataVersion()).thenReturn(Optional.of("epoch-4"));
+
+        var result = perform(MockMvcRequestBuilders.get("/data").header(HttpHeaders.IF_NONE_MATCH, "\"epoch-3\""));
+
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+        assertEquals("\"epoch-4\"", result.getResponse().getHeader(HttpHeaders.ETAG));
+        verify(dataService).findAllData();
+    }
+
+    @Test
+    void requestIdTest() throws Exception {
+        var result = perform(MockMvcRequestBuilders.get("/data").header("X-Request-Id", "some-request"));
+
+        assertEquals("some-request", result.getResponse().getHeader("X-Request-Id"));
+    }
+
+    @Test
+    void retrieveDataPageTest() throws Exception {
+        List<DataRow> toMock = List.of(new DataRow(11, bytes("test"), null),
+                new DataRow(12, bytes("yet another test"), null));
+        when(dataService.findData(eq(10L), eq(2))).thenReturn(toMock);
+
+        var result = perform(MockMvcRequestBuilders.get("/data?limit=2&afterId=10"));
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+
+        List<Data> dataList = TestJsonConverter.jsonToList(result.getResponse().getContentAsString(), Data.class);
+
+        verify(dataService).findData(eq(10L), eq(2));
+        assertEquals(2, dataList.size());
+        assertEquals(12, dataList.get(1).getId());
+    }
+
+    @Test
+    void retrieveDataByValueTest() throws Exception {
+        when(dataService.findDataByValue(eq("a value"), eq(0L), eq(1000)))
+                .thenReturn(List.of(new DataRow(11, bytes("test"), null)));
+
+        var result = perform(MockMvcRequestBuilders.get("/data").param("value", "a value"));
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+
+        List<Data> dataList = TestJsonConverter.jsonToList(result.getResponse().getContentAsString(), Data.class);
+
+        verify(dataService).findDataByValue(eq("a value"), eq(0L), eq(1000));
+        verify(dataService, never()).findAllData();
+        assertEquals(1, dataList.size());
+        assertEquals(11, dataList.get(0).getId());
+    }
+
+    @Test
+    void retrieveDataInvalidLimitTest() throws Exception {
+        var result = perform(MockMvcRequestBuilders.get("/data?limit=1001"));
+
+        assertEquals(HttpStatus.BAD_REQUEST.value(), result.getResponse().getStatus());
+    }
+
+    @Test
+    void retrieveDataStreamTest() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<DataRow> consumer = invocation.getArgument(2);
+            consumer.accept(new DataRow(6, bytes("test"), null));
+            consumer.accept(new DataRow(7, bytes("yet another test"), null));
+            return null;
+        }).when(dataService).forEachData(eq(5L), eq(Long.MAX_VALUE), any());
+
+        var result = perform(MockMvcRequestBuilders.get("/data?afterId=5")
+                .accept("application/x-ndjson")
+        );
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+
+        var lines = result.getResponse().getContentAsString().split("\n");
+        assertEquals(2, lines.length);
+        assertArrayEquals(bytes("yet another test"), TestJsonConverter.jsonToObject(lines[1], Data.class).getData());
+    }
+
+    @Test
+    void retrieveDataStreamInvalidLimitTest() throws Exception {
+        var result = perform(MockMvcRequestBuilders.get("/data?limit=0")
+                .accept("application/x-ndjson")
+        );
+
+        assertEquals(HttpStatus.BAD_REQUEST.value(), result.getResponse().getStatus());
+        assertEquals("{\"errorMessage\":\"The limit must be at least 1\"}", result.getResponse().getContentAsString());
+        verify(dataService, never()).forEachData(anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void retrieveDataStreamValueTooLongTest() throws Exception {
+        var result = perform(MockMvcRequestBuilders.get("/data")
+                .param("value", RandomString.make(4097))
+                .accept("application/x-ndjson")
+        );
+
+        assertEquals(HttpStatus.BAD_REQUEST.value(), result.getResponse().getStatus());
+        verify(dataService, never()).findDataByValue(anyString(), anyLong(), anyInt());
     }
 
     @Test
     void getDecryptedEmptyDataTest() throws Exception {
         long id = 1;
 
-        when(dataService.getDecryptedData(eq(id))).thenReturn(Optional.empty());
+        when(dataService.getDecryptedDataAsync(eq(id))).thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-        var result = mockMvc.perform(MockMvcRequestBuilders.get("/data/1/decrypted")).andReturn();
+        var result = perform(MockMvcRequestBuilders.get("/data/1/decrypted"));
         assertEquals(HttpStatus.NOT_FOUND.value(), result.getResponse().getStatus());
 
         var json = result.getResponse().getContentAsString();
 
-        verify(dataService).getDecryptedData(id);
+        verify(dataService).getDecryptedDataAsync(id);
         assertEquals("", json);
     }
 
@@ -85,18 +268,148 @@ class DataControllerTest {
         long id = 2;
         String value = "some data";
 
-        when(dataService.getDecryptedData(eq(id))).thenReturn(Optional.of(new Data(id, value)));
+        when(dataService.getDecryptedDataAsync(eq(id)))
+                .thenReturn(CompletableFuture.completedFuture(Optional.of(value)));
 
-        var result = mockMvc.perform(MockMvcRequestBuilders.get(String.format("/data/%d/decrypted", id))).andReturn();
+        var result = perform(MockMvcRequestBuilders.get(String.format("/data/%d/decrypted", id)));
         assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
 
-        var data = TestJsonConverter.jsonToObject(result.getResponse().getContentAsString(), Data.class);
+        var data = TestJsonConverter.jsonToObject(result.getResponse().getContentAsString(),
+                com.zica.example.model.Data.class);
 
-        verify(dataService).getDecryptedData(id);
-        assertEquals(id, data.getId());
+        verify(dataService).getDecryptedDataAsync(id);
+        assertEquals(id, (long) data.getId());
         assertEquals(value, data.getData());
     }
 
+    @Test
+    void getDecryptedDataETagTest() throws Exception {
+        when(dataService.getDataVersion()).thenReturn(Optional.of("epoch-4"));
+        when(dataService.getDecryptedDataAsync(eq(2L), eq(DecryptedData.NO_VERSION)))
+                .thenReturn(CompletableFuture.completedFuture(Optional.of(new DecryptedData(2, 7, "some data"))));
+
+        var result = perform(MockMvcRequestBuilders.get("/data/2/decrypted"));
+
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+        assertEquals("\"epoch-4-7\"", result.getResponse().getHeader(HttpHeaders.ETAG));
+        assertEquals("some data", TestJsonConverter.jsonToObject(result.getResponse().getContentAsString(),
+                com.zica.example.model.Data.class).getData());
+    }
+
+    @Test
+    void getDecryptedDataNotModifiedTest() throws Exception {
+        when(dataService.getDataVersion()).thenReturn(Optional.of("epoch-4"));
+
+        var result = perform(MockMvcRequestBuilders.get("/data/2/decrypted")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"epoch-4-7\""));
+
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), result.getResponse().getStatus());
+        verify(dataService, never()).getDecryptedDataAsync(any(), any(Long.class));
+    }
+
+    @Test
+    void getDecryptedDataRecordNotModifiedTest() throws Exception {
+        when(dataService.getDataVersion()).thenReturn(Optional.of("epoch-5"));
+        when(dataService.getDecryptedDataAsync(eq(2L), eq(7L)))
+                .thenReturn(CompletableFuture.completedFuture(Optional.of(new DecryptedData(2, 7, null))));
+
+        var result = perform(MockMvcRequestBuilders.get("/data/2/decrypted")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"epoch-4-7\""));
+
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), result.getResponse().getStatus());
+        assertEquals("\"epoch-5-7\"", result.getResponse().getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void getDecryptedDataListETagTest() throws Exception {
+        when(dataService.getDataVersion()).thenReturn(Optional.of("epoch-5"));
+        when(dataService.getDecryptedDataAsync(eq(7L), eq(DecryptedData.NO_VERSION)))
+                .thenReturn(CompletableFuture.completedFuture(Optional.of(new DecryptedData(7, 5, "some data"))));
+
+        // the ETags of GET /data, current or not, aren't taken for a version of the record
+        var result = perform(MockMvcRequestBuilders.get("/data/7/decrypted")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"epoch-5\", \"epoch-4\", \"epoch-5-cbor\", \"other-4-5\""));
+
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+        assertEquals("\"epoch-5-5\"", result.getResponse().getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void getDecryptedDataRecordModifiedTest() throws Exception {
+        when(dataService.getDataVersion()).thenReturn(Optional.of("epoch-5"));
+        when(dataService.getDecryptedDataAsync(eq(2L), eq(7L)))
+                .thenReturn(CompletableFuture.completedFuture(Optional.of(new DecryptedData(2, 8, "new data"))));
+
+        var result = perform(MockMvcRequestBuilders.get("/data/2/decrypted")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"epoch-4-7\""));
+
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+        assertEquals("\"epoch-5-8\"", result.getResponse().getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void getDecryptedDataBatchTest() throws Exception {
+        mockDecryptedDataBatch();
+
+        var result = perform(MockMvcRequestBuilders.post("/data/decrypted:batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content("[3, 1, 2, 1]")
+        );
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+
+        var results = TestJsonConverter.jsonToList(result.getResponse().getContentAsString(),
+                DecryptedDataResult.class);
+
+        assertEquals(List.of(3L, 1L, 2L),
+                results.stream().map(DecryptedDataResult::getId).collect(Collectors.toList()));
+        assertEquals("value 3", results.get(0).getData());
+        assertEquals("Data not found", results.get(2).getError());
+    }
+
+    @Test
+    void getDecryptedDataBatchStreamTest() throws Exception {
+        mockDecryptedDataBatch();
+
+        var result = perform(MockMvcRequestBuilders.post("/data/decrypted:batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept("application/x-ndjson")
+                .content("[3, 1, 2]")
+        );
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+
+        var lines = result.getResponse().getContentAsString().split("\n");
+        assertEquals(3, lines.length);
+        for (var line : lines) {
+            var decrypted = TestJsonConverter.jsonToObject(line, DecryptedDataResult.class);
+            assertTrue(decrypted.getData() != null || decrypted.getError() != null);
+        }
+    }
+
+    @Test
+    void getDecryptedDataBatchTooLargeTest() throws Exception {
+        var ids = LongStream.range(0, 1001).boxed().collect(Collectors.toList());
+
+        var result = perform(MockMvcRequestBuilders.post("/data/decrypted:batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(TestJsonConverter.objectToJson(ids))
+        );
+
+        assertEquals(HttpStatus.BAD_REQUEST.value(), result.getResponse().getStatus());
+    }
+
+    private void mockDecryptedDataBatch() {
+        when(dataService.getDecryptedData(any(List.class), any(Consumer.class))).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+            Consumer<DecryptedDataResult> onResult = invocation.getArgument(1);
+            ids.stream().distinct().forEach(id -> onResult.accept(id == 2
+                    ? new DecryptedDataResult().id(id).error("Data not found")
+                    : new DecryptedDataResult().id(id).data("value " + id)));
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
     @Test
     void saveDataTest() throws Exception {
         var value = "unencrypted test value";
@@ -104,35 +417,87 @@ class DataControllerTest {
         newData.setData(value);
 
         long id = 3;
-        var savedData = new Data(id, value);
+        var savedData = new Data(id, bytes(value));
 
-        when(dataService.saveData(eq(newData))).thenReturn(savedData);
+        when(dataService.saveDataAsync(eq(newData), isNull())).thenReturn(CompletableFuture.completedFuture(savedData));
 
-        var result = mockMvc.perform(MockMvcRequestBuilders.post("/data")
+        var result = perform(MockMvcRequestBuilders.post("/data")
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
                 .content(TestJsonConverter.objectToJson(newData))
-        ).andReturn();
+        );
 
         var statusCode = result.getResponse().getStatus();
         assertEquals(HttpStatus.CREATED.value(), statusCode);
 
         var data = TestJsonConverter.jsonToObject(result.getResponse().getContentAsString(), Data.class);
 
-        verify(dataService).saveData(eq(newData));
+        verify(dataService).saveDataAsync(eq(newData), isNull());
         assertEquals(id, data.getId());
-        assertEquals(value, data.getData());
+        assertArrayEquals(bytes(value), data.getData());
+    }
+
+    @Test
+    void saveDataSaturatedTest() throws Exception {
+        var newData = new NewData().data("unencrypted test value");
+
+        when(dataService.saveDataAsync(eq(newData), isNull()))
+                .thenReturn(CompletableFuture.failedFuture(new RejectedExecutionException("saturated")));
+
+        var result = perform(MockMvcRequestBuilders.post("/data")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(TestJsonConverter.objectToJson(newData))
+        );
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), result.getResponse().getStatus());
+        assertEquals("1", result.getResponse().getHeader(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void saveDataIdempotencyKeyTest() throws Exception {
+        var newData = new NewData().data("unencrypted test value");
+
+        when(dataService.saveDataAsync(eq(newData), eq("a key")))
+                .thenReturn(CompletableFuture.completedFuture(new Data(3, bytes("encrypted"))));
+
+        var result = perform(MockMvcRequestBuilders.post("/data")
+                .header("Idempotency-Key", "a key")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(TestJsonConverter.objectToJson(newData))
+        );
+
+        assertEquals(HttpStatus.CREATED.value(), result.getResponse().getStatus());
+        assertEquals(3, TestJsonConverter.jsonToObject(result.getResponse().getContentAsString(), Data.class).getId());
+    }
+
+    @Test
+    void saveDataIdempotencyKeyReusedTest() throws Exception {
+        var newData = new NewData().data("another value");
+
+        when(dataService.saveDataAsync(eq(newData), eq("a key")))
+                .thenReturn(CompletableFuture.failedFuture(new IdempotencyKeyReusedException()));
+
+        var result = perform(MockMvcRequestBuilders.post("/data")
+                .header("Idempotency-Key", "a key")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(TestJsonConverter.objectToJson(newData))
+        );
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY.value(), result.getResponse().getStatus());
     }
 
     @Test
     void saveInvalidDataTestEmptyValue() throws Exception {
         var newData = new NewData();
 
-        var result = mockMvc.perform(MockMvcRequestBuilders.post("/data")
+        var result = perform(MockMvcRequestBuilders.post("/data")
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
                 .content(TestJsonConverter.objectToJson(newData))
-        ).andReturn();
+        );
 
         var statusCode = result.getResponse().getStatus();
         assertEquals(HttpStatus.BAD_REQUEST.value(), statusCode);
@@ -141,35 +506,116 @@ class DataControllerTest {
     @Test
     void saveInvalidDataTestTooLongValue() throws Exception {
         var newData = new NewData();
-        // this is a limitation related to the RSA. if all the characters utilized are of 1 byte, 245 is the
-        // maximum amount
-        newData.setData(RandomString.make(246));
+        // values over 245 bytes can't be encrypted by the RSA alone, but the envelope cryptography
+        // accepts them up to the limit of the api
+        newData.setData(RandomString.make(4097));
 
-        var result = mockMvc.perform(MockMvcRequestBuilders.post("/data")
+        var result = perform(MockMvcRequestBuilders.post("/data")
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
                 .content(TestJsonConverter.objectToJson(newData))
-        ).andReturn();
+        );
 
         var statusCode = result.getResponse().getStatus();
         assertEquals(HttpStatus.BAD_REQUEST.value(), statusCode);
     }
 
+    @Test
+    void saveDataBatchTest() throws Exception {
+        mockSaveDataBatch();
+
+        var result = perform(MockMvcRequestBuilders.post("/data:batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content("[{\"data\": \"first\"}, {\"data\": \"second\"}, {\"data\": \"third\"}]")
+        );
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+
+        var results = TestJsonConverter.jsonToList(result.getResponse().getContentAsString(), DataBatchResult.class);
+
+        assertEquals(3, results.size());
+        assertEquals(Long.valueOf(10), results.get(0).getId());
+        assertEquals("encrypted third", results.get(2).getData());
+    }
+
+    @Test
+    void saveDataBatchInvalidItemTest() throws Exception {
+        var result = perform(MockMvcRequestBuilders.post("/data:batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content("[{\"data\": \"first\"}, {}]")
+        );
+
+        assertEquals(HttpStatus.BAD_REQUEST.value(), result.getResponse().getStatus());
+    }
+
+    @Test
+    void saveDataBatchStreamTest() throws Exception {
+        mockSaveDataBatch();
+
+        var result = perform(MockMvcRequestBuilders.post("/data:batch")
+                .contentType("application/x-ndjson")
+                .accept("application/x-ndjson")
+                .content("{\"data\": \"first\"}\n{}\n{\"data\": \"third\"}\n")
+        );
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+
+        var lines = result.getResponse().getContentAsString().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("The data is invalid", TestJsonConverter.jsonToObject(lines[1], DataBatchResult.class).getError());
+        assertEquals(Long.valueOf(12), TestJsonConverter.jsonToObject(lines[2], DataBatchResult.class).getId());
+    }
+
+    @Test
+    void saveDataBatchStreamMalformedLineTest() throws Exception {
+        mockSaveDataBatch();
+
+        var result = perform(MockMvcRequestBuilders.post("/data:batch")
+                .contentType("application/x-ndjson")
+                .accept("application/x-ndjson")
+                .content("{\"data\": \"first\"}\n{\"data\": \n\n{\"data\": \"third\"}\n")
+        );
+        assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+
+        var lines = result.getResponse().getContentAsString().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals(Long.valueOf(10), TestJsonConverter.jsonToObject(lines[0], DataBatchResult.class).getId());
+        var malformed = TestJsonConverter.jsonToObject(lines[1], DataBatchResult.class);
+        assertEquals(Integer.valueOf(1), malformed.getIndex());
+        assertTrue(malformed.getError().startsWith("The item isn't valid JSON"));
+        assertEquals(Long.valueOf(12), TestJsonConverter.jsonToObject(lines[2], DataBatchResult.class).getId());
+    }
+
+    private void mockSaveDataBatch() {
+        doAnswer(invocation -> {
+            Iterator<NewData> items = invocation.getArgument(0);
+            Consumer<DataBatchResult> onResult = invocation.getArgument(1);
+            for (int index = 0; items.hasNext(); index++) {
+                var item = items.next();
+                onResult.accept(item == null || item.getData() == null
+                        ? new DataBatchResult().index(index).error("The data is invalid")
+                        : new DataBatchResult().index(index).id(10L + index).data("encrypted " + item.getData()));
+            }
+            return null;
+        }).when(dataService).saveData(any(Iterator.class), any(Consumer.class));
+    }
+
     @Test
     void updateDataTest() throws Exception {
         var id = 6L;
         var newValue = "a good value";
         var newData = new NewData().data(newValue);
 
-        var data = new Data(id, newValue);
+        var data = new Data(id, bytes(newValue));
 
-        when(dataService.updateDataValue(id, newData)).thenReturn(Optional.of(data));
+        when(dataService.updateDataValueAsync(id, newData))
+                .thenReturn(CompletableFuture.completedFuture(Optional.of(data)));
 
-        var result = mockMvc.perform(MockMvcRequestBuilders.put("/data/" + id)
+        var result = perform(MockMvcRequestBuilders.put("/data/" + id)
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
                 .content(TestJsonConverter.objectToJson(newData))
-        ).andReturn();
+        );
 
         var statusCode = result.getResponse().getStatus();
         assertEquals(HttpStatus.OK.value(), statusCode);
@@ -177,7 +623,7 @@ class DataControllerTest {
         var returnedData = TestJsonConverter.jsonToObject(result.getResponse().getContentAsString(), Data.class);
 
         assertEquals(id, returnedData.getId());
-        assertEquals(newValue, returnedData.getData());
+        assertArrayEquals(bytes(newValue), returnedData.getData());
     }
 
     @Test
@@ -186,13 +632,14 @@ class DataControllerTest {
         var newValue = "a good value";
         var newData = new NewData().data(newValue);
 
-        when(dataService.updateDataValue(id, newData)).thenReturn(Optional.empty());
+        when(dataService.updateDataValueAsync(id, newData))
+                .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-        var result = mockMvc.perform(MockMvcRequestBuilders.put("/data/" + id)
+        var result = perform(MockMvcRequestBuilders.put("/data/" + id)
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
                 .content(TestJsonConverter.objectToJson(newData))
-        ).andReturn();
+        );
 
         var statusCode = result.getResponse().getStatus();
         assertEquals(HttpStatus.NOT_FOUND.value(), statusCode);
@@ -203,13 +650,28 @@ class DataControllerTest {
         var id = 6L;
         var newData = new NewData();
 
-        var result = mockMvc.perform(MockMvcRequestBuilders.put("/data/" + id)
+        var result = perform(MockMvcRequestBuilders.put("/data/" + id)
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
                 .content(TestJsonConverter.objectToJson(newData))
-        ).andReturn();
+        );
 
         var statusCode = result.getResponse().getStatus();
         assertEquals(HttpStatus.BAD_REQUEST.value(), statusCode);
     }
-}
\ No newline at end of file
+
+    /**
+     * Performs the request and, when the controller answered asynchronously, the dispatch of its result
+     */
+    private MvcResult perform(RequestBuilder request) throws Exception {
+        var result = mockMvc.perform(request).andReturn();
+        if (result.getRequest().isAsyncStarted()) {
+            result = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result)).andReturn();
+        }
+        return result;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
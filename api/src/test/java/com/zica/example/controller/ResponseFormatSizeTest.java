@@ -0,0 +1,64 @@
+package com.zica.example.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.zica.example.db.DataRow;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The size of a GET /data response in each format, whose serialisation is measured by DataSerializationBenchmark
+ */
+class ResponseFormatSizeTest {
+
+    @Test
+    void binaryFormatsTest() throws Exception {
+        // random like the ciphertexts, of the size of a stored RSA ciphertext
+        var random = new Random(42);
+        List<Object> records = IntStream.range(0, 1000)
+                .mapToObj(id -> {
+                    var value = new byte[259];
+                    random.nextBytes(value);
+                    return DataController.convertDbDataToEncryptedData(new DataRow(id, value, null));
+                })
+                .collect(Collectors.toList());
+
+        var json = size(Jackson2ObjectMapperBuilder.json().build(), records);
+        var cbor = size(Jackson2ObjectMapperBuilder.cbor().build(), records);
+        // like the converter of the application, with the binary values written as they are
+        var smile = size(Jackson2ObjectMapperBuilder.smile()
+                .factory(new SmileFactory().disable(SmileGenerator.Feature.ENCODE_BINARY_AS_7BIT))
+                .build(), records);
+
+        // the binary formats don't have the 4/3 of the Base64 of JSON
+        assertTrue(cbor[0] < json[0] * 0.8, "CBOR " + cbor[0] + " bytes, JSON " + json[0]);
+        assertTrue(smile[0] < json[0] * 0.8, "Smile " + smile[0] + " bytes, JSON " + json[0]);
+        // so gzip takes little more out of them
+        assertTrue(cbor[1] > cbor[0] * 0.95, "CBOR " + cbor[0] + " bytes, " + cbor[1] + " with gzip");
+        assertTrue(smile[1] > smile[0] * 0.95, "Smile " + smile[0] + " bytes, " + smile[1] + " with gzip");
+        assertTrue(json[1] < json[0] * 0.8, "JSON " + json[0] + " bytes, " + json[1] + " with gzip");
+    }
+
+    /**
+     * @return the size of the response, and with gzip
+     */
+    private static int[] size(ObjectMapper objectMapper, List<Object> records) throws IOException {
+        var payload = objectMapper.writeValueAsBytes(records);
+        var out = new ByteArrayOutputStream(payload.length);
+        try (var gzip = new GZIPOutputStream(out)) {
+            gzip.write(payload);
+        }
+        return new int[]{payload.length, out.size()};
+    }
+}
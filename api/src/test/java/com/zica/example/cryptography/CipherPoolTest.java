@@ -0,0 +1,102 @@
+package com.zica.example.cryptography;
+
+import com.zica.example.service.CipherPool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+class CipherPoolTest {
+
+    private static KeyPair keyPair;
+
+    @BeforeAll
+    static void generateKeys() throws Exception {
+        var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        keyPair = keyPairGenerator.genKeyPair();
+    }
+
+    @Test
+    void reusesCiphersTest() throws Exception {
+        var pool = new CipherPool("encrypt", "RSA", Cipher.ENCRYPT_MODE, keyPair.getPublic(), 4);
+
+        for (int i = 0; i < 10; i++) {
+            pool.doFinal("value".getBytes(StandardCharsets.UTF_8));
+        }
+
+        Assertions.assertEquals(1, pool.getMisses());
+        Assertions.assertEquals(9, pool.getHits());
+        Assertions.assertEquals(1, pool.getIdle());
+    }
+
+    @Test
+    void disabledPoolTest() throws Exception {
+        var pool = new CipherPool("encrypt", "RSA", Cipher.ENCRYPT_MODE, keyPair.getPublic(), 0);
+
+        for (int i = 0; i < 3; i++) {
+            pool.doFinal("value".getBytes(StandardCharsets.UTF_8));
+        }
+
+        Assertions.assertEquals(3, pool.getMisses());
+        Assertions.assertEquals(0, pool.getHits());
+        Assertions.assertEquals(0, pool.getIdle());
+    }
+
+    @Test
+    void failingCipherIsNotReturnedTest() throws Exception {
+        var pool = new CipherPool("decrypt", "RSA", Cipher.DECRYPT_MODE, keyPair.getPrivate(), 4);
+
+        Assertions.assertThrows(Exception.class, () -> pool.doFinal(new byte[256]));
+        Assertions.assertEquals(0, pool.getIdle());
+    }
+
+    @Test
+    void concurrentUseTest() throws Exception {
+        var encryptPool = new CipherPool("encrypt", "RSA", Cipher.ENCRYPT_MODE, keyPair.getPublic(), 2);
+        var decryptPool = new CipherPool("decrypt", "RSA", Cipher.DECRYPT_MODE, keyPair.getPrivate(), 2);
+        var executor = Executors.newFixedThreadPool(8);
+
+        try {
+            var tasks = IntStream.range(0, 64)
+                    .mapToObj(i -> (Callable<Boolean>) () -> {
+                        var value = "value number " + i;
+                        var encrypted = encryptPool.doFinal(value.getBytes(StandardCharsets.UTF_8));
+                        var decrypted = decryptPool.doFinal(encrypted);
+                        return value.equals(new String(decrypted, StandardCharsets.UTF_8));
+                    })
+                    .collect(Collectors.toList());
+
+            for (var result : executor.invokeAll(tasks)) {
+                Assertions.assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Assertions.assertEquals(64, encryptPool.getHits() + encryptPool.getMisses());
+        Assertions.assertTrue(encryptPool.getIdle() <= 2);
+    }
+
+    @Test
+    void metricsTest() throws Exception {
+        var pool = new CipherPool("encrypt", "RSA", Cipher.ENCRYPT_MODE, keyPair.getPublic(), 4);
+        var registry = new SimpleMeterRegistry();
+        pool.bindTo(registry);
+
+        pool.doFinal("value".getBytes(StandardCharsets.UTF_8));
+        pool.doFinal("value".getBytes(StandardCharsets.UTF_8));
+
+        Assertions.assertEquals(1, registry.get("cipher.pool.hits").tag("pool", "encrypt").functionCounter().count());
+        Assertions.assertEquals(1, registry.get("cipher.pool.misses").tag("pool", "encrypt").functionCounter().count());
+    }
+}
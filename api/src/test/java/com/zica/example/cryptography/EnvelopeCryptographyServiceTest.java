@@ -0,0 +1,215 @@
+package com.zica.example.cryptography;
+
+import com.zica.example.service.CiphertextFormat;
+import com.zica.example.service.EnvelopeCryptographyServiceImpl;
+import com.zica.example.service.RSACryptographyServiceImpl;
+import org.assertj.core.internal.bytebuddy.utility.RandomString;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class EnvelopeCryptographyServiceTest {
+
+    private static RSACryptographyServiceImpl rsaCryptographyService;
+
+    @BeforeAll
+    static void createRsaService() throws Exception {
+        var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        var keyPair = keyPairGenerator.genKeyPair();
+        var encoder = Base64.getEncoder();
+
+        rsaCryptographyService = new RSACryptographyServiceImpl(
+                encoder.encodeToString(keyPair.getPublic().getEncoded()),
+                encoder.encodeToString(keyPair.getPrivate().getEncoded()));
+    }
+
+    @Test
+    void encryptTest() throws Exception {
+        var cryptographyService = new EnvelopeCryptographyServiceImpl(rsaCryptographyService, 300, 1000);
+        var value = "some value to be encrypted çãõ";
+
+        var encrypted = cryptographyService.encrypt(value);
+
+        Assertions.assertTrue(encrypted.startsWith("v3:"));
+        Assertions.assertNotEquals(encrypted, cryptographyService.encrypt(value));
+        Assertions.assertEquals(value, cryptographyService.decrypt(encrypted));
+    }
+
+    @Test
+    void encryptLongValueTest() throws Exception {
+        var cryptographyService = new EnvelopeCryptographyServiceImpl(rsaCryptographyService, 300, 1000);
+        var value = RandomString.make(4096);
+
+        var encrypted = cryptographyService.encrypt(value);
+
+        Assertions.assertEquals(value, cryptographyService.decrypt(encrypted));
+    }
+
+    @Test
+    void decryptRsaValueTest() throws Exception {
+        var cryptographyService = new EnvelopeCryptographyServiceImpl(rsaCryptographyService, 300, 1000);
+        var value = "written before the envelope mode";
+
+        var encrypted = rsaCryptographyService.encrypt(value);
+
+        Assertions.assertEquals(value, cryptographyService.decrypt(encrypted));
+    }
+
+    @Test
+    void encryptToBytesTest() throws Exception {
+        var cryptographyService = new EnvelopeCryptographyServiceImpl(rsaCryptographyService, 300, 1000);
+        var value = RandomString.make(4096);
+
+        var encrypted = cryptographyService.encryptToBytes(value);
+
+        Assertions.assertEquals(CiphertextFormat.KEYED_ENVELOPE, encrypted[0]);
+        Assertions.assertEquals(value, cryptographyService.decryptFromBytes(encrypted));
+    }
+
+    @Test
+    void decryptLegacyEnvelopeTest() throws Exception {
+        var cryptographyService = new EnvelopeCryptographyServiceImpl(rsaCryptographyService, 300, 1000);
+        var encrypted = cryptographyService.encryptToBytes("written before the keys had versions");
+
+        // the envelope without the format byte and the key id
+        var envelope = Arrays.copyOfRange(encrypted, 3, encrypted.length);
+        var legacy = "v2:" + Base64.getEncoder().encodeToString(envelope);
+
+        Assertions.assertEquals("written before the keys had versions", cryptographyService.decrypt(legacy));
+        Assertions.assertEquals("written before the keys had versions",
+                cryptographyService.decryptFromBytes(CiphertextFormat.fromLegacy(legacy)));
+    }
+
+    @Test
+    void decryptRsaValueFromBytesTest() throws Exception {
+        var cryptographyService = new EnvelopeCryptographyServiceImpl(rsaCryptographyService, 300, 1000);
+        var value = "written before the envelope mode";
+
+        var encrypted = rsaCryptographyService.encryptToBytes(value);
+
+        Assertions.assertEquals(value, cryptographyService.decryptFromBytes(encrypted));
+    }
+
+    @Test
+    void decryptLegacyFromBytesTest() throws Exception {
+        var cryptographyService = new EnvelopeCryptographyServiceImpl(rsaCryptographyService, 300, 1000);
+
+        var envelope = CiphertextFormat.fromLegacy(cryptographyService.encrypt("an envelope"));
+        var rsa = CiphertextFormat.fromLegacy(rsaCryptographyService.encrypt("an RSA value"));
+
+        Assertions.assertEquals("an envelope", cryptographyService.decryptFromBytes(envelope));
+        Assertions.assertEquals("an RSA value", cryptographyService.decryptFromBytes(rsa));
+    }
+
+    @Test
+    void decryptWithAnotherInstanceTest() throws Exception {
+        var value = "written by another instance";
+        var encrypted = new EnvelopeCryptographyServiceImpl(rsaCryptographyService, 300, 1000).encrypt(value);
+
+        var cryptographyService = new EnvelopeCryptographyServiceImpl(rsaCryptographyService, 300, 1000);
+
+        Assertions.assertEquals(value, cryptographyService.decrypt(encrypted));
+    }
+
+    @Test
+    void dataKeyReuseTest() throws Exception {
+        var cryptographyService = new EnvelopeCryptographyServiceImpl(rsaCryptographyService, 300, 2);
+
+        var first = wrappedKey(cryptographyService.encrypt("first"));
+        var second = wrappedKey(cryptographyService.encrypt("second"));
+        var third = wrappedKey(cryptographyService.encrypt("third"));
+
+        Assertions.assertEquals(first, second);
+        Assertions.assertNotEquals(second, third);
+    }
+
+    @Test
+    void dataKeyMaxUsesTest() throws Exception {
+        var cryptographyService = new EnvelopeCryptographyServiceImpl(rsaCryptographyService, 300, 5);
+        var executor = Executors.newFixedThreadPool(4);
+        var encryptions = new ArrayList<Future<String>>();
+        for (int i = 0; i < 200; i++) {
+            var value = "value " + i;
+            encryptions.add(executor.submit(() -> wrappedKey(cryptographyService.encrypt(value))));
+        }
+
+        var uses = new HashMap<String, Integer>();
+        for (var encryption : encryptions) {
+            uses.merge(encryption.get(), 1, Integer::sum);
+        }
+        executor.shutdown();
+
+        // every key is used as many times as allowed, no more and no less
+        Assertions.assertEquals(40, uses.size());
+        uses.values().forEach(count -> Assertions.assertEquals(5, (int) count));
+    }
+
+    @Test
+    void encryptBuffersTest() throws Exception {
+        var cryptographyService = new EnvelopeCryptographyServiceImpl(rsaCryptographyService, 300, 1000);
+        var value = RandomString.make(1000).getBytes(StandardCharsets.UTF_8);
+        var encrypted = ByteBuffer.allocateDirect(cryptographyService.getMaxEncryptedLength(value.length));
+        var decrypted = ByteBuffer.allocate(encrypted.capacity());
+
+        cryptographyService.encrypt(ByteBuffer.wrap(value), encrypted);
+        Assertions.assertFalse(encrypted.hasRemaining());
+        cryptographyService.decrypt(encrypted.flip(), decrypted);
+
+        Assertions.assertEquals(CiphertextFormat.KEYED_ENVELOPE, encrypted.get(0));
+        Assertions.assertArrayEquals(value, Arrays.copyOf(decrypted.array(), decrypted.position()));
+    }
+
+    @Test
+    void decryptRsaBuffersTest() throws Exception {
+        var cryptographyService = new EnvelopeCryptographyServiceImpl(rsaCryptographyService, 300, 1000);
+        var encrypted = rsaCryptographyService.encryptToBytes("written before the envelope mode");
+        var decrypted = ByteBuffer.allocate(encrypted.length);
+
+        cryptographyService.decrypt(ByteBuffer.wrap(encrypted), decrypted);
+
+        Assertions.assertEquals("written before the envelope mode",
+                new String(decrypted.array(), 0, decrypted.position(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void dataKeyExpirationTest() throws Exception {
+        var cryptographyService = new EnvelopeCryptographyServiceImpl(rsaCryptographyService, 0, 1000);
+
+        var first = wrappedKey(cryptographyService.encrypt("first"));
+        var second = wrappedKey(cryptographyService.encrypt("second"));
+
+        Assertions.assertNotEquals(first, second);
+    }
+
+    @Test
+    void tamperedValueTest() throws Exception {
+        var cryptographyService = new EnvelopeCryptographyServiceImpl(rsaCryptographyService, 300, 1000);
+
+        var envelope = Base64.getDecoder().decode(cryptographyService.encrypt("some value").substring(3));
+        envelope[envelope.length - 1] ^= 1;
+        var tampered = "v3:" + Base64.getEncoder().encodeToString(envelope);
+
+        Assertions.assertThrows(Exception.class, () -> cryptographyService.decrypt(tampered));
+    }
+
+    /**
+     * @return the Base64 of the RSA wrapped data key of the envelope
+     */
+    private static String wrappedKey(String encrypted) {
+        var envelope = Base64.getDecoder().decode(encrypted.substring(3));
+        // after the format byte and the key id
+        var length = ((envelope[3] & 0xff) << 8) | (envelope[4] & 0xff);
+        return Base64.getEncoder().encodeToString(Arrays.copyOfRange(envelope, 5, 5 + length));
+    }
+}
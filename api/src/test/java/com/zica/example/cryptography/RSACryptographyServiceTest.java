@@ -1,5 +1,7 @@
 package com.zica.example.cryptography;
 
+import com.zica.example.exception.ValueTooLongException;
+import com.zica.example.service.CiphertextFormat;
 import com.zica.example.service.RSACryptographyServiceImpl;
 import org.junit.Assert;
 import org.junit.jupiter.api.Assertions;
@@ -7,6 +9,12 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvFileSource;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
 class RSACryptographyServiceTest {
 
     @ParameterizedTest(name = "encrypting and decrypting string \"{2}\"")
@@ -21,6 +29,84 @@ class RSACryptographyServiceTest {
        Assert.assertEquals(toEncrypt, decrypted);
     }
 
+    @ParameterizedTest(name = "encrypting and decrypting string \"{2}\" as binary")
+    @CsvFileSource(resources = "/encrypt-test.csv")
+    void encryptToBytesTest(String publicKey, String privateKey, String toEncrypt) throws Exception {
+       var cryptographyService = new RSACryptographyServiceImpl(publicKey, privateKey);
+
+       var encrypted = cryptographyService.encryptToBytes(toEncrypt);
+
+       Assertions.assertEquals(CiphertextFormat.KEYED_RSA, encrypted[0]);
+       Assertions.assertEquals(CiphertextFormat.LEGACY_KEY_ID, CiphertextFormat.keyIdOf(encrypted));
+       Assertions.assertEquals(259, encrypted.length);
+       Assert.assertEquals(toEncrypt, cryptographyService.decryptFromBytes(encrypted));
+    }
+
+    @ParameterizedTest(name = "encrypting and decrypting string \"{2}\" with direct buffers")
+    @CsvFileSource(resources = "/encrypt-test.csv")
+    void encryptBuffersTest(String publicKey, String privateKey, String toEncrypt) throws Exception {
+       var cryptographyService = new RSACryptographyServiceImpl(publicKey, privateKey);
+       var data = ByteBuffer.allocateDirect(245).put(toEncrypt.getBytes(StandardCharsets.UTF_8)).flip();
+       var encrypted = ByteBuffer.allocateDirect(cryptographyService.getMaxEncryptedLength(data.remaining()));
+       var decrypted = ByteBuffer.allocateDirect(encrypted.capacity());
+
+       cryptographyService.encrypt(data, encrypted);
+       cryptographyService.decrypt(encrypted.flip(), decrypted);
+
+       Assertions.assertFalse(data.hasRemaining());
+       Assertions.assertEquals(CiphertextFormat.KEYED_RSA, encrypted.get(0));
+       Assert.assertEquals(toEncrypt, StandardCharsets.UTF_8.decode(decrypted.flip()).toString());
+    }
+
+    @ParameterizedTest(name = "decrypting a legacy value as binary -> should yield \"{3}\"")
+    @CsvFileSource(resources = "/decrypt-test.csv")
+    void decryptLegacyFromBytesTest(String publicKey, String privateKey, String encrypted, String shouldBe)
+            throws Exception {
+       var cryptographyService = new RSACryptographyServiceImpl(publicKey, privateKey);
+       var decrypted = cryptographyService.decryptFromBytes(CiphertextFormat.fromLegacy(encrypted));
+
+       Assert.assertEquals(shouldBe, decrypted);
+    }
+
+    @ParameterizedTest(name = "encrypting a value over 245 bytes -> should raise exceptions")
+    @CsvFileSource(resources = "/encrypt-test.csv")
+    void encryptTooLongTest(String publicKey, String privateKey, String toEncrypt) throws Exception {
+       var cryptographyService = new RSACryptographyServiceImpl(publicKey, privateKey);
+       Assertions.assertThrows(ValueTooLongException.class, () -> cryptographyService.encrypt(toEncrypt.repeat(246)));
+    }
+
+    @Test
+    void previousKeyTest() throws Exception {
+       var previous = generateKeyPair();
+       var current = generateKeyPair();
+       var previousService = new RSACryptographyServiceImpl(previous[0], previous[1]);
+       var rotatedService = new RSACryptographyServiceImpl(current[0], current[1], 2, "1:" + previous[1], 16);
+
+       var writtenBefore = previousService.encryptToBytes("written with the previous key");
+       var writtenAfter = rotatedService.encryptToBytes("written with the current key");
+
+       Assertions.assertTrue(rotatedService.hasPreviousKeys());
+       Assertions.assertEquals(2, CiphertextFormat.keyIdOf(writtenAfter));
+       Assert.assertEquals("written with the previous key", rotatedService.decryptFromBytes(writtenBefore));
+       Assert.assertEquals("written with the current key", rotatedService.decryptFromBytes(writtenAfter));
+       Assert.assertEquals("written with the previous key",
+               rotatedService.decrypt(previousService.encrypt("written with the previous key")));
+       Assertions.assertThrows(IllegalArgumentException.class, () -> previousService.decryptFromBytes(writtenAfter));
+    }
+
+    @Test
+    void invalidPreviousKeysTest() {
+       var previous = generateKeyPair();
+       var current = generateKeyPair();
+
+       Assertions.assertThrows(IllegalArgumentException.class, () ->
+               new RSACryptographyServiceImpl(current[0], current[1], 2, previous[1], 16));
+       Assertions.assertThrows(IllegalArgumentException.class, () ->
+               new RSACryptographyServiceImpl(current[0], current[1], 2, "2:" + previous[1], 16));
+       Assertions.assertThrows(IllegalArgumentException.class, () ->
+               new RSACryptographyServiceImpl(current[0], current[1], 65536, "", 16));
+    }
+
     @Test
     void invalidKeysTest() {
         Assertions.assertThrows(Exception.class, () ->
@@ -43,4 +129,20 @@ class RSACryptographyServiceTest {
        var cryptographyService = new RSACryptographyServiceImpl(publicKey, privateKey);
        Assertions.assertThrows(Exception.class, () -> cryptographyService.decrypt(encrypted));
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the Base64 public and private keys of a new key pair
+     */
+    private static String[] generateKeyPair() {
+       try {
+          var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+          keyPairGenerator.initialize(2048);
+          var keyPair = keyPairGenerator.genKeyPair();
+          var encoder = Base64.getEncoder();
+          return new String[] {encoder.encodeToString(keyPair.getPublic().getEncoded()),
+                  encoder.encodeToString(keyPair.getPrivate().getEncoded())};
+       } catch (NoSuchAlgorithmException e) {
+          throw new IllegalStateException(e);
+       }
+    }
+}
@@ -0,0 +1,85 @@
+package com.zica.example.cryptography;
+
+import com.zica.example.service.RSACryptographyServiceImpl;
+import com.zica.example.service.RSAEngine;
+import com.zica.example.service.RSAEngineMeasurement;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RSAEngineTest {
+
+    private static final String PKCS1 = "SunJCE:RSA/ECB/PKCS1Padding";
+    private static final String OAEP = "SunJCE:RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+
+    private static KeyPair keyPair;
+    private static String publicKey;
+    private static String privateKey;
+
+    @BeforeAll
+    static void generateKeys() throws Exception {
+        var keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        keyPair = keyPairGenerator.genKeyPair();
+        publicKey = Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded());
+        privateKey = Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded());
+    }
+
+    @Test
+    void installedTest() {
+        var engines = RSAEngine.installed(List.of("RSA/ECB/PKCS1Padding", "RSA/ECB/OAEPWithSHA-256AndMGF1Padding",
+                "RSA/ECB/NoSuchPadding")).stream()
+                .map(RSAEngine::toString)
+                .collect(Collectors.toList());
+
+        assertEquals("default", engines.get(0));
+        assertTrue(engines.contains(PKCS1));
+        assertTrue(engines.contains(OAEP));
+        assertEquals(3, engines.size());
+        assertEquals(RSAEngine.parse(PKCS1), RSAEngine.parse(" SunJCE : RSA/ECB/PKCS1Padding"));
+        assertThrows(IllegalArgumentException.class, () -> RSAEngine.parse("NoSuchProvider:RSA"));
+    }
+
+    @Test
+    void measurementTest() throws Exception {
+        var maxDataLength = new RSACryptographyServiceImpl(publicKey, privateKey).getMaxDataLength();
+        var results = RSAEngineMeasurement.measure(
+                List.of(RSAEngine.DEFAULT, RSAEngine.parse(PKCS1), RSAEngine.parse(OAEP)),
+                keyPair.getPublic(), keyPair.getPrivate(), maxDataLength, 5);
+
+        assertTrue(results.get(0).isCompatible());
+        assertTrue(results.get(1).isCompatible());
+        // the values of the other padding can't be read
+        assertFalse(results.get(2).isCompatible());
+        for (var result : results) {
+            assertNull(result.getError());
+            assertTrue(result.getEncryptMicros() > 0);
+            assertTrue(result.getDecryptMicros() > 0);
+        }
+    }
+
+    @Test
+    void selectEngineTest() throws Exception {
+        var stored = new RSACryptographyServiceImpl(publicKey, privateKey).encryptToBytes("a stored value");
+
+        var auto = new RSACryptographyServiceImpl(publicKey, privateKey, 1, "", 4, "auto",
+                new String[]{"RSA/ECB/PKCS1Padding", "RSA/ECB/OAEPWithSHA-256AndMGF1Padding"}, 5);
+        assertNotEquals(OAEP, auto.getEngine().toString());
+        assertEquals(3, auto.getEngineMeasurements().size());
+        assertEquals("a stored value", auto.decryptFromBytes(stored));
+
+        var configured = new RSACryptographyServiceImpl(publicKey, privateKey, 1, "", 4, PKCS1, new String[0], 5);
+        assertEquals(PKCS1, configured.getEngine().toString());
+        assertEquals("a stored value", configured.decryptFromBytes(stored));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new RSACryptographyServiceImpl(publicKey, privateKey, 1, "", 4, OAEP, new String[0], 5));
+    }
+}
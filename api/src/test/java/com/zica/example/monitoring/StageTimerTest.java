@@ -0,0 +1,89 @@
+package com.zica.example.monitoring;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StageTimerTest {
+
+    @Test
+    void recordsStagesTest() {
+        var stageTimer = new StageTimer(true);
+        var registry = new SimpleMeterRegistry();
+        stageTimer.bindTo(registry);
+
+        try (var ignored = stageTimer.start(Stage.ENCRYPT)) {
+            // the timed work
+        }
+        try (var ignored = stageTimer.start(Stage.ENCRYPT)) {
+            // the timed work
+        }
+
+        assertEquals(2, registry.get("data.stage").tag("stage", "encrypt").timer().count());
+        assertEquals(0, registry.get("data.stage").tag("stage", "decrypt").timer().count());
+    }
+
+    @Test
+    void disabledTest() {
+        var stageTimer = new StageTimer(false);
+        var registry = new SimpleMeterRegistry();
+        stageTimer.bindTo(registry);
+
+        try (var ignored = stageTimer.start(Stage.ENCRYPT)) {
+            // the timed work
+        }
+
+        assertSame(stageTimer.start(Stage.ENCRYPT), stageTimer.start(Stage.DECRYPT));
+        assertTrue(registry.find("data.stage").timers().isEmpty());
+    }
+
+    @Test
+    void jfrEventTest() throws Exception {
+        var stageTimer = new StageTimer(true);
+        var file = Files.createTempFile("stages", ".jfr");
+
+        try (var recording = new Recording()) {
+            recording.enable(StageEvent.class);
+            recording.start();
+
+            RequestIds.set("request-1");
+            try (var ignored = stageTimer.start(Stage.DECRYPT)) {
+                // the timed work
+            } finally {
+                RequestIds.set(null);
+            }
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        var events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+
+        var event = events.stream()
+                .filter(recorded -> recorded.getEventType().getName().equals("com.zica.example.Stage"))
+                .findFirst()
+                .orElseThrow();
+        assertEquals("decrypt", event.getString("stage"));
+        assertEquals("request-1", event.getString("requestId"));
+    }
+
+    @Test
+    void propagateRequestIdTest() {
+        RequestIds.set("request-2");
+        Runnable task;
+        try {
+            task = RequestIds.propagate(() -> assertEquals("request-2", RequestIds.current()));
+        } finally {
+            RequestIds.set(null);
+        }
+
+        task.run();
+        assertNull(RequestIds.current());
+    }
+}
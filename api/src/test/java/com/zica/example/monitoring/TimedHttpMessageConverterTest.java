@@ -0,0 +1,37 @@
+package com.zica.example.monitoring;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimedHttpMessageConverterTest {
+
+    @Test
+    void timesWritesTest() throws Exception {
+        var stageTimer = new StageTimer(true);
+        var registry = new SimpleMeterRegistry();
+        stageTimer.bindTo(registry);
+        var converter = new TimedHttpMessageConverter(new MappingJackson2HttpMessageConverter(new ObjectMapper()),
+                stageTimer);
+
+        var output = new MockHttpOutputMessage();
+        converter.write(Map.of("id", 1), MediaType.APPLICATION_JSON, output);
+        converter.write(Map.of("id", 2), Map.class, MediaType.APPLICATION_JSON, new MockHttpOutputMessage());
+        var read = converter.read(Map.class, new MockHttpInputMessage("{\"id\":3}".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("{\"id\":1}", output.getBodyAsString());
+        assertEquals(Map.of("id", 3), read);
+        assertTrue(converter.canWrite(Map.class, MediaType.APPLICATION_JSON));
+        assertFalse(converter.canWrite(Map.class, MediaType.APPLICATION_XML));
+        assertEquals(2, registry.get("data.stage").tag("stage", "serialization").timer().count());
+    }
+}
@@ -0,0 +1,34 @@
+package com.zica.example.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class VirtualThreadPoolTest {
+
+    @Test
+    void runsOnVirtualThreadsTest() throws Exception {
+        assumeTrue(Runtime.version().feature() >= 21);
+
+        var pool = new VirtualThreadPool("test-");
+        pool.start();
+        try {
+            var thread = CompletableFuture.supplyAsync(Thread::currentThread, pool).join();
+
+            assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(thread));
+            assertTrue(thread.getName().startsWith("test-"));
+        } finally {
+            pool.stop();
+        }
+    }
+
+    @Test
+    void oldJavaTest() {
+        assumeTrue(Runtime.version().feature() < 21);
+
+        assertThrows(IllegalStateException.class, () -> new VirtualThreadPool("test-").start());
+    }
+}
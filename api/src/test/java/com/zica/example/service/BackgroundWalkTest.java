@@ -0,0 +1,44 @@
+package com.zica.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackgroundWalkTest {
+
+    @Test
+    void mapTest() {
+        try (var walk = new BackgroundWalk("test-walk", 2, 0)) {
+            assertEquals(List.of(2, 4, 6), walk.map(List.of(1, 2, 3), value -> value * 2));
+        }
+    }
+
+    @Test
+    void throttleTest() {
+        try (var walk = new BackgroundWalk("test-walk", 1, 100)) {
+            var start = System.nanoTime();
+            walk.pass(new LongAdder(), () -> {
+                walk.throttle(10);
+                walk.throttle(10);
+                walk.throttle(10);
+            });
+
+            // the first chunk doesn't wait, the two others wait 100 ms each
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+        }
+    }
+
+    @Test
+    void passTest() {
+        try (var walk = new BackgroundWalk("test-walk", 1, 0)) {
+            var changed = new LongAdder();
+
+            assertTrue(walk.pass(changed, () -> { }));
+            assertFalse(walk.pass(changed, changed::increment));
+        }
+    }
+}
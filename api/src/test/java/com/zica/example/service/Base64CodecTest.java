@@ -0,0 +1,64 @@
+package com.zica.example.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Base64CodecTest {
+
+    @Test
+    void encodeTest() {
+        var random = new Random(42);
+        for (int length = 0; length < 300; length++) {
+            var value = new byte[length];
+            random.nextBytes(value);
+            var encoded = ByteBuffer.allocate(Base64Codec.encodedLength(length));
+
+            Base64Codec.encode(ByteBuffer.wrap(value), encoded);
+
+            assertFalse(encoded.hasRemaining());
+            assertEquals(Base64.getEncoder().encodeToString(value),
+                    new String(encoded.array(), StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    void decodeTest() {
+        var random = new Random(42);
+        for (int length = 0; length < 300; length++) {
+            var value = new byte[length];
+            random.nextBytes(value);
+            var encoded = "v2:" + Base64.getEncoder().encodeToString(value);
+            var decoded = ByteBuffer.allocate(Base64Codec.decodedLength(encoded.length() - 3));
+
+            Base64Codec.decode(encoded, 3, decoded);
+
+            assertArrayEquals(value, Arrays.copyOf(decoded.array(), decoded.position()));
+        }
+    }
+
+    @Test
+    void decodeWithoutPaddingTest() {
+        var decoded = ByteBuffer.allocate(3);
+
+        Base64Codec.decode("YWI", 0, decoded);
+
+        assertArrayEquals(Base64.getDecoder().decode("YWI"), Arrays.copyOf(decoded.array(), decoded.position()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"Hello", "ab=", "YWI==", "YQ==YQ==", "YW I=", "not Base64!"})
+    void decodeInvalidTest(String invalid) {
+        assertThrows(IllegalArgumentException.class, () -> Base64.getDecoder().decode(invalid));
+        assertThrows(IllegalArgumentException.class,
+                () -> Base64Codec.decode(invalid, 0, ByteBuffer.allocate(Base64Codec.decodedLength(invalid.length()))));
+    }
+}
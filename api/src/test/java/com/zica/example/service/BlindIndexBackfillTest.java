@@ -0,0 +1,106 @@
+package com.zica.example.service;
+
+import com.zica.example.db.Data;
+import com.zica.example.db.DataRow;
+import com.zica.example.model.NewData;
+import com.zica.example.repository.DataRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"blind-index-backfill-enabled=false", "blind-index-backfill-chunk-size=2",
+        "blind-index-backfill-records-per-second=0",
+        "ciphertext-migration-enabled=false", "reencryption-enabled=false"})
+class BlindIndexBackfillTest {
+
+    @Autowired
+    private BlindIndexBackfill backfill;
+
+    @Autowired
+    private DataService service;
+
+    @Autowired
+    private DataRepository repository;
+
+    @Autowired
+    private RSACryptographyService cryptographyService;
+
+    @Autowired
+    private BlindIndex blindIndex;
+
+    @BeforeEach
+    void deleteData() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void backfillTest() throws Exception {
+        var first = saveWithoutIndex("a value");
+        saveWithoutIndex("another value");
+        var second = saveWithoutIndex("a value");
+        var indexed = service.saveData(new NewData().data("a value"));
+        saveWithoutIndex("a third value");
+
+        // only the record saved with its index is found until the backfill
+        assertEquals(List.of(indexed.getId()), idsOf(service.findDataByValue("a value", 0, 10)));
+
+        assertEquals(4, backfill.backfill());
+
+        assertEquals(List.of(first.getId(), second.getId(), indexed.getId()),
+                idsOf(service.findDataByValue("a value", 0, 10)));
+        assertEquals(List.of(second.getId()), idsOf(service.findDataByValue("a value", first.getId(), 1)));
+        assertTrue(service.findDataByValue("A value", 0, 10).isEmpty());
+        assertEquals(0, backfill.backfill());
+    }
+
+    @Test
+    void updateTest() throws Exception {
+        var data = service.saveData(new NewData().data("a value"));
+        service.updateDataValue(data.getId(), new NewData().data("an updated value"));
+
+        assertTrue(service.findDataByValue("a value", 0, 10).isEmpty());
+        assertEquals(List.of(data.getId()), idsOf(service.findDataByValue("an updated value", 0, 10)));
+    }
+
+    @Test
+    void changedRecordIsNotIndexedTest() throws Exception {
+        var data = saveWithoutIndex("an old value");
+        repository.updateData(data.getId(), cryptographyService.encryptToBytes("a new value"), null);
+
+        assertEquals(0, repository.indexData(data.getId(), blindIndex.of("an old value"), data.getVersion()));
+        assertEquals(1, backfill.backfill());
+
+        assertTrue(service.findDataByValue("an old value", 0, 10).isEmpty());
+        assertEquals(1, service.findDataByValue("a new value", 0, 10).size());
+    }
+
+    @Test
+    void invalidValueTest() {
+        var failedBefore = backfill.getFailed();
+        var invalid = repository.save(new Data(0, bytes("\u0001not an RSA value")));
+
+        assertEquals(0, backfill.backfill());
+
+        assertEquals(failedBefore + 1, backfill.getFailed());
+        assertNull(repository.findById(invalid.getId()).get().getValueIndex());
+    }
+
+    private Data saveWithoutIndex(String value) throws Exception {
+        return repository.save(new Data(0, cryptographyService.encryptToBytes(value)));
+    }
+
+    private static List<Long> idsOf(List<DataRow> rows) {
+        return rows.stream().map(DataRow::getId).collect(Collectors.toList());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,140 @@
+package com.zica.example.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedExecutorTest {
+
+    @Test
+    void runsOnItsThreadsTest() {
+        var executor = new BoundedExecutor("test", 2, 10);
+        try {
+            var thread = CompletableFuture.supplyAsync(() -> Thread.currentThread().getName(), executor).join();
+
+            assertTrue(thread.startsWith("test-"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void directTest() {
+        var executor = BoundedExecutor.direct("test");
+
+        var thread = CompletableFuture.supplyAsync(() -> Thread.currentThread().getName(), executor).join();
+
+        assertEquals(Thread.currentThread().getName(), thread);
+        assertEquals(1, executor.getExecuted());
+    }
+
+    @Test
+    void rejectsWhenQueueIsFullTest() throws Exception {
+        var executor = new BoundedExecutor("test", 1, 1);
+        var running = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> {
+                running.countDown();
+                await(release);
+            });
+            running.await(5, TimeUnit.SECONDS);
+            executor.execute(() -> {});
+
+            assertEquals(1, executor.getQueueDepth());
+            assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {}));
+            assertEquals(1, executor.getRejected());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void limitedTest() throws Exception {
+        var executor = BoundedExecutor.limited("test", 2, 10);
+        var pool = Executors.newFixedThreadPool(8);
+        var running = new AtomicInteger();
+        var maxRunning = new AtomicInteger();
+        try {
+            var tasks = IntStream.range(0, 32)
+                    .mapToObj(i -> CompletableFuture.runAsync(() -> executor.execute(() -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        sleep(5);
+                        running.decrementAndGet();
+                    }), pool))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(tasks).join();
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(2, maxRunning.get());
+        assertEquals(32, executor.getExecuted());
+        assertEquals(0, executor.getActive());
+    }
+
+    @Test
+    void limitedRejectsWhenTooManyWaitTest() throws Exception {
+        var executor = BoundedExecutor.limited("test", 1, 1);
+        var pool = Executors.newFixedThreadPool(2);
+        var running = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        try {
+            pool.execute(() -> executor.execute(() -> {
+                running.countDown();
+                await(release);
+            }));
+            running.await(5, TimeUnit.SECONDS);
+            pool.execute(() -> executor.execute(() -> {}));
+            while (executor.getQueueDepth() < 1) {
+                Thread.sleep(1);
+            }
+
+            assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {}));
+            assertEquals(1, executor.getRejected());
+        } finally {
+            release.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void metricsTest() {
+        var executor = BoundedExecutor.direct("test");
+        var registry = new SimpleMeterRegistry();
+        executor.bindTo(registry);
+
+        executor.execute(() -> {});
+        executor.execute(() -> {});
+
+        assertEquals(2, registry.get("request.executor.execution").tag("name", "test").functionTimer().count());
+        assertEquals(0, registry.get("request.executor.queue.depth").tag("name", "test").gauge().value());
+        assertEquals(0, registry.get("request.executor.rejected").tag("name", "test").functionCounter().count());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.zica.example.service;
+
+import com.zica.example.db.Data;
+import com.zica.example.repository.DataRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"ciphertext-migration-enabled=false", "ciphertext-migration-chunk-size=2",
+        "ciphertext-migration-records-per-second=0", "decrypted-cache-enabled=true"})
+class CiphertextMigrationTest {
+
+    @Autowired
+    private CiphertextMigration migration;
+
+    @Autowired
+    private DataRepository repository;
+
+    @Autowired
+    private DecryptedDataCache decryptedDataCache;
+
+    @BeforeEach
+    void deleteData() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void migrateTest() {
+        var rsa = saveLegacy(Base64.getEncoder().encodeToString(bytes("an RSA value")));
+        var envelope = saveLegacy("v2:" + Base64.getEncoder().encodeToString(bytes("an envelope")));
+        for (int i = 0; i < 3; i++) {
+            saveLegacy(Base64.getEncoder().encodeToString(bytes("value " + i)));
+        }
+        var binary = repository.save(new Data(0, bytes("\u0001already binary")));
+
+        assertEquals(5, migration.migrate());
+
+        assertArrayEquals(bytes("\u0001an RSA value"), repository.findById(rsa.getId()).get().getData());
+        assertArrayEquals(bytes("\u0002an envelope"), repository.findById(envelope.getId()).get().getData());
+        assertArrayEquals(bytes("\u0001already binary"), repository.findById(binary.getId()).get().getData());
+        assertTrue(repository.findAll().stream().allMatch(data -> data.getLegacyData() == null));
+        assertEquals(0, migration.migrate());
+    }
+
+    @Test
+    void migrateInvalidatesCacheTest() {
+        var legacy = saveLegacy(Base64.getEncoder().encodeToString(bytes("a cached value")));
+        decryptedDataCache.get(legacy.getId(), id -> new DecryptedData(id, legacy.getVersion(), "a cached value"));
+
+        assertEquals(1, migration.migrate());
+
+        // the value was cached with the version before the conversion
+        assertTrue(decryptedDataCache.getIfPresent(legacy.getId()).isEmpty());
+    }
+
+    @Test
+    void updatedRecordIsNotMigratedTest() {
+        var legacy = saveLegacy(Base64.getEncoder().encodeToString(bytes("an old value")));
+        repository.updateData(legacy.getId(), bytes("\u0001a new value"), null);
+
+        var migrated = repository.migrateData(legacy.getId(), bytes("\u0001an old value"), legacy.getLegacyData());
+
+        assertEquals(0, migrated);
+        assertArrayEquals(bytes("\u0001a new value"), repository.findById(legacy.getId()).get().getData());
+    }
+
+    @Test
+    void updateIncrementsVersionTest() {
+        var data = repository.save(new Data(0, bytes("\u0001a value")));
+        repository.updateData(data.getId(), bytes("\u0001another value"), null);
+        var legacy = saveLegacy(Base64.getEncoder().encodeToString(bytes("a legacy value")));
+        migration.migrate();
+
+        assertEquals(data.getVersion() + 1, repository.findById(data.getId()).get().getVersion());
+        assertEquals(legacy.getVersion() + 1, repository.findById(legacy.getId()).get().getVersion());
+    }
+
+    @Test
+    void invalidValueTest() {
+        var failedBefore = migration.getFailed();
+        var invalid = saveLegacy("not Base64!");
+
+        assertEquals(0, migration.migrate());
+
+        assertEquals(failedBefore + 1, migration.getFailed());
+        assertEquals("not Base64!", repository.findById(invalid.getId()).get().getLegacyData());
+    }
+
+    private Data saveLegacy(String legacyData) {
+        var data = new Data();
+        data.setLegacyData(legacyData);
+        return repository.save(data);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,122 @@
+package com.zica.example.service;
+
+import com.zica.example.db.Data;
+import com.zica.example.exception.CryptographyException;
+import com.zica.example.model.NewData;
+import com.zica.example.repository.DataRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = "request-execution-mode=async")
+class DataServiceAsyncTest {
+
+    private static final byte[] ENCRYPTED = "encrypted".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private DataService service;
+
+    @MockBean
+    private DataRepository repository;
+
+    @MockBean
+    private RSACryptographyService cryptographyService;
+
+    @Test
+    void getDecryptedDataAsyncTest() throws Exception {
+        var id = 10L;
+        var databaseThread = new AtomicReference<String>();
+        var cryptographyThread = new AtomicReference<String>();
+
+        when(repository.findById(eq(id))).thenAnswer(invocation -> {
+            databaseThread.set(Thread.currentThread().getName());
+            return Optional.of(new Data(id, ENCRYPTED));
+        });
+        when(cryptographyService.decryptFromBytes(eq(ENCRYPTED))).thenAnswer(invocation -> {
+            cryptographyThread.set(Thread.currentThread().getName());
+            return "decrypted";
+        });
+
+        var returnedData = service.getDecryptedDataAsync(id).join();
+
+        assertEquals("decrypted", returnedData.get());
+        assertTrue(databaseThread.get().startsWith("database-"));
+        assertTrue(cryptographyThread.get().startsWith("cryptography-"));
+    }
+
+    @Test
+    void getDecryptedDataAsyncNotModifiedTest() {
+        var data = new Data(10L, ENCRYPTED);
+        data.setVersion(5);
+        when(repository.findById(eq(10L))).thenReturn(Optional.of(data));
+
+        var returnedData = service.getDecryptedDataAsync(10L, 5).join();
+
+        assertEquals(5, returnedData.get().getVersion());
+        assertNull(returnedData.get().getValue());
+        verifyZeroInteractions(cryptographyService);
+    }
+
+    @Test
+    void getDecryptedDataAsyncUnexistentTest() {
+        when(repository.findById(eq(10L))).thenReturn(Optional.empty());
+
+        assertTrue(service.getDecryptedDataAsync(10L).join().isEmpty());
+    }
+
+    @Test
+    void saveDataAsyncTest() throws Exception {
+        var newData = new NewData().data("a value");
+
+        when(cryptographyService.encryptToBytes(eq("a value"))).thenReturn(ENCRYPTED);
+        when(repository.save(any(Data.class))).thenAnswer(invocation -> {
+            Data data = invocation.getArgument(0);
+            return new Data(5, data.getData());
+        });
+
+        var saved = service.saveDataAsync(newData).join();
+
+        assertEquals(5, saved.getId());
+        assertArrayEquals(ENCRYPTED, saved.getData());
+    }
+
+    @Test
+    void saveDataAsyncCryptographyErrorTest() throws Exception {
+        when(cryptographyService.encryptToBytes(any())).thenThrow(new RuntimeException("a weird exception"));
+
+        var future = service.saveDataAsync(new NewData().data("a value"));
+
+        var exception = assertThrows(CompletionException.class, future::join);
+        assertTrue(exception.getCause() instanceof CryptographyException);
+    }
+
+    @Test
+    void updateDataValueAsyncTest() throws Exception {
+        when(cryptographyService.encryptToBytes(eq("a value"))).thenReturn(ENCRYPTED);
+        when(repository.updateData(eq(7L), eq(ENCRYPTED), any())).thenReturn(1);
+
+        var updated = service.updateDataValueAsync(7L, new NewData().data("a value")).join();
+
+        assertArrayEquals(ENCRYPTED, updated.get().getData());
+    }
+
+    @Test
+    void updateDataValueAsyncNotExistsTest() throws Exception {
+        when(cryptographyService.encryptToBytes(eq("a value"))).thenReturn(ENCRYPTED);
+        when(repository.updateData(eq(7L), eq(ENCRYPTED), any())).thenReturn(0);
+
+        assertTrue(service.updateDataValueAsync(7L, new NewData().data("a value")).join().isEmpty());
+    }
+}
@@ -0,0 +1,59 @@
+package com.zica.example.service;
+
+import com.zica.example.db.Data;
+import com.zica.example.model.NewData;
+import com.zica.example.repository.DataRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {"request-execution-mode=async", "decrypted-cache-enabled=true"})
+class DataServiceCacheTest {
+
+    private static final byte[] OLD_VALUE = "old encrypted".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NEW_VALUE = "new encrypted".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private DataService service;
+
+    @MockBean
+    private DataRepository repository;
+
+    @MockBean
+    private RSACryptographyService cryptographyService;
+
+    @Test
+    void updateBetweenReadAndLoadTest() throws Exception {
+        var id = 10L;
+        var oldData = new Data(id, OLD_VALUE);
+        oldData.setVersion(1);
+        var newData = new Data(id, NEW_VALUE);
+        newData.setVersion(2);
+
+        when(cryptographyService.decryptFromBytes(eq(OLD_VALUE))).thenReturn("old value");
+        when(cryptographyService.decryptFromBytes(eq(NEW_VALUE))).thenReturn("new value");
+        when(cryptographyService.encryptToBytes(eq("new value"))).thenReturn(NEW_VALUE);
+        when(repository.updateData(eq(id), eq(NEW_VALUE), any())).thenReturn(1);
+        when(repository.findById(eq(id))).thenAnswer(invocation -> {
+            // the record is updated once it's read, before its value is loaded in the cache
+            when(repository.findById(eq(id))).thenReturn(Optional.of(newData));
+            service.updateDataValue(id, new NewData().data("new value"));
+            return Optional.of(oldData);
+        });
+
+        var read = service.getDecryptedDataAsync(id, DecryptedData.NO_VERSION).join();
+
+        assertEquals("new value", read.get().getValue());
+        assertEquals(2, read.get().getVersion());
+        assertEquals("new value", service.getDecryptedDataAsync(id).join().get());
+    }
+}
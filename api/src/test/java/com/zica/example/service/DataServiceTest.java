@@ -1,7 +1,10 @@
 package com.zica.example.service;
 
 import com.zica.example.db.Data;
+import com.zica.example.db.DataRow;
 import com.zica.example.exception.CryptographyException;
+import com.zica.example.model.DataBatchResult;
+import com.zica.example.model.DecryptedDataResult;
 import com.zica.example.model.NewData;
 import com.zica.example.repository.DataRepository;
 import org.junit.jupiter.api.Assertions;
@@ -10,11 +13,26 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -30,23 +48,38 @@ class DataServiceTest {
     @MockBean
     private RSACryptographyService cryptographyService;
 
+    @Autowired
+    private BlindIndex blindIndex;
+
     @Test
     void getDecryptedDataTest() throws Exception {
         var id = 10L;
-        var encrypted = "jdodjfu9dsufuafud9sfu98";
+        var encrypted = bytes("jdodjfu9dsufuafud9sfu98");
         var decrypted = "a nice value";
         var data = new Data(id, encrypted);
 
         when(repository.findById(eq(id))).thenReturn(Optional.of(data));
-        when(cryptographyService.decrypt(eq(encrypted))).thenReturn(decrypted);
+        when(cryptographyService.decryptFromBytes(eq(encrypted))).thenReturn(decrypted);
 
         var returnedData = service.getDecryptedData(id);
 
-        verify(cryptographyService).decrypt(eq(encrypted));
+        verify(cryptographyService).decryptFromBytes(eq(encrypted));
         verify(repository).findById(eq(id));
         assertTrue(returnedData.isPresent());
-        Assertions.assertEquals(id, returnedData.get().getId());
-        Assertions.assertEquals(decrypted, returnedData.get().getData());
+        Assertions.assertEquals(decrypted, returnedData.get());
+    }
+
+    @Test
+    void getDecryptedLegacyDataTest() throws Exception {
+        var id = 10L;
+        var data = new Data();
+        data.setId(id);
+        data.setLegacyData(Base64.getEncoder().encodeToString(bytes("an RSA value")));
+
+        when(repository.findById(eq(id))).thenReturn(Optional.of(data));
+        when(cryptographyService.decryptFromBytes(eq(bytes("\u0001an RSA value")))).thenReturn("decrypted");
+
+        assertEquals("decrypted", service.getDecryptedData(id).get());
     }
 
     @Test
@@ -64,34 +97,92 @@ class DataServiceTest {
     @Test
     void getDecryptedDataCryptographyErrorTest() throws Exception {
         var id = 10L;
-        var encrypted = "jdodjfu9dsufuafud9sfu98";
+        var encrypted = bytes("jdodjfu9dsufuafud9sfu98");
         var data = new Data(id, encrypted);
 
         when(repository.findById(eq(id))).thenReturn(Optional.of(data));
-        when(cryptographyService.decrypt(eq(encrypted))).thenThrow(new RuntimeException("a very serious error..."));
+        when(cryptographyService.decryptFromBytes(eq(encrypted)))
+                .thenThrow(new RuntimeException("a very serious error..."));
 
         assertThrows(CryptographyException.class, () -> service.getDecryptedData(id));
 
         verify(repository).findById(eq(id));
-        verify(cryptographyService).decrypt(eq(encrypted));
+        verify(cryptographyService).decryptFromBytes(eq(encrypted));
+    }
+
+    @Test
+    void getDecryptedDataBatchTest() throws Exception {
+        var ids = List.of(1L, 2L, 3L);
+
+        when(repository.findAllById(eq(ids)))
+                .thenReturn(List.of(new Data(1L, bytes("encrypted 1")), new Data(3L, bytes("encrypted 3"))));
+        when(cryptographyService.decryptFromBytes(eq(bytes("encrypted 1")))).thenReturn("decrypted 1");
+        when(cryptographyService.decryptFromBytes(eq(bytes("encrypted 3"))))
+                .thenThrow(new RuntimeException("a broken value"));
+
+        var results = new ConcurrentHashMap<Long, DecryptedDataResult>();
+        service.getDecryptedData(ids, result -> results.put(result.getId(), result)).join();
+
+        verify(repository).findAllById(eq(ids));
+        assertEquals(3, results.size());
+        assertEquals("decrypted 1", results.get(1L).getData());
+        assertNull(results.get(1L).getError());
+        assertNotNull(results.get(2L).getError());
+        assertNull(results.get(3L).getData());
+        assertNotNull(results.get(3L).getError());
+    }
+
+    @Test
+    void forEachDataTest() {
+        when(repository.streamRowsByIdGreaterThan(eq(5L))).thenReturn(Stream.of(new DataRow(6L, bytes("first"), null),
+                new DataRow(7L, bytes("second"), null), new DataRow(8L, bytes("third"), null)));
+
+        var read = new ArrayList<DataRow>();
+        service.forEachData(5L, 2L, read::add);
+
+        verify(repository).streamRowsByIdGreaterThan(eq(5L));
+        assertEquals(2, read.size());
+        assertEquals(7L, read.get(1).getId());
     }
 
     @Test
     void saveDataTest() throws Exception {
         var id = 2L;
         var unencrypted = "some string";
-        var encrypted = "(*&S(D*&ASDSAD*(AS";
+        var encrypted = bytes("(*&S(D*&ASDSAD*(AS");
         var newData = new NewData().data(unencrypted);
 
         when(repository.save(any(Data.class))).thenReturn(new Data(id, encrypted));
-        when(cryptographyService.encrypt(eq(unencrypted))).thenReturn(encrypted);
+        when(cryptographyService.encryptToBytes(eq(unencrypted))).thenReturn(encrypted);
 
         var savedData = service.saveData(newData);
 
         verify(repository).save(any(Data.class));
-        verify(cryptographyService).encrypt(eq(unencrypted));
+        verify(cryptographyService).encryptToBytes(eq(unencrypted));
         Assertions.assertEquals(id, savedData.getId());
-        Assertions.assertEquals(encrypted, savedData.getData());
+        Assertions.assertArrayEquals(encrypted, savedData.getData());
+    }
+
+    @Test
+    void saveDataValueIndexTest() throws Exception {
+        when(repository.save(any(Data.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(cryptographyService.encryptToBytes(eq("some string"))).thenReturn(bytes("encrypted"));
+
+        var savedData = service.saveData(new NewData().data("some string"));
+
+        assertArrayEquals(blindIndex.of("some string"), savedData.getValueIndex());
+        assertEquals(32, savedData.getValueIndex().length);
+        assertFalse(Arrays.equals(blindIndex.of("some string"), blindIndex.of("Some string")));
+    }
+
+    @Test
+    void findDataByValueTest() throws Exception {
+        var found = List.of(new DataRow(6L, bytes("first"), null), new DataRow(9L, bytes("second"), null));
+        when(repository.findRowsByValueIndex(eq(blindIndex.of("a value")), eq(5L), any())).thenReturn(found);
+
+        assertEquals(found, service.findDataByValue("a value", 5L, 10));
+
+        verify(cryptographyService, never()).decryptFromBytes(any());
     }
 
     @Test
@@ -99,32 +190,66 @@ class DataServiceTest {
         var unencrypted = "some string";
         var newData = new NewData().data(unencrypted);
 
-        when(cryptographyService.encrypt(eq(unencrypted))).thenThrow(new RuntimeException("a heavy exception"));
+        when(cryptographyService.encryptToBytes(eq(unencrypted))).thenThrow(new RuntimeException("a heavy exception"));
 
         assertThrows(CryptographyException.class, () -> service.saveData(newData));
 
-        verify(cryptographyService).encrypt(eq(unencrypted));
+        verify(cryptographyService).encryptToBytes(eq(unencrypted));
     }
 
+    @Test
+    void saveDataBatchTest() throws Exception {
+        var items = IntStream.range(0, 120)
+                .mapToObj(i -> i == 7 ? new NewData() : new NewData().data("value " + i))
+                .collect(Collectors.toList());
+
+        when(cryptographyService.encryptToBytes(anyString()))
+                .thenAnswer(invocation -> bytes("encrypted " + invocation.getArgument(0)));
+        when(cryptographyService.encryptToBytes(eq("value 9"))).thenThrow(new RuntimeException("a failed encryption"));
+        when(repository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Data> toSave = invocation.getArgument(0);
+            return toSave.stream()
+                    .map(data -> new Data(ids.incrementAndGet(), data.getData()))
+                    .collect(Collectors.toList());
+        });
+
+        var results = new ArrayList<DataBatchResult>();
+        service.saveData(items.iterator(), results::add);
+
+        assertEquals(120, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(Integer.valueOf(i), results.get(i).getIndex());
+        }
+        assertNotNull(results.get(7).getError());
+        assertNull(results.get(7).getId());
+        assertNotNull(results.get(9).getError());
+        assertEquals(Base64.getEncoder().encodeToString(bytes("encrypted value 8")), results.get(8).getData());
+        assertNotNull(results.get(8).getId());
+        // chunks of the JDBC batch size
+        verify(repository, times(3)).saveAll(anyList());
+    }
+
+    private final AtomicLong ids = new AtomicLong();
+
     @Test
     void updateDataValueTest() throws Exception{
         var id = 48L;
         var unencrypted = "Hello!!!111";
-        var encrypted = "//8dsaf98sdfsad89f78asdf6s7df";
+        var encrypted = bytes("//8dsaf98sdfsad89f78asdf6s7df");
         var newData = new NewData().data(unencrypted);
 
-        when(repository.existsById(eq(id))).thenReturn(true);
-        when(repository.save(any(Data.class))).thenReturn(new Data(id, encrypted));
-        when(cryptographyService.encrypt(eq(unencrypted))).thenReturn(encrypted);
+        when(repository.updateData(eq(id), eq(encrypted), eq(blindIndex.of(unencrypted)))).thenReturn(1);
+        when(cryptographyService.encryptToBytes(eq(unencrypted))).thenReturn(encrypted);
 
         var updatedValue = service.updateDataValue(id, newData);
 
-        verify(repository).existsById(eq(id));
-        verify(repository).save(any(Data.class));
-        verify(cryptographyService).encrypt(eq(unencrypted));
+        verify(repository).updateData(eq(id), eq(encrypted), eq(blindIndex.of(unencrypted)));
+        verify(repository, never()).existsById(any());
+        verify(repository, never()).save(any(Data.class));
+        verify(cryptographyService).encryptToBytes(eq(unencrypted));
         assertTrue(updatedValue.isPresent());
         Assertions.assertEquals(id, updatedValue.get().getId());
-        Assertions.assertEquals(encrypted, updatedValue.get().getData());
+        Assertions.assertArrayEquals(encrypted, updatedValue.get().getData());
 
     }
 
@@ -132,29 +257,33 @@ class DataServiceTest {
     void updateDataValueCryptographyErrorTest() throws Exception{
         var id = 48L;
         var unencrypted = "Helloooo";
-        var encrypted = "//8dsaf98sdfsad89f78asdf6s7df";
         var newData = new NewData().data(unencrypted);
 
-        when(repository.existsById(eq(id))).thenReturn(true);
-        when(cryptographyService.encrypt(eq(unencrypted))).thenThrow(new RuntimeException("a weird exception"));
+        when(cryptographyService.encryptToBytes(eq(unencrypted))).thenThrow(new RuntimeException("a weird exception"));
 
         assertThrows(CryptographyException.class, () -> service.updateDataValue(id, newData));
 
-        verify(repository).existsById(eq(id));
-        verify(cryptographyService).encrypt(eq(unencrypted));
+        verify(repository, never()).updateData(anyLong(), any(), any());
+        verify(cryptographyService).encryptToBytes(eq(unencrypted));
 
     }
 
     @Test
-    void updateDataValueNotExistsTest() {
+    void updateDataValueNotExistsTest() throws Exception {
         var id = 48L;
         var newData = new NewData();
+        newData.setData("Hello");
 
-        when(repository.existsById(eq(id))).thenReturn(false);
+        when(cryptographyService.encryptToBytes(eq("Hello"))).thenReturn(bytes("encrypted"));
+        when(repository.updateData(eq(id), eq(bytes("encrypted")), any())).thenReturn(0);
 
         var updatedValue = service.updateDataValue(id, newData);
 
-        verify(repository).existsById(eq(id));
+        verify(repository).updateData(eq(id), eq(bytes("encrypted")), any());
         assertTrue(updatedValue.isEmpty());
     }
-}
\ No newline at end of file
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,49 @@
+package com.zica.example.service;
+
+import com.zica.example.db.Data;
+import com.zica.example.model.NewData;
+import com.zica.example.repository.DataRepository;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"spring.jpa.properties.hibernate.generate_statistics=true",
+        "blind-index-backfill-enabled=false", "ciphertext-migration-enabled=false", "reencryption-enabled=false"})
+class DataUpdateStatementsTest {
+
+    @Autowired
+    private DataService service;
+
+    @Autowired
+    private DataRepository dataRepository;
+
+    @Autowired
+    private RSACryptographyService cryptographyService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void singleStatementTest() throws Exception {
+        var statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        var newData = new NewData().data("a value to be updated");
+        var id = service.saveData(newData).getId();
+
+        statistics.clear();
+        assertTrue(service.updateDataValue(id, newData).isPresent());
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        // the previous path: existsById, then a save that merges the detached entity with another SELECT
+        var detached = new Data(id, cryptographyService.encryptToBytes(newData.getData()));
+        detached.setVersion(dataRepository.findById(id).orElseThrow().getVersion());
+        statistics.clear();
+        assertTrue(dataRepository.existsById(id));
+        dataRepository.save(detached);
+        assertEquals(3, statistics.getPrepareStatementCount());
+    }
+}
@@ -0,0 +1,144 @@
+package com.zica.example.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecryptedDataCacheTest {
+
+    @Test
+    void cachedValueTest() {
+        var cache = new DecryptedDataCache(true, 1024, 60);
+        var loads = new AtomicInteger();
+
+        var first = cache.get(1L, id -> value("value " + loads.incrementAndGet()));
+        var second = cache.get(1L, id -> value("value " + loads.incrementAndGet()));
+
+        assertEquals("value 1", first.get().getValue());
+        assertEquals("value 1", second.get().getValue());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void missingValueIsNotCachedTest() {
+        var cache = new DecryptedDataCache(true, 1024, 60);
+        var loads = new AtomicInteger();
+
+        assertTrue(cache.get(1L, id -> {
+            loads.incrementAndGet();
+            return null;
+        }).isEmpty());
+        assertEquals("loaded", cache.get(1L, id -> value("loaded")).get().getValue());
+    }
+
+    @Test
+    void invalidateTest() {
+        var cache = new DecryptedDataCache(true, 1024, 60);
+
+        cache.get(1L, id -> value("old value"));
+        cache.invalidate(1L);
+
+        assertEquals("new value", cache.get(1L, id -> value("new value")).get().getValue());
+    }
+
+    @Test
+    void disabledTest() {
+        var cache = new DecryptedDataCache(false, 1024, 60);
+        var loads = new AtomicInteger();
+
+        cache.get(1L, id -> value("value " + loads.incrementAndGet()));
+        var second = cache.get(1L, id -> value("value " + loads.incrementAndGet()));
+
+        assertFalse(cache.isEnabled());
+        assertEquals("value 2", second.get().getValue());
+    }
+
+    @Test
+    void sizeLimitTest() {
+        // room for 2 values of 4 characters
+        var cache = new DecryptedDataCache(true, 16, 60);
+        var loads = new AtomicInteger();
+
+        for (long id = 0; id < 10; id++) {
+            cache.get(id, key -> value("abcd"));
+        }
+        for (long id = 0; id < 10; id++) {
+            cache.get(id, key -> {
+                loads.incrementAndGet();
+                return value("abcd");
+            });
+        }
+
+        assertTrue(loads.get() >= 8);
+    }
+
+    @Test
+    void concurrentMissesLoadOnceTest() throws Exception {
+        var cache = new DecryptedDataCache(true, 1024, 60);
+        var loads = new AtomicInteger();
+        var loading = new CountDownLatch(1);
+        var executor = Executors.newFixedThreadPool(8);
+
+        try {
+            var reads = new ArrayList<Future<String>>();
+            for (int i = 0; i < 8; i++) {
+                reads.add(executor.submit(() -> cache.get(1L, id -> {
+                    loads.incrementAndGet();
+                    try {
+                        loading.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return value("value");
+                }).get().getValue()));
+            }
+
+            Thread.sleep(100);
+            loading.countDown();
+
+            for (var read : reads) {
+                assertEquals("value", read.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void metricsTest() {
+        var cache = new DecryptedDataCache(true, 1024, 60);
+        var registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+
+        cache.get(1L, id -> value("value"));
+        cache.get(1L, id -> value("value"));
+
+        assertEquals(1, registry.get("cache.gets").tag("cache", "decryptedData").tag("result", "hit")
+                .functionCounter().count());
+        assertEquals(1, registry.get("cache.gets").tag("cache", "decryptedData").tag("result", "miss")
+                .functionCounter().count());
+    }
+
+    @Test
+    void versionTest() {
+        var cache = new DecryptedDataCache(true, 1024, 60);
+
+        cache.get(1L, id -> new DecryptedData(id, 3, "value"));
+
+        assertEquals(3, cache.getIfPresent(1L).get().getVersion());
+    }
+
+    private static DecryptedData value(String value) {
+        return new DecryptedData(1, 0, value);
+    }
+}
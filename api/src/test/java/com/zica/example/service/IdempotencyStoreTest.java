@@ -0,0 +1,162 @@
+package com.zica.example.service;
+
+import com.zica.example.db.Data;
+import com.zica.example.exception.IdempotencyKeyReusedException;
+import com.zica.example.exception.InvalidIdempotencyKeyException;
+import com.zica.example.model.NewData;
+import com.zica.example.repository.DataRepository;
+import com.zica.example.repository.IdempotentRequestRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"idempotency-table-enabled=true", "blind-index-backfill-enabled=false",
+        "ciphertext-migration-enabled=false", "reencryption-enabled=false"})
+class IdempotencyStoreTest {
+
+    private static final byte[] FINGERPRINT = bytes("a fingerprint");
+
+    @Autowired
+    private DataService service;
+
+    @Autowired
+    private DataRepository dataRepository;
+
+    @Autowired
+    private IdempotentRequestRepository idempotentRequestRepository;
+
+    @Autowired
+    private AutowireCapableBeanFactory beanFactory;
+
+    private final AtomicInteger saves = new AtomicInteger();
+
+    // the keys stay in the memory of the store between the tests
+    private final String key = UUID.randomUUID().toString();
+
+    @BeforeEach
+    void deleteData() {
+        dataRepository.deleteAll();
+        idempotentRequestRepository.deleteAll();
+    }
+
+    @Test
+    void replayTest() {
+        var first = service.saveDataAsync(new NewData().data("a value"), key).join();
+        var retry = service.saveDataAsync(new NewData().data("a value"), key).join();
+        var other = service.saveDataAsync(new NewData().data("a value"), key + "-other").join();
+
+        assertEquals(first.getId(), retry.getId());
+        assertArrayEquals(first.getData(), retry.getData());
+        assertNotEquals(first.getId(), other.getId());
+        assertEquals(2, dataRepository.count());
+        assertEquals(2, idempotentRequestRepository.count());
+    }
+
+    @Test
+    void withoutKeyTest() {
+        service.saveDataAsync(new NewData().data("a value"), null).join();
+        service.saveDataAsync(new NewData().data("a value"), null).join();
+
+        assertEquals(2, dataRepository.count());
+        assertEquals(0, idempotentRequestRepository.count());
+    }
+
+    @Test
+    void reusedKeyTest() {
+        service.saveDataAsync(new NewData().data("a value"), key).join();
+
+        var e = assertThrows(CompletionException.class,
+                () -> service.saveDataAsync(new NewData().data("another value"), key).join());
+        assertTrue(e.getCause() instanceof IdempotencyKeyReusedException);
+        assertEquals(1, dataRepository.count());
+    }
+
+    @Test
+    void coalesceTest() {
+        var store = new IdempotencyStore(true, 100, 60, false);
+        var saving = new CompletableFuture<Data>();
+
+        var first = store.save(key, FINGERPRINT, () -> this.save(saving));
+        var concurrent = store.save(key, FINGERPRINT, () -> this.save(saving));
+        assertFalse(concurrent.isDone());
+
+        saving.complete(new Data(5, bytes("encrypted")));
+
+        assertEquals(5, first.join().getId());
+        assertEquals(5, concurrent.join().getId());
+        assertEquals(5, store.save(key, FINGERPRINT, () -> this.save(saving)).join().getId());
+        assertEquals(1, saves.get());
+        assertEquals(2, store.getReplayed());
+    }
+
+    @Test
+    void failedSaveTest() {
+        var store = new IdempotencyStore(true, 100, 60, false);
+
+        var failed = store.save(key, FINGERPRINT,
+                () -> this.save(CompletableFuture.failedFuture(new IllegalStateException("a failure"))));
+        assertThrows(CompletionException.class, failed::join);
+
+        var retry = store.save(key, FINGERPRINT,
+                () -> this.save(CompletableFuture.completedFuture(new Data(5, bytes("encrypted")))));
+        assertEquals(5, retry.join().getId());
+        assertEquals(2, saves.get());
+    }
+
+    @Test
+    void invalidKeyTest() {
+        var store = new IdempotencyStore(true, 100, 60, false);
+
+        assertThrows(InvalidIdempotencyKeyException.class, () -> store.save("", FINGERPRINT, null));
+        assertThrows(InvalidIdempotencyKeyException.class,
+                () -> store.save("k".repeat(IdempotencyStore.MAX_KEY_LENGTH + 1), FINGERPRINT, null));
+    }
+
+    @Test
+    void disabledTest() {
+        var store = new IdempotencyStore(false, 100, 60, false);
+        var saved = CompletableFuture.completedFuture(new Data(5, bytes("encrypted")));
+
+        store.save(key, FINGERPRINT, () -> this.save(saved)).join();
+        store.save(key, FINGERPRINT, () -> this.save(saved)).join();
+
+        assertEquals(2, saves.get());
+    }
+
+    @Test
+    void restartTest() {
+        var first = service.saveDataAsync(new NewData().data("a value"), key).join();
+
+        // a new instance only has the keys of the table
+        var restarted = new IdempotencyStore(true, 100, 60, true);
+        beanFactory.autowireBean(restarted);
+        var fingerprint = beanFactory.getBean(BlindIndex.class).of("a value");
+
+        var retry = restarted.save(key, fingerprint,
+                () -> this.save(CompletableFuture.completedFuture(new Data(5, bytes("encrypted"))))).join();
+
+        assertEquals(first.getId(), retry.getId());
+        assertArrayEquals(first.getData(), retry.getData());
+        assertEquals(0, saves.get());
+        assertThrows(CompletionException.class, () -> restarted.save(key, FINGERPRINT, null).join());
+    }
+
+    private CompletableFuture<Data> save(CompletableFuture<Data> result) {
+        saves.incrementAndGet();
+        return result;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
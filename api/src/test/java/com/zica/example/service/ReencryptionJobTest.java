@@ -0,0 +1,128 @@
+package com.zica.example.service;
+
+import com.zica.example.db.Data;
+import com.zica.example.db.ReencryptionCheckpoint;
+import com.zica.example.repository.DataRepository;
+import com.zica.example.repository.ReencryptionCheckpointRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"reencryption-enabled=false", "reencryption-chunk-size=2",
+        "reencryption-records-per-second=0", "ciphertext-migration-enabled=false", "decrypted-cache-enabled=true"})
+@ActiveProfiles("key-rotation")
+class ReencryptionJobTest {
+
+    @Autowired
+    private ReencryptionJob job;
+
+    @Autowired
+    private DataRepository repository;
+
+    @Autowired
+    private ReencryptionCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private RSACryptographyService cryptographyService;
+
+    @Autowired
+    private DecryptedDataCache decryptedDataCache;
+
+    @Value("${previous-rsa-public-key}")
+    private String previousPublicKey;
+
+    @Value("${previous-rsa-private-key}")
+    private String previousPrivateKey;
+
+    private RSACryptographyServiceImpl previousCryptographyService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repository.deleteAll();
+        checkpointRepository.deleteAll();
+        previousCryptographyService = new RSACryptographyServiceImpl(previousPublicKey, previousPrivateKey);
+    }
+
+    @Test
+    void reencryptTest() throws Exception {
+        var keyed = save(previousCryptographyService.encryptToBytes("a keyed value"));
+        var unkeyed = save(CiphertextFormat.withFormat(CiphertextFormat.RSA,
+                previousCryptographyService.encrypt(bytes("a value without key id"))));
+        var legacy = new Data();
+        legacy.setLegacyData(Base64.getEncoder().encodeToString(
+                previousCryptographyService.encrypt(bytes("a legacy value"))));
+        legacy = repository.save(legacy);
+        var current = save(cryptographyService.encryptToBytes("a current value"));
+
+        assertEquals(3, job.reencrypt());
+
+        assertEquals("a keyed value", decrypt(keyed));
+        assertEquals("a value without key id", decrypt(unkeyed));
+        assertEquals("a legacy value", decrypt(legacy));
+        assertArrayEquals(current.getData(), repository.findById(current.getId()).get().getData());
+        assertTrue(repository.findAll().stream().allMatch(data -> CiphertextFormat.keyIdOf(data.getData()) == 2));
+        assertTrue(checkpointRepository.findById(2).get().isCompleted());
+        assertEquals(0, job.reencrypt());
+    }
+
+    @Test
+    void resumeTest() throws Exception {
+        var first = save(previousCryptographyService.encryptToBytes("first"));
+        var second = save(previousCryptographyService.encryptToBytes("second"));
+        var third = save(previousCryptographyService.encryptToBytes("third"));
+        var checkpoint = new ReencryptionCheckpoint(2);
+        checkpoint.setLastId(second.getId());
+        checkpointRepository.save(checkpoint);
+
+        // the records up to the checkpoint were re-encrypted before the restart
+        assertEquals(1, job.reencrypt());
+
+        assertArrayEquals(first.getData(), repository.findById(first.getId()).get().getData());
+        assertEquals(2, CiphertextFormat.keyIdOf(repository.findById(third.getId()).get().getData()));
+        assertEquals(1, job.getProgress());
+    }
+
+    @Test
+    void reencryptInvalidatesCacheTest() throws Exception {
+        var data = save(previousCryptographyService.encryptToBytes("a cached value"));
+        decryptedDataCache.get(data.getId(), id -> new DecryptedData(id, data.getVersion(), "a cached value"));
+
+        assertEquals(1, job.reencrypt());
+
+        // the value was cached with the version before the re-encryption
+        assertTrue(decryptedDataCache.getIfPresent(data.getId()).isEmpty());
+    }
+
+    @Test
+    void updatedRecordIsNotReencryptedTest() throws Exception {
+        var data = save(previousCryptographyService.encryptToBytes("an old value"));
+        var updated = cryptographyService.encryptToBytes("a new value");
+        repository.updateData(data.getId(), updated, null);
+
+        var reencrypted = repository.reencryptData(data.getId(), cryptographyService.encryptToBytes("an old value"),
+                data.getData());
+
+        assertEquals(0, reencrypted);
+        assertArrayEquals(updated, repository.findById(data.getId()).get().getData());
+    }
+
+    private Data save(byte[] value) {
+        return repository.save(new Data(0, value));
+    }
+
+    private String decrypt(Data data) throws Exception {
+        return cryptographyService.decryptFromBytes(repository.findById(data.getId()).get().getData());
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
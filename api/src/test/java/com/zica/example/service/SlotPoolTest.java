@@ -0,0 +1,36 @@
+package com.zica.example.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlotPoolTest {
+
+    @Test
+    void takeAndGiveTest() {
+        var pool = new SlotPool<String>(2);
+        assertNull(pool.take());
+
+        pool.give("first");
+        pool.give("second");
+        // every slot is taken, it's dropped
+        pool.give("third");
+        assertEquals(2, pool.idle());
+
+        var taken = pool.take();
+        assertTrue("first".equals(taken) || "second".equals(taken));
+        assertNotNull(pool.take());
+        assertNull(pool.take());
+        assertEquals(0, pool.idle());
+    }
+
+    @Test
+    void emptyPoolTest() {
+        var pool = new SlotPool<String>(0);
+        pool.give("an instance");
+
+        assertNull(pool.take());
+        assertEquals(0, pool.idle());
+        assertThrows(IllegalArgumentException.class, () -> new SlotPool<String>(-1));
+    }
+}
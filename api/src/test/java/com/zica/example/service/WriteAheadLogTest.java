@@ -0,0 +1,180 @@
+package com.zica.example.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+
+    private static final int SIZE = 4096;
+
+    private Path path;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        path = Files.createTempFile("write-behind", ".log");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Test
+    void replayTest() throws IOException {
+        try (var log = WriteAheadLog.open(path, SIZE)) {
+            assertTrue(log.getReplayed().isEmpty());
+            var first = log.append(1, new byte[]{1, 2, 3});
+            log.append(2, new byte[]{4});
+            var third = log.append(3, new byte[]{5, 6});
+            log.sync(third);
+            log.drained(List.of(first));
+        }
+
+        // the records after the drained one are replayed, in order and with their value
+        try (var log = WriteAheadLog.open(path, SIZE)) {
+            assertEquals(List.of(2L, 3L), ids(log.getReplayed()));
+            assertArrayEquals(new byte[]{5, 6}, log.getReplayed().get(1).getData());
+            log.drained(log.getReplayed());
+            assertEquals(0, log.getUsage());
+        }
+
+        // once every record is drained the log starts over, and the older records are not replayed
+        try (var log = WriteAheadLog.open(path, SIZE)) {
+            assertTrue(log.getReplayed().isEmpty());
+            var record = log.append(4, new byte[]{7});
+            log.sync(record);
+        }
+        try (var log = WriteAheadLog.open(path, SIZE)) {
+            assertEquals(List.of(4L), ids(log.getReplayed()));
+        }
+    }
+
+    @Test
+    void incompleteRecordTest() throws IOException {
+        try (var log = WriteAheadLog.open(path, SIZE)) {
+            log.append(1, new byte[]{1});
+            var second = log.append(2, new byte[]{2, 2, 2, 2});
+            log.sync(second);
+        }
+
+        // a crash in the middle of the second record: its last byte of data never reached the disk. It starts
+        // after the header and the first record, and its data after its length, generation and id
+        var secondStart = 32 + 21;
+        try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0}), secondStart + 16 + 3);
+        }
+
+        try (var log = WriteAheadLog.open(path, SIZE)) {
+            assertEquals(List.of(1L), ids(log.getReplayed()));
+            var record = log.append(3, new byte[]{3});
+            log.sync(record);
+        }
+        try (var log = WriteAheadLog.open(path, SIZE)) {
+            assertEquals(List.of(1L, 3L), ids(log.getReplayed()));
+        }
+    }
+
+    @Test
+    void fullTest() throws IOException {
+        try (var log = WriteAheadLog.open(path, 32 + 100)) {
+            var first = log.append(1, new byte[50]);
+            assertNotNull(first);
+            assertNull(log.append(2, new byte[50]));
+            assertEquals(0.7, log.getUsage(), 0.001);
+
+            // drained, there's room again
+            log.drained(List.of(first));
+            assertNotNull(log.append(2, new byte[50]));
+        }
+    }
+
+    @Test
+    void drainedOutOfOrderTest() throws IOException {
+        try (var log = WriteAheadLog.open(path, SIZE)) {
+            var first = log.append(1, new byte[]{1});
+            var second = log.append(2, new byte[]{2});
+            var third = log.append(3, new byte[]{3});
+            log.sync(third);
+
+            // the last records are in the database before the first one: the log must not start over
+            log.drained(List.of(second, third));
+            assertTrue(log.getUsage() > 0);
+            var fourth = log.append(4, new byte[]{4});
+            log.sync(fourth);
+            // only the position up to the second record can be drained
+            log.drained(List.of(first));
+        }
+
+        try (var log = WriteAheadLog.open(path, SIZE)) {
+            assertEquals(List.of(4L), ids(log.getReplayed()));
+        }
+    }
+
+    @Test
+    void concurrentAppendsTest() throws Exception {
+        var records = new ConcurrentLinkedQueue<WriteAheadLog.Record>();
+        try (var log = WriteAheadLog.open(path, 64 * 1024)) {
+            var executor = Executors.newFixedThreadPool(4);
+            try {
+                var appends = new ArrayList<Future<?>>();
+                for (int i = 0; i < 200; i++) {
+                    var id = i;
+                    appends.add(executor.submit(() -> {
+                        var record = log.append(id, new byte[]{(byte) id});
+                        log.sync(record);
+                        records.add(record);
+                    }));
+                }
+                for (var append : appends) {
+                    append.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+
+            // the records are drained in the order they were synced, which isn't always the log order, and
+            // some of them never are
+            var drained = new ArrayList<WriteAheadLog.Record>();
+            for (var record : records) {
+                if (record.getId() % 7 != 3) {
+                    drained.add(record);
+                }
+            }
+            Collections.shuffle(drained, new Random(1));
+            for (int i = 0; i < drained.size(); i += 10) {
+                log.drained(drained.subList(i, Math.min(i + 10, drained.size())));
+            }
+        }
+
+        try (var log = WriteAheadLog.open(path, 64 * 1024)) {
+            var replayed = ids(log.getReplayed());
+            for (long id = 0; id < 200; id++) {
+                if (id % 7 == 3) {
+                    assertTrue(replayed.contains(id), "The record " + id + " isn't replayed");
+                }
+            }
+        }
+    }
+
+    private static List<Long> ids(List<WriteAheadLog.Record> records) {
+        return records.stream().map(WriteAheadLog.Record::getId).collect(Collectors.toList());
+    }
+}
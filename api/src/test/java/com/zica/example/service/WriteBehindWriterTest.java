@@ -0,0 +1,66 @@
+package com.zica.example.service;
+
+import com.zica.example.model.NewData;
+import com.zica.example.repository.DataRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"ciphertext-migration-enabled=false", "reencryption-enabled=false",
+        "write-behind-enabled=true", "write-behind-log-path=${java.io.tmpdir}/write-behind-${random.uuid}.log",
+        "write-behind-log-size=65536"})
+class WriteBehindWriterTest {
+
+    @Autowired
+    private DataService service;
+
+    @Autowired
+    private DataRepository repository;
+
+    @Test
+    void saveDataTest() throws Exception {
+        var ids = new ArrayList<Long>();
+        for (int i = 0; i < 20; i++) {
+            ids.add(service.saveData(new NewData().data("value " + i)).getId());
+        }
+
+        // found by id whether it was inserted already or not
+        for (int i = 0; i < 20; i++) {
+            assertEquals("value " + i, service.getDecryptedData(ids.get(i)).get());
+        }
+        assertTrue(service.updateDataValue(ids.get(19), new NewData().data("updated")).isPresent());
+        assertTrue(repository.existsById(ids.get(19)));
+
+        awaitInserted(ids);
+        // the update isn't overwritten by the value of the log
+        assertEquals("updated", service.getDecryptedData(ids.get(19)).get());
+        assertEquals("value 0", service.getDecryptedData(ids.get(0)).get());
+    }
+
+    @Test
+    void fullLogTest() throws Exception {
+        // the RSA records take about 300 bytes of the log, so it can't hold all of them at once
+        var ids = new ArrayList<Long>();
+        for (int i = 0; i < 400; i++) {
+            ids.add(service.saveData(new NewData().data("value " + i)).getId());
+        }
+
+        assertEquals(400, ids.stream().distinct().count());
+        awaitInserted(ids);
+        assertEquals("value 399", service.getDecryptedData(ids.get(399)).get());
+    }
+
+    private void awaitInserted(List<Long> ids) throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (repository.findAllById(ids).size() < ids.size()) {
+            assertTrue(System.nanoTime() < deadline, "The records weren't inserted");
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+    }
+}
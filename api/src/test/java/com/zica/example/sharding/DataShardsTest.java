@@ -0,0 +1,171 @@
+package com.zica.example.sharding;
+
+import com.zica.example.db.Data;
+import com.zica.example.db.DataRow;
+import com.zica.example.model.DecryptedDataResult;
+import com.zica.example.model.NewData;
+import com.zica.example.repository.DataRepository;
+import com.zica.example.service.CiphertextMigration;
+import com.zica.example.service.DataService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"ciphertext-migration-enabled=false", "reencryption-enabled=false",
+        "data-shard-urls=jdbc:h2:mem:shard-0;DB_CLOSE_DELAY=-1,jdbc:h2:mem:shard-1;DB_CLOSE_DELAY=-1,"
+                + "jdbc:h2:mem:shard-2;DB_CLOSE_DELAY=-1"})
+class DataShardsTest {
+
+    @Autowired
+    private DataShards dataShards;
+
+    @Autowired
+    private DataService service;
+
+    @Autowired
+    private DataRepository repository;
+
+    @Autowired
+    private CiphertextMigration ciphertextMigration;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        for (int shard = 0; shard < dataShards.getCount(); shard++) {
+            dataShards.run(shard, repository::deleteAll);
+        }
+    }
+
+    @Test
+    void saveDataTest() {
+        assertEquals(3, dataShards.getCount());
+
+        var ids = new ArrayList<Long>();
+        for (int i = 0; i < 6; i++) {
+            ids.add(service.saveData(new NewData().data("value " + i)).getId());
+        }
+
+        // the records went to the shards in turns, and are only in the shard of their id
+        assertEquals(List.of(0, 1, 2), ids.stream().map(dataShards::shardOf).distinct().sorted()
+                .collect(Collectors.toList()));
+        for (int shard = 0; shard < 3; shard++) {
+            assertEquals(2, (long) dataShards.on(shard, repository::count));
+        }
+        for (var id : ids) {
+            assertTrue(dataShards.onShardOf(id, () -> repository.existsById(id)));
+            assertFalse(dataShards.on(dataShards.shardOf(id + 1), () -> repository.existsById(id)));
+        }
+
+        for (int i = 0; i < 6; i++) {
+            assertEquals("value " + i, service.getDecryptedData(ids.get(i)).get());
+        }
+        assertTrue(service.updateDataValue(ids.get(4), new NewData().data("updated")).isPresent());
+        assertEquals("updated", service.getDecryptedData(ids.get(4)).get());
+        assertTrue(service.updateDataValue(Collections.max(ids) + 3, new NewData().data("updated")).isEmpty());
+    }
+
+    @Test
+    void schemaTest() {
+        for (int shard = 1; shard < dataShards.getCount(); shard++) {
+            // the index is only created by the import.sql, not by the schema of the entities
+            assertEquals(50L, (long) dataShards.on(shard, () -> jdbcTemplate.queryForObject(
+                    "select increment from information_schema.sequences where sequence_name = 'DATA_SEQ'",
+                    Long.class)));
+            assertEquals(1, (int) dataShards.on(shard, () -> jdbcTemplate.queryForObject(
+                    "select count(*) from information_schema.indexes where index_name = 'DATA_VALUE_INDEX'",
+                    Integer.class)));
+        }
+    }
+
+    @Test
+    void saveBatchTest() {
+        var items = IntStream.range(0, 120)
+                .mapToObj(i -> new NewData().data("value " + i))
+                .collect(Collectors.toList());
+        var ids = new ArrayList<Long>();
+        service.saveData(items.iterator(), result -> ids.add(result.getId()));
+
+        // chunks of 50, each in the next shard
+        assertEquals(List.of(20L, 50L, 50L), IntStream.range(0, 3)
+                .mapToObj(shard -> dataShards.on(shard, repository::count))
+                .sorted()
+                .collect(Collectors.toList()));
+
+        var missing = Collections.max(ids) + 3;
+        ids.add(missing);
+        var results = new ConcurrentHashMap<Long, DecryptedDataResult>();
+        service.getDecryptedData(ids, result -> results.put(result.getId(), result)).join();
+
+        assertEquals(121, results.size());
+        for (int i = 0; i < 120; i++) {
+            assertEquals("value " + i, results.get(ids.get(i)).getData());
+        }
+        assertEquals("Data not found", results.get(missing).getError());
+    }
+
+    @Test
+    void findDataTest() {
+        // more records than a page in some shards
+        save(0, 620);
+        save(1, 501);
+        save(2, 7);
+        var all = LongStream.concat(LongStream.concat(ids(0), ids(1)), ids(2)).sorted().boxed()
+                .collect(Collectors.toList());
+
+        var streamed = new ArrayList<Long>();
+        service.forEachData(0, Long.MAX_VALUE, data -> streamed.add(data.getId()));
+        assertEquals(all, streamed);
+
+        streamed.clear();
+        service.forEachData(all.get(99), 1000, data -> streamed.add(data.getId()));
+        assertEquals(all.subList(100, 1100), streamed);
+
+        assertEquals(all, ids(service.findAllData()));
+        assertEquals(all.subList(0, 10), ids(service.findData(0, 10)));
+        assertEquals(all.subList(501, 1001), ids(service.findData(all.get(500), 500)));
+        assertEquals(all.subList(1120, 1128), ids(service.findData(all.get(1119), 1000)));
+    }
+
+    @Test
+    void migrateTest() {
+        for (int shard = 0; shard < 3; shard++) {
+            var legacy = new Data();
+            legacy.setLegacyData(Base64.getEncoder().encodeToString("a legacy value".getBytes(StandardCharsets.UTF_8)));
+            dataShards.on(shard, () -> repository.save(legacy));
+        }
+
+        assertEquals(3, ciphertextMigration.migrate());
+    }
+
+    private void save(int shard, int records) {
+        var data = IntStream.range(0, records)
+                .mapToObj(i -> new Data(0, new byte[]{3, (byte) i}))
+                .collect(Collectors.toList());
+        var saved = dataShards.on(shard, () -> repository.saveAll(data));
+        assertTrue(saved.stream().allMatch(record -> dataShards.shardOf(record.getId()) == shard));
+    }
+
+    private LongStream ids(int shard) {
+        return dataShards.on(shard, repository::findAll).stream().mapToLong(Data::getId);
+    }
+
+    private static List<Long> ids(List<DataRow> rows) {
+        return rows.stream().map(DataRow::getId).collect(Collectors.toList());
+    }
+}
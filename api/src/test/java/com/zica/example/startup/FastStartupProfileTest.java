@@ -0,0 +1,37 @@
+package com.zica.example.startup;
+
+import com.zica.example.model.NewData;
+import com.zica.example.service.DataService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("fast-startup")
+class FastStartupProfileTest {
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Autowired
+    private DataService dataService;
+
+    @Test
+    void beansAreLazyTest() {
+        var beanFactory = context.getBeanFactory();
+
+        assertTrue(beanFactory.getBeanDefinition("dataServiceImpl").isLazyInit());
+        assertTrue(beanFactory.getBeanDefinition("RSACryptographyServiceImpl").isLazyInit());
+    }
+
+    @Test
+    void saveAndDecryptTest() {
+        var saved = dataService.saveData(new NewData().data("saved with the fast-startup profile"));
+
+        assertEquals("saved with the fast-startup profile", dataService.getDecryptedData(saved.getId()).get());
+    }
+}